@@ -1,18 +1,30 @@
 package fi.vm.yti.datamodel.api.index;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import fi.vm.yti.datamodel.api.v2.utils.DataModelUtils;
 import org.opensearch.client.opensearch.OpenSearchClient;
 import org.opensearch.client.opensearch._types.OpenSearchException;
 import org.opensearch.client.opensearch._types.Refresh;
+import org.opensearch.client.opensearch._types.Time;
 import org.opensearch.client.opensearch._types.mapping.*;
 import org.opensearch.client.opensearch.core.*;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.search.Hit;
 import org.opensearch.client.opensearch.indices.*;
 import org.opensearch.client.opensearch.indices.ExistsRequest;
+import org.opensearch.client.opensearch.indices.update_aliases.Action;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import static fi.vm.yti.datamodel.api.v2.opensearch.OpenSearchUtil.logPayload;
@@ -22,11 +34,20 @@ public class OpenSearchConnector {
 
     private static final Logger logger = LoggerFactory.getLogger(OpenSearchConnector.class);
     private static final int ES_TIMEOUT = 300;
+    private static final DateTimeFormatter INDEX_VERSION_FORMAT = DateTimeFormatter
+            .ofPattern("yyyyMMddHHmmssSSS")
+            .withZone(ZoneOffset.UTC);
     private final OpenSearchClient client;
+    private final String refreshInterval;
+    private final String numberOfReplicas;
 
     @Autowired
-    public OpenSearchConnector(final OpenSearchClient client) {
+    public OpenSearchConnector(final OpenSearchClient client,
+                               @Value("${openSearchIndexRefreshInterval:1s}") String refreshInterval,
+                               @Value("${openSearchIndexReplicas:1}") String numberOfReplicas) {
         this.client = client;
+        this.refreshInterval = refreshInterval;
+        this.numberOfReplicas = numberOfReplicas;
     }
 
     public OpenSearchClient getClient() {
@@ -87,6 +108,147 @@ public class OpenSearchConnector {
         }
     }
 
+    /**
+     * Create a new versioned physical index (e.g. schemas_v2_20240101120000000) for the given alias.
+     * The index is created with refreshes disabled and no replicas so that bulk loading is as cheap as possible,
+     * call {@link #activateIndex(String, String)} once the index has been populated.
+     *
+     * @param alias alias the index will eventually be served from
+     * @param mappings index mappings
+     * @return name of the created physical index
+     * @throws IOException in case there is a problem sending the request or parsing back the response
+     */
+    public String createVersionedIndex(String alias, TypeMapping mappings) throws IOException {
+        var index = alias + "_" + INDEX_VERSION_FORMAT.format(Instant.now());
+        var request = new CreateIndexRequest.Builder()
+                .index(index)
+                .mappings(mappings)
+                .settings(s -> s
+                        .refreshInterval(Time.of(t -> t.time("-1")))
+                        .numberOfReplicas("0"))
+                .build();
+        logPayload(request);
+        client.indices().create(request);
+        logger.info("Index {} created for alias {}", index, alias);
+        return index;
+    }
+
+    /**
+     * Restore the normal refresh interval and replica count of a bulk loaded index, and atomically move the alias
+     * from the previous physical index to it. Indexes that were previously behind the alias are deleted afterwards.
+     * A concrete index with the same name as the alias (pre-alias deployments) is replaced in the same atomic step.
+     *
+     * @param alias alias to move
+     * @param index populated physical index
+     * @throws IOException in case there is a problem sending the request or parsing back the response
+     */
+    public void activateIndex(String alias, String index) throws IOException {
+        client.indices().putSettings(new PutIndicesSettingsRequest.Builder()
+                .index(index)
+                .settings(s -> s
+                        .refreshInterval(Time.of(t -> t.time(refreshInterval)))
+                        .numberOfReplicas(numberOfReplicas))
+                .build());
+        client.indices().refresh(new RefreshRequest.Builder().index(index).build());
+
+        var previous = getAliasIndexes(alias);
+        var actions = new ArrayList<Action>();
+        actions.add(Action.of(a -> a.add(add -> add.index(index).alias(alias))));
+        if (previous.isEmpty() && indexExists(alias)) {
+            actions.add(Action.of(a -> a.removeIndex(r -> r.index(alias))));
+        }
+        previous.stream()
+                .filter(old -> !old.equals(index))
+                .forEach(old -> actions.add(Action.of(a -> a.remove(r -> r.index(old).alias(alias)))));
+
+        client.indices().updateAliases(new UpdateAliasesRequest.Builder().actions(actions).build());
+        logger.info("Alias {} now points to {}", alias, index);
+
+        for (var old : previous) {
+            if (!old.equals(index)) {
+                cleanIndex(old);
+            }
+        }
+    }
+
+    /**
+     * Delete a versioned index that could not be populated, leaving the alias untouched.
+     *
+     * @param index physical index name
+     */
+    public void discardIndex(String index) {
+        try {
+            cleanIndex(index);
+        } catch (IOException | OpenSearchException ex) {
+            logger.warn("Could not remove index " + index, ex);
+        }
+    }
+
+    /**
+     * List the (encoded) ids of all documents in an index
+     *
+     * @param index index name or alias
+     * @return document ids
+     * @throws IOException in case there is a problem sending the request or parsing back the response
+     */
+    public Set<String> getIndexedIds(String index) throws IOException {
+        var ids = new HashSet<String>();
+        var keepAlive = Time.of(t -> t.time("1m"));
+        var response = client.search(new SearchRequest.Builder()
+                .index(index)
+                .size(1000)
+                .scroll(keepAlive)
+                .source(src -> src.fetch(false))
+                .build(), Object.class);
+        var scrollId = response.scrollId();
+        var hits = response.hits().hits();
+        try {
+            while (!hits.isEmpty()) {
+                hits.stream().map(Hit::id).forEach(ids::add);
+                var next = client.scroll(new ScrollRequest.Builder()
+                        .scrollId(scrollId)
+                        .scroll(keepAlive)
+                        .build(), Object.class);
+                scrollId = next.scrollId();
+                hits = next.hits().hits();
+            }
+        } finally {
+            client.clearScroll(new ClearScrollRequest.Builder().scrollId(scrollId).build());
+        }
+        return ids;
+    }
+
+    /**
+     * Remove documents by their already encoded ids
+     *
+     * @param index index name or alias
+     * @param encodedIds document ids
+     */
+    public void removeAllFromIndex(String index, Collection<String> encodedIds) {
+        if (encodedIds.isEmpty()) {
+            return;
+        }
+        var operations = encodedIds.stream()
+                .map(id -> BulkOperation.of(b -> b.delete(d -> d.index(index).id(id))))
+                .toList();
+        try {
+            var response = client.bulk(new BulkRequest.Builder().operations(operations).build());
+            logger.info("Removed {} documents from {}, errors: {}", operations.size(), index, response.errors());
+        } catch (IOException | OpenSearchException e) {
+            logger.warn("Could not remove documents from " + index, e);
+        }
+    }
+
+    private Set<String> getAliasIndexes(String alias) throws IOException {
+        var exists = client.indices().existsAlias(new ExistsAliasRequest.Builder().name(alias).build()).value();
+        if (!exists) {
+            return Set.of();
+        }
+        return client.indices().getAlias(new GetAliasRequest.Builder().name(alias).build())
+                .result()
+                .keySet();
+    }
+
     public <T> void putToIndex(String index,
                                String id,
                                T doc) {
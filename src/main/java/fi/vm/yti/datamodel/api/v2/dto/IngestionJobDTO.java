@@ -0,0 +1,95 @@
+package fi.vm.yti.datamodel.api.v2.dto;
+
+import java.util.Date;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+public class IngestionJobDTO {
+
+	private UUID id;
+	private MSCRType type;
+	private String pid;
+	private IngestionJobStatus status;
+	private int progress;
+	private String step;
+	private String message;
+	private Date created;
+	private Date started;
+	private Date finished;
+	private UUID owner;
+
+	public UUID getId() {
+		return id;
+	}
+	public void setId(UUID id) {
+		this.id = id;
+	}
+	public MSCRType getType() {
+		return type;
+	}
+	public void setType(MSCRType type) {
+		this.type = type;
+	}
+	public String getPid() {
+		return pid;
+	}
+	public void setPid(String pid) {
+		this.pid = pid;
+	}
+	public IngestionJobStatus getStatus() {
+		return status;
+	}
+	public void setStatus(IngestionJobStatus status) {
+		this.status = status;
+	}
+	/**
+	 * @return percentage of the job done
+	 */
+	public int getProgress() {
+		return progress;
+	}
+	public void setProgress(int progress) {
+		this.progress = progress;
+	}
+	public String getStep() {
+		return step;
+	}
+	public void setStep(String step) {
+		this.step = step;
+	}
+	/**
+	 * @return error message of a failed job
+	 */
+	public String getMessage() {
+		return message;
+	}
+	public void setMessage(String message) {
+		this.message = message;
+	}
+	public Date getCreated() {
+		return created;
+	}
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+	public Date getStarted() {
+		return started;
+	}
+	public void setStarted(Date started) {
+		this.started = started;
+	}
+	public Date getFinished() {
+		return finished;
+	}
+	public void setFinished(Date finished) {
+		this.finished = finished;
+	}
+	@JsonIgnore
+	public UUID getOwner() {
+		return owner;
+	}
+	public void setOwner(UUID owner) {
+		this.owner = owner;
+	}
+}
@@ -0,0 +1,5 @@
+package fi.vm.yti.datamodel.api.v2.dto;
+
+public enum IngestionJobStatus {
+    QUEUED, RUNNING, SUCCEEDED, FAILED
+}
@@ -1,6 +1,12 @@
 package fi.vm.yti.datamodel.api.v2.endpoint;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -9,11 +15,15 @@ import org.apache.jena.rdf.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
 import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRCommonMetadata;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRState;
@@ -21,7 +31,8 @@ import fi.vm.yti.datamodel.api.v2.dto.MSCRVisibility;
 import fi.vm.yti.datamodel.api.v2.dto.SchemaFormat;
 import fi.vm.yti.datamodel.api.v2.mapper.MapperUtils;
 import fi.vm.yti.datamodel.api.v2.mapper.MimeTypes;
-import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFile;
+import fi.vm.yti.datamodel.api.v2.service.StorageService;
+import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
 
 
 public abstract class BaseMSCRController {
@@ -42,55 +53,127 @@ public abstract class BaseMSCRController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Action parameter requires a target");
 		}		
 	}	
-	protected ResponseEntity<byte[]> handleFileDownload(List<StoredFile> files, String pid, String format) {
-		return handleFileDownload(files, "true", pid, format);
+	protected ResponseEntity<StreamingResponseBody> handleFileDownload(StorageService storageService, List<StoredFileMetadata> files, String pid, String format, HttpHeaders requestHeaders) {
+		return handleFileDownload(storageService, files, "true", pid, format, requestHeaders);
 	}
-	protected ResponseEntity<byte[]> handleFileDownload(List<StoredFile> files, String download, String pid, String format) {
+	protected ResponseEntity<StreamingResponseBody> handleFileDownload(StorageService storageService, List<StoredFileMetadata> files, String download, String pid, String format, HttpHeaders requestHeaders) {
     	if (files.isEmpty()) {
     		return ResponseEntity.notFound().build();   				
     	}
     	
+    	String etag = entityTag(files);
+    	if (matchesEntityTag(requestHeaders.getIfNoneMatch(), etag)) {
+    		return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    	}
+    	
     	if (files.size() == 1) {
-    		StoredFile file = files.get(0);
-    		if("false".equals(download)) {
-        		return ResponseEntity.ok()    				
-        				.contentType(MediaType.parseMediaTypes(file.contentType()).get(0))
-        				.body(file.data());		    	
+    		StoredFileMetadata file = files.get(0);
+    		long size = file.dataSize();
+    		HttpRange range;
+    		try {
+    			range = getRange(requestHeaders, etag);
+    			if (range != null && range.getRangeStart(size) > range.getRangeEnd(size)) {
+    				throw new IllegalArgumentException("Invalid range");
+    			}
+    		} catch (IllegalArgumentException e) {
+    			return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+    					.header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+    					.build();
     		}
-    		else {
-        		return ResponseEntity.ok()    				
-        				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + pid + getFileExtensionFromFormat(format))
-        				.contentType(MediaType.parseMediaTypes(file.contentType()).get(0))
-        				.body(file.data());		    	
-    			
+    		
+    		var response = range == null ? ResponseEntity.ok() : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT);
+    		response.contentType(MediaType.parseMediaTypes(file.contentType()).get(0))
+    				.header(HttpHeaders.ACCEPT_RANGES, "bytes")
+    				.eTag(etag);
+    		if(!"false".equals(download)) {
+    			response.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + pid + getFileExtensionFromFormat(format));
     		}
+    		if (range == null) {
+    			StreamingResponseBody body = out -> storageService.writeFileContent(file.fileID(), out);
+    			return response.contentLength(size).body(body);
+    		}
+    		long start = range.getRangeStart(size);
+    		long end = range.getRangeEnd(size);
+    		StreamingResponseBody body = out -> storageService.writeFileContent(file.fileID(), start, end - start + 1, out);
+    		return response.contentLength(end - start + 1)
+    				.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+    				.body(body);
     	}
     	else {
-    		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    		ZipOutputStream zipOut = new ZipOutputStream(baos);
-    		try {
-	    		for (StoredFile file : files) {
-	    			ZipEntry zipEntry = new ZipEntry(file.fileID() + MimeTypes.getExtension(file.contentType()));
-	    			zipOut.putNextEntry(zipEntry);
-	    			zipOut.write(file.data(), 0, file.data().length);
-	    		}
-	      
-	    		zipOut.close();           
-	    		//baos.close();               
-	    		
-	    		byte [] zip = baos.toByteArray();    
-	    				  
-	    		return ResponseEntity.ok()
-	    				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=files.zip")
-	    				.contentType(MediaType.parseMediaType("application/zip"))
-	    				.contentLength(zip.length)
-	    				.body(zip); 
-    		}catch(Exception ex) {
-    			logger.error(ex.getMessage());
-    			return ResponseEntity.internalServerError().build();    		
-    		}    		
+    		// entries are written straight to the response, only one file is read at a time
+    		StreamingResponseBody body = out -> {
+    			try (ZipOutputStream zipOut = new ZipOutputStream(out)) {
+    				for (StoredFileMetadata file : files) {
+    					ZipEntry entry = new ZipEntry(file.fileID() + MimeTypes.getExtension(file.contentType()));
+    					// fixed entry times keep the archive identical for the same files
+    					if (file.timestamp() != null) {
+    						entry.setTime(file.timestamp().getTime());
+    					}
+    					zipOut.putNextEntry(entry);
+    					storageService.writeFileContent(file.fileID(), zipOut);
+    					zipOut.closeEntry();
+    				}
+    			} catch (IOException ex) {
+    				logger.error(ex.getMessage());
+    				throw ex;
+    			}
+    		};
+    		return ResponseEntity.ok()
+    				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=files.zip")
+    				.contentType(MediaType.parseMediaType("application/zip"))
+    				.eTag(etag)
+    				.body(body);
     	}		
 	}
+
+	/**
+	 * Strong entity tag of the file content. A single file is tagged with its SHA-256 digest and a zip archive
+	 * with a digest of its entries.
+	 */
+	private String entityTag(List<StoredFileMetadata> files) {
+		if (files.size() == 1) {
+			return "\"" + files.get(0).sha256() + "\"";
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (StoredFileMetadata file : files) {
+				String entry = file.fileID() + " " + file.contentType() + " " + file.timestamp() + " " + file.sha256() + "\n";
+				digest.update(entry.getBytes(StandardCharsets.UTF_8));
+			}
+			return "\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Single byte range of the request. Multiple ranges are not supported and the whole file is returned instead,
+	 * as is when If-Range does not match the current version.
+	 *
+	 * @throws IllegalArgumentException if the range header is invalid or not satisfiable
+	 */
+	private HttpRange getRange(HttpHeaders requestHeaders, String etag) {
+		List<HttpRange> ranges = requestHeaders.getRange();
+		if (ranges.size() != 1) {
+			return null;
+		}
+		String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+		if (ifRange != null && !ifRange.trim().equals(etag)) {
+			return null;
+		}
+		return ranges.get(0);
+	}
+
+	private boolean matchesEntityTag(List<String> ifNoneMatch, String etag) {
+		for (String tag : ifNoneMatch) {
+			tag = tag.trim();
+			// If-None-Match uses weak comparison
+			if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
 	
 	private String getFileExtensionFromFormat(String format) {
 		
@@ -139,6 +222,24 @@ public abstract class BaseMSCRController {
 		}
 	}
 	
+	protected byte[] downloadContent(String contentURL) throws IOException {
+		try (InputStream in = new URL(contentURL).openStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * 202 response for a queued ingestion job, the job can be followed at the location
+	 */
+	protected ResponseEntity<IngestionJobDTO> acceptedJob(IngestionJobDTO job) {
+		return ResponseEntity.accepted()
+				.location(ServletUriComponentsBuilder.fromCurrentContextPath()
+						.path("/v2/jobs/{id}")
+						.buildAndExpand(job.getId())
+						.toUri())
+				.body(job);
+	}
+
 	protected String generateFilename(String PID, String contentType) {		
 		if(contentType != null && !contentType.equals("") && contentType.indexOf("/") > 0) {
 			return PID + "." + contentType.substring(contentType.lastIndexOf("/") + 1);
@@ -2,20 +2,25 @@ package fi.vm.yti.datamodel.api.v2.endpoint;
 
 import static fi.vm.yti.security.AuthorizationException.check;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_XML_VALUE;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringWriter;
-import java.net.URL;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
@@ -24,10 +29,10 @@ import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -37,12 +42,15 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -53,6 +61,7 @@ import fi.vm.yti.datamodel.api.v2.dto.CrosswalkDTO;
 import fi.vm.yti.datamodel.api.v2.dto.CrosswalkFormat;
 import fi.vm.yti.datamodel.api.v2.dto.CrosswalkInfoDTO;
 import fi.vm.yti.datamodel.api.v2.dto.DeleteResponseDTO;
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
 import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRState;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
@@ -67,13 +76,18 @@ import fi.vm.yti.datamodel.api.v2.mapper.CrosswalkMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.MappingMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.SchemaMapper;
 import fi.vm.yti.datamodel.api.v2.opensearch.index.OpenSearchIndexer;
+import fi.vm.yti.datamodel.api.v2.service.BatchTransformationService;
 import fi.vm.yti.datamodel.api.v2.service.CrosswalkService;
+import fi.vm.yti.datamodel.api.v2.service.DataTransformationService;
 import fi.vm.yti.datamodel.api.v2.service.GroupManagementService;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService.Job;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService.Progress;
 import fi.vm.yti.datamodel.api.v2.service.JenaService;
 import fi.vm.yti.datamodel.api.v2.service.PIDService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService;
-import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFile;
-import fi.vm.yti.datamodel.api.v2.service.impl.PostgresStorageService;
+import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
+import fi.vm.yti.datamodel.api.v2.service.TransformationPlan;
 import fi.vm.yti.datamodel.api.v2.transformation.RMLGenerator;
 import fi.vm.yti.datamodel.api.v2.transformation.SPARQLGenerator;
 import fi.vm.yti.datamodel.api.v2.transformation.XSLTGenerator;
@@ -82,9 +96,11 @@ import fi.vm.yti.datamodel.api.v2.validator.ValidMapping;
 import fi.vm.yti.security.AuthenticatedUserProvider;
 import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.PostConstruct;
 
 @RestController
 @RequestMapping("v2")
@@ -92,6 +108,9 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Validated
 public class Crosswalk extends BaseMSCRController {
 	private static final Logger logger = LoggerFactory.getLogger(Crosswalk.class);
+	private static final String NDJSON_VALUE = "application/x-ndjson";
+	private static final List<String> TRANSFORMATION_FORMATS = List.of("csv", "json", "xml");
+	private static final List<String> RECORD_SOURCE_FORMATS = List.of("csv", "ndjson", "json", "xml");
 
 
 	
@@ -109,12 +128,15 @@ public class Crosswalk extends BaseMSCRController {
 	private final AuthenticatedUserProvider userProvider;
     private final GroupManagementService groupManagementService;
     private final CrosswalkService crosswalkService;
+    private final DataTransformationService dataTransformationService;
+    private final BatchTransformationService batchTransformationService;
+    private final IngestionJobService ingestionJobService;
 
 
 	public Crosswalk(AuthorizationManager authorizationManager,
             OpenSearchIndexer openSearchIndexer,
             PIDService PIDService,
-            PostgresStorageService storageService,
+            StorageService storageService,
             JenaService jenaService,
             SchemaMapper schemaMapper,
             CrosswalkMapper mapper,
@@ -124,7 +146,10 @@ public class Crosswalk extends BaseMSCRController {
             SPARQLGenerator SPARQLGenerator,
             AuthenticatedUserProvider userProvider,
             GroupManagementService groupManagementService,
-            CrosswalkService crosswalkService) {
+            CrosswalkService crosswalkService,
+            DataTransformationService dataTransformationService,
+            BatchTransformationService batchTransformationService,
+            IngestionJobService ingestionJobService) {
 		this.openSearchIndexer = openSearchIndexer;
 		this.authorizationManager = authorizationManager;
 		this.PIDService = PIDService;
@@ -139,6 +164,9 @@ public class Crosswalk extends BaseMSCRController {
 		this.groupManagementService = groupManagementService;
 		this.crosswalkService = crosswalkService;
 		this.schemaMapper = schemaMapper;
+		this.dataTransformationService = dataTransformationService;
+		this.batchTransformationService = batchTransformationService;
+		this.ingestionJobService = ingestionJobService;
 	}
 	
 	private CrosswalkInfoDTO getCrosswalkDTO(String pid, boolean includeVersionInfo) throws Exception {
@@ -156,7 +184,7 @@ public class Crosswalk extends BaseMSCRController {
         return mapper.mapToCrosswalkDTO(pid, model, includeVersionInfo, userMapper, ownerMapper);
 	}	
 	
-	private void createCrosswalkMetadata(final String PID, final String handle, CrosswalkDTO dto, String aggregationKey, String target, Model contentModel) {
+	private void createCrosswalkMetadata(final String PID, final String handle, CrosswalkDTO dto, String aggregationKey, String target, String contentSource) {
 		if(!dto.getOrganizations().isEmpty()) {
 			check(authorizationManager.hasRightToAnyOrganization(dto.getOrganizations()));
 		}
@@ -164,8 +192,8 @@ public class Crosswalk extends BaseMSCRController {
 		checkState(null, dto.getState());
 
 		Model jenaModel = mapper.mapToJenaModel(PID, handle, dto, target, aggregationKey, userProvider.getUser());
-		if(!contentModel.isEmpty()) {
-			jenaService.putToCrosswalk(PID+":content", contentModel);
+		if(contentSource != null) {
+			jenaService.copyCrosswalkContent(contentSource, PID);
 		}
 		jenaService.putToCrosswalk(PID, jenaModel);	
 		
@@ -236,10 +264,11 @@ public class Crosswalk extends BaseMSCRController {
 	}
 	
 	private void addFileToCrosswalk(final String pid, final CrosswalkInfoDTO dto, final byte[] fileInBytes, final String contentURL,
-			final String contentType) {	 
+			final String contentType, final Progress progress) {	 
 		try {
 			Model contentModel = null;
 			CrosswalkFormat format = dto.getFormat();
+			progress.update(20, "Transforming " + format + " content");
 			if(format == CrosswalkFormat.SSSOM) {
 				Model sourceModel = jenaService.getSchemaContent(dto.getSourceSchema());
 				Model targetModel = jenaService.getSchemaContent(dto.getTargetSchema());
@@ -252,7 +281,9 @@ public class Crosswalk extends BaseMSCRController {
 			else {
 				throw new Exception("Unsupported crosswalk description format. Supported formats are: " + String.join(", ", Arrays.toString(CrosswalkFormat.values()) ));
 			}
+			progress.update(70, "Storing file");
 			storageService.storeCrosswalkFile(pid, contentType, fileInBytes, generateFilename(pid, contentType));
+			progress.update(90, "Storing content");
 			jenaService.putToCrosswalk(pid + ":content", contentModel);
 			
 		
@@ -275,7 +306,8 @@ public class Crosswalk extends BaseMSCRController {
 		logger.info("Create Crosswalk {}", dto);
 		validateActionParams(dto, action, target); 
 		String aggregationKey = null;
-		Model contentModel = ModelFactory.createDefaultModel();
+		// crosswalk whose content is copied to the new crosswalk
+		String contentSource = null;
 		if(action != null) {			
 			CrosswalkInfoDTO prev = getCrosswalkDTO(target, true);
 			dto = mergeMetadata(prev, dto, action);			
@@ -287,7 +319,7 @@ public class Crosswalk extends BaseMSCRController {
 				aggregationKey = prev.getAggregationKey();
 				if(prev.getFormat() == CrosswalkFormat.MSCR) {
 					if(jenaService.doesCrosswalkExist(prev.getPID() + ":content")) {
-						contentModel = jenaService.getCrosswalkContent(prev.getPID());						
+						contentSource = prev.getPID();
 					}
 					
 				}
@@ -299,7 +331,7 @@ public class Crosswalk extends BaseMSCRController {
 					
 				}
 				if(jenaService.doesCrosswalkExist(prev.getPID() + ":content")) {
-					contentModel = jenaService.getCrosswalkContent(prev.getPID());					
+					contentSource = prev.getPID();
 				}
 				
 			}			
@@ -311,13 +343,16 @@ public class Crosswalk extends BaseMSCRController {
 				 handle = PIDService.mint(PIDType.HANDLE, MSCRType.CROSSWALK, PID);
 				
 			}
-			createCrosswalkMetadata(PID, handle, dto, aggregationKey, target, contentModel);
+			createCrosswalkMetadata(PID, handle, dto, aggregationKey, target, contentSource);
 			var userMapper = groupManagementService.mapUser();
 			var ownerMapper = groupManagementService.mapOwner();
 			return mapper.mapToCrosswalkDTO(PID, jenaService.getCrosswalk(PID), false, userMapper, ownerMapper);
 		}catch(Exception ex) {
 			// revert any possible changes
 			try { jenaService.deleteFromCrosswalk(PID); }catch(Exception _ex) { logger.error(_ex.getMessage(), _ex);}
+			if(contentSource != null) {
+				try { jenaService.deleteFromCrosswalk(PID + ":content"); }catch(Exception _ex) { logger.error(_ex.getMessage(), _ex);}
+			}
 			try { openSearchIndexer.deleteCrosswalkFromIndex(PID);}catch(Exception _ex) { logger.error(_ex.getMessage(), _ex);}
 			if( (ex instanceof ResponseStatusException) || (ex instanceof MappingError)) {
 				throw ex;
@@ -329,11 +364,11 @@ public class Crosswalk extends BaseMSCRController {
 	}
 	
 	
-	@Operation(summary = "Upload and associate a crosswalk description file to an existing crosswalk")
-	@ApiResponse(responseCode = "200", description = "")
+	@Operation(summary = "Upload and associate a crosswalk description file to an existing crosswalk", description = "The file is processed in the background. The response is the ingestion job, which can be followed at /v2/jobs/{id}.")
+	@ApiResponse(responseCode = "202", description = "")
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/crosswalk/{pid}/upload", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public CrosswalkInfoDTO uploadCrosswalkFile(@PathVariable String pid,
+	public ResponseEntity<IngestionJobDTO> uploadCrosswalkFile(@PathVariable String pid,
 			@RequestParam("file") MultipartFile file) {
 		return uploadCrosswalkFile(pid, null, file);
 		
@@ -342,7 +377,7 @@ public class Crosswalk extends BaseMSCRController {
 	@Hidden
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/crosswalk/{pid}/{suffix}/upload", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public CrosswalkInfoDTO uploadCrosswalkFile(
+	public ResponseEntity<IngestionJobDTO> uploadCrosswalkFile(
 			@PathVariable String pid,
 			@PathVariable(name = "suffix") String suffix,
 			@RequestParam("file") MultipartFile file
@@ -367,25 +402,22 @@ public class Crosswalk extends BaseMSCRController {
 				check(authorizationManager.hasRightToAnyOrganization(orgs));	
 			}		
 			
-			addFileToCrosswalk(pid, crosswalkDTO, file.getBytes(), null, file.getContentType());
-			return mapper.mapToCrosswalkDTO(pid, model, userMapper, ownerMapper);
+			return acceptedJob(ingestionJobService.submit(MSCRType.CROSSWALK, IngestionJobService.Operation.UPLOAD, pid,
+					crosswalkDTO.getFormat().name(), null, file.getContentType(), file.getBytes(), userProvider.getUser().getId()));
 		
 		} catch (RuntimeException rex) {
 			throw rex;
 		} catch (Exception ex) {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
-		} finally {
-			try {storageService.deleteAllCrosswalkFiles(pid);}catch(Exception _ex) { }
-
-		}							
+		}
 	}
 	
 	
-	@Operation(summary = "Create crosswalk by uploading metadata and files in one multipart request")
-	@ApiResponse(responseCode = "200", description = "")
+	@Operation(summary = "Create crosswalk by uploading metadata and files in one multipart request", description = "The crosswalk metadata is created immediately and the file is processed in the background. The response is the ingestion job, which can be followed at /v2/jobs/{id}. The crosswalk is removed if the file can not be processed.")
+	@ApiResponse(responseCode = "202", description = "")
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/crosswalkFull", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public CrosswalkInfoDTO createCrosswalkFull(@RequestParam("metadata") String metadataString,
+	public ResponseEntity<IngestionJobDTO> createCrosswalkFull(@RequestParam("metadata") String metadataString,
 			@RequestParam(name = "contentURL", required = false) String contentURL,
 			@RequestParam(name = "file", required = false) MultipartFile file, @RequestParam(name = "action", required = false) CONTENT_ACTION action, @RequestParam(name = "target", required = false) String target) throws Exception {
 		
@@ -402,38 +434,70 @@ public class Crosswalk extends BaseMSCRController {
 		} catch (JsonProcessingException e) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not parse CrosswalkDTO from the metadata content. " + e.getMessage(), e);
 		}
-		String contentType = "";
+		// content from the URL is downloaded by the job
+		String contentType = "application/octet-stream"; // TODO: fix this
 		byte[] fileBytes = null;
-		try {
-			if (file == null) {
-				// try to download url to file
-				File tempFile = File.createTempFile("crosswalk", "temp");
-				FileUtils.copyURLToFile(new URL(contentURL), tempFile);
-				fileBytes = validateFileUpload(FileUtils.readFileToByteArray(tempFile), dto.getFormat());
-				contentType = "application/octet-stream"; // TODO: fix this
-			} else {
-				fileBytes = validateFileUpload(file.getBytes(), dto.getFormat());
+		if (file != null) {
+			try {
+				fileBytes = file.getBytes();
 				contentType = file.getContentType();
+			} catch (IOException ex) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
 			}
-
-		} catch (Exception ex) {
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
-		}		
+		}
 		
 		CrosswalkInfoDTO infoDto = createCrosswalk(dto, action, target);
 		final String PID = infoDto.getPID();
-		if(!dto.getOrganizations().isEmpty()) {
-			Collection<UUID> orgs = dto.getOrganizations();
-			check(authorizationManager.hasRightToAnyOrganization(orgs));
+		try {
+			if(!dto.getOrganizations().isEmpty()) {
+				Collection<UUID> orgs = dto.getOrganizations();
+				check(authorizationManager.hasRightToAnyOrganization(orgs));
 
-		}			
-		addFileToCrosswalk(PID, infoDto, fileBytes, contentURL, contentType);
-		var userMapper = groupManagementService.mapUser();
-		var ownerMapper = groupManagementService.mapOwner();
-		return mapper.mapToCrosswalkDTO(PID, jenaService.getCrosswalk(PID), false, userMapper, ownerMapper);
+			}			
+			return acceptedJob(ingestionJobService.submit(MSCRType.CROSSWALK, IngestionJobService.Operation.CREATE, PID,
+					infoDto.getFormat().name(), contentURL, contentType, fileBytes, userProvider.getUser().getId()));
+		} catch (Exception ex) {
+			revertCrosswalk(PID);
+			throw ex;
+		}
 		
 	}	
 	
+	@PostConstruct
+	public void registerIngestionHandler() {
+		ingestionJobService.registerHandler(MSCRType.CROSSWALK, this::ingestFile);
+	}
+	
+	private void ingestFile(Job job, byte[] input, Progress progress) throws Exception {
+		// no user mapping outside of a request
+		CrosswalkInfoDTO dto = mapper.mapToCrosswalkDTO(job.pid(), jenaService.getCrosswalk(job.pid()), null, owner -> {});
+		if (job.operation() == IngestionJobService.Operation.UPLOAD) {
+			try {
+				addFileToCrosswalk(job.pid(), dto, input, null, job.contentType(), progress);
+			} finally {
+				try {storageService.deleteAllCrosswalkFiles(job.pid());}catch(Exception _ex) { }
+			}
+			return;
+		}
+		try {
+			byte[] fileBytes = input;
+			if (fileBytes == null) {
+				progress.update(0, "Downloading content");
+				fileBytes = downloadContent(job.contentURL());
+			}
+			addFileToCrosswalk(job.pid(), dto, validateFileUpload(fileBytes, dto.getFormat()), job.contentURL(), job.contentType(), progress);
+		} catch (Exception ex) {
+			// the crosswalk was created for the job
+			revertCrosswalk(job.pid());
+			throw ex;
+		}
+	}
+	
+	private void revertCrosswalk(String pid) {
+		try { jenaService.deleteFromCrosswalk(pid); }catch(Exception _ex) { logger.error(_ex.getMessage(), _ex);}
+		try { openSearchIndexer.deleteCrosswalkFromIndex(pid);}catch(Exception _ex) { logger.error(_ex.getMessage(), _ex);}
+	}
+	
     @Operation(summary = "Modify crosswalk metadata")
     @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "The JSON data for the new crosswalk node")
     @ApiResponse(responseCode = "200", description = "The JSON of the update model, basically the same as the request body.")
@@ -636,15 +700,17 @@ public class Crosswalk extends BaseMSCRController {
     @Operation(summary = "Get original file version of the crosswalk (if available)", description = "If the result is only one file it is returned as is, but if the content includes multiple files they a returned as a zip file.")
     @ApiResponse(responseCode = "200", description = "")
     @GetMapping(path = "/crosswalk/{pid}/original")
-    public ResponseEntity<byte[]> exportOriginalFile(@PathVariable String pid) {
-    	return exportOriginalFile(pid, null);
+    public ResponseEntity<StreamingResponseBody> exportOriginalFile(@PathVariable String pid,
+    		@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
+    	return exportOriginalFile(pid, null, headers);
     }
     
     @Hidden
     @GetMapping(path = "/crosswalk/{pid}/{suffix}/original")
-    public ResponseEntity<byte[]> exportOriginalFile(
+    public ResponseEntity<StreamingResponseBody> exportOriginalFile(
     		@PathVariable String pid,
-    		@PathVariable(name = "suffix") String suffix) {
+    		@PathVariable(name = "suffix") String suffix,
+    		@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
 		if (suffix != null) {
 			pid = pid + "/" + suffix;
 		}
@@ -653,8 +719,8 @@ public class Crosswalk extends BaseMSCRController {
 			var ownerMapper = groupManagementService.mapOwner();
 			CrosswalkInfoDTO crosswalkInfo = mapper.mapToCrosswalkDTO(pid, jenaService.getCrosswalk(pid), null, ownerMapper);
 			
-	    	List<StoredFile> files = storageService.retrieveAllCrosswalkFiles(pid);
-	    	return handleFileDownload(files, crosswalkInfo.getLabel().get("en") + "-" + crosswalkInfo.getVersionLabel(), crosswalkInfo.getFormat().name());
+	    	List<StoredFileMetadata> files = storageService.retrieveAllCrosswalkFilesMetadata(pid);
+	    	return handleFileDownload(storageService, files, crosswalkInfo.getLabel().get("en") + "-" + crosswalkInfo.getVersionLabel(), crosswalkInfo.getFormat().name(), headers);
 
 		} catch (RuntimeException rex) {
 			throw rex;
@@ -666,17 +732,19 @@ public class Crosswalk extends BaseMSCRController {
     @Operation(summary = "Download crosswalk related file with a given id.")
     @ApiResponse(responseCode ="200")
     @GetMapping(path = "/crosswalk/{pid}/files/{fileID}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String pid, @PathVariable String fileID, @RequestParam(name="download", defaultValue = "false" ) String download) {
-    	return downloadFile(pid, null, fileID, download); 
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable String pid, @PathVariable String fileID, @RequestParam(name="download", defaultValue = "false" ) String download,
+    		@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
+    	return downloadFile(pid, null, fileID, download, headers); 
     }
     
     @Hidden
     @GetMapping(path = "/crosswalk/{pid}/{suffix}/files/{fileID}")
-    public ResponseEntity<byte[]> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
     		@PathVariable String pid,
     		@PathVariable String suffix,
     		@PathVariable String fileID, 
-    		@RequestParam(name="download", defaultValue = "false" ) String download) {
+    		@RequestParam(name="download", defaultValue = "false" ) String download,
+    		@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
 		if (suffix != null) {
 			pid = pid + "/" + suffix;
 		}
@@ -685,11 +753,11 @@ public class Crosswalk extends BaseMSCRController {
 			var ownerMapper = groupManagementService.mapOwner();
 			CrosswalkInfoDTO crosswalkInfo = mapper.mapToCrosswalkDTO(pid, jenaService.getCrosswalk(pid), null, ownerMapper);
 			
-	    	StoredFile file = storageService.retrieveFile(pid, Long.parseLong(fileID), MSCRType.CROSSWALK);
+	    	StoredFileMetadata file = storageService.retrieveFileMetadata(pid, Long.parseLong(fileID), MSCRType.CROSSWALK);
 	    	if(file == null) {
 	    		throw new ResourceNotFoundException(pid + "@file=" + fileID); 
 	    	}
-	    	return handleFileDownload(List.of(file), download, crosswalkInfo.getLabel().get("en") + "-" + crosswalkInfo.getVersionLabel(), crosswalkInfo.getFormat().name());
+	    	return handleFileDownload(storageService, List.of(file), download, crosswalkInfo.getLabel().get("en") + "-" + crosswalkInfo.getVersionLabel(), crosswalkInfo.getFormat().name(), headers);
 		
 		} catch (RuntimeException rex) {
 			throw rex;
@@ -770,18 +838,8 @@ public class Crosswalk extends BaseMSCRController {
 	        
 			final String mappingPID = PIDService.mintPartIdentifier(pid);
 
-			Model crosswalkModel = null;
-			if(!jenaService.doesCrosswalkExist(pid+":content")) {
-				crosswalkModel = ModelFactory.createDefaultModel();
-			}
-			else {
-				crosswalkModel = jenaService.getCrosswalk(pid+":content");
-			}
 			Model mappingModel = mappingMapper.mapToJenaModel(mappingPID, dto, pid);
-			crosswalkModel.add(mappingModel);
-			Resource crosswalkResource = crosswalkModel.getResource(pid);
-			crosswalkResource.addProperty(MSCR.mappings, ResourceFactory.createResource(mappingPID));
-			jenaService.putToCrosswalk(pid+":content", crosswalkModel);
+			jenaService.addMapping(pid, mappingPID, mappingModel);
 			return mappingMapper.mapToMappingDTO(mappingPID, mappingModel);
 		} catch (RuntimeException rex) {
 			throw rex;
@@ -823,15 +881,11 @@ public class Crosswalk extends BaseMSCRController {
 			if(!isEditable(metadataModel, crosswalkPID)) {
 				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Content can only be edited in the DRAFT state.");
 			}
-			Model crosswalkModel = jenaService.getCrosswalkContent(crosswalkPID);
-			if(!crosswalkModel.contains(ResourceFactory.createResource(mappingPID), RDF.type, MSCR.MAPPING)) {
+			if(!jenaService.doesMappingExist(crosswalkPID, mappingPID)) {
 				throw new ResourceNotFoundException(mappingPID);
 			}
-			jenaService.deleteMapping(crosswalkPID, mappingPID, crosswalkModel, false);
 			Model mappingModel = mappingMapper.mapToJenaModel(mappingPID, dto, crosswalkPID);
-			
-			crosswalkModel.add(mappingModel);
-			jenaService.putToCrosswalk(crosswalkPID+":content", crosswalkModel);
+			jenaService.updateMapping(crosswalkPID, mappingPID, mappingModel);
 			return mappingMapper.mapToMappingDTO(mappingPID, mappingModel);
 		} catch (RuntimeException rex) {
 			throw rex;
@@ -916,7 +970,9 @@ public class Crosswalk extends BaseMSCRController {
 			if(!isEditable(metadataModel, crosswalkPID)) {
 				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Content can only be edited in the DRAFT state.");
 			}
-			
+			if(!jenaService.doesMappingExist(crosswalkPID, mappingPID)) {
+				throw new ResourceNotFoundException(mappingPID);
+			}
 			jenaService.deleteMapping(crosswalkPID, mappingPID);
 		} catch (RuntimeException rex) {
 			rex.printStackTrace();
@@ -927,6 +983,50 @@ public class Crosswalk extends BaseMSCRController {
 		return ResponseEntity.ok(new DeleteResponseDTO("ok", mappingPID));
 	}
 		
+	private Model getCrosswalkContentOrEmpty(String pid) {
+		if(!jenaService.doesCrosswalkExist(pid+":content")) {
+			return ModelFactory.createDefaultModel();
+		}
+		return jenaService.getCrosswalk(pid+":content");
+	}
+
+	/**
+	 * Mappings of the crosswalk ordered by the depth and order of their first target property
+	 */
+	private List<MappingInfoDTO> getOrderedMappings(String pid, Model crosswalkModel, Model targetSchemaContent) {
+		List<MappingInfoDTO> mappings = new ArrayList<MappingInfoDTO>();
+		String q = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
+				+ "PREFIX mscr: <http://uri.suomi.fi/datamodel/ns/mscr#>\n"
+				+ "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n"
+				+ "PREFIX owl: <http://www.w3.org/2002/07/owl#>\n"
+				+ "PREFIX dcterms: <http://purl.org/dc/terms/>\n"
+				+ "PREFIX sh: <http://www.w3.org/ns/shacl#>\n"
+				+ "select ?mapping\n"
+				+ "where {\n"
+				+ "  <" + pid + "> mscr:mappings ?mapping .\n"
+				+ "  ?mapping mscr:target/rdf:_1/mscr:uri ?prop .\n"
+				+ "  OPTIONAL { ?prop sh:order ?order } .\n"
+				+ "  OPTIONAL { ?prop mscr:depth ?depth } .\n"
+				+ "  OPTIONAL {?prop sh:name ?name }\n"
+				+ "} order by ASC(?depth) ASC(?order) ASC(?name)";
+		Model queryModel = ModelFactory.createDefaultModel();
+		queryModel.add(crosswalkModel);
+		queryModel.add(targetSchemaContent);
+		QueryExecution qexec = QueryExecutionFactory.create(q, queryModel);
+		ResultSet mapi = qexec.execSelect();
+		while(mapi.hasNext()) {
+//			NodeIterator i = crosswalkModel.listObjectsOfProperty(crosswalkModel.getResource(pid), MSCR.mappings);
+//			while(i.hasNext()) {
+			QuerySolution soln = mapi.next();
+			Resource mappingResource = soln.getResource("mapping");			
+			MappingInfoDTO dto = mappingMapper.mapToMappingDTO(
+					mappingResource.getURI(), 
+					crosswalkModel);
+			mappings.add(dto);
+		}
+		return mappings;
+	}
+
 	@Operation(summary = "Get a mappings for a crosswalk")
 	@ApiResponse(responseCode = "200")	
 	@GetMapping(path="/crosswalk/{pid}/mapping")
@@ -953,47 +1053,12 @@ public class Crosswalk extends BaseMSCRController {
 			if(!jenaService.doesCrosswalkExist(pid)) {
 				throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Crosswalk with pid " + pid + " not found");
 			}
-			Model crosswalkModel = null;
-			if(!jenaService.doesCrosswalkExist(pid+":content")) {
-				crosswalkModel = ModelFactory.createDefaultModel();
-			}
-			else {
-				crosswalkModel = jenaService.getCrosswalk(pid+":content");
-			}
+			Model crosswalkModel = getCrosswalkContentOrEmpty(pid);
 			Model crosswalkMetadataModel = jenaService.getCrosswalk(pid);
 	        var ownerMapper = groupManagementService.mapOwner();			        
 			CrosswalkInfoDTO crosswalk = mapper.mapToCrosswalkDTO(pid, crosswalkMetadataModel, null, ownerMapper);
 			Model targetSchemaContent = jenaService.getSchemaContent(crosswalk.getTargetSchema());
-			List<MappingInfoDTO> mappings = new ArrayList<MappingInfoDTO>();
-			String q = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
-					+ "PREFIX mscr: <http://uri.suomi.fi/datamodel/ns/mscr#>\n"
-					+ "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n"
-					+ "PREFIX owl: <http://www.w3.org/2002/07/owl#>\n"
-					+ "PREFIX dcterms: <http://purl.org/dc/terms/>\n"
-					+ "PREFIX sh: <http://www.w3.org/ns/shacl#>\n"
-					+ "select ?mapping\n"
-					+ "where {\n"
-					+ "  <" + pid + "> mscr:mappings ?mapping .\n"
-					+ "  ?mapping mscr:target/rdf:_1/mscr:uri ?prop .\n"
-					+ "  OPTIONAL { ?prop sh:order ?order } .\n"
-					+ "  OPTIONAL { ?prop mscr:depth ?depth } .\n"
-					+ "  OPTIONAL {?prop sh:name ?name }\n"
-					+ "} order by ASC(?depth) ASC(?order) ASC(?name)";
-			Model queryModel = ModelFactory.createDefaultModel();
-			queryModel.add(crosswalkModel);
-			queryModel.add(targetSchemaContent);
-			QueryExecution qexec = QueryExecutionFactory.create(q, queryModel);
-			ResultSet mapi = qexec.execSelect();
-			while(mapi.hasNext()) {
-//			NodeIterator i = crosswalkModel.listObjectsOfProperty(crosswalkModel.getResource(pid), MSCR.mappings);
-//			while(i.hasNext()) {
-				QuerySolution soln = mapi.next();
-				Resource mappingResource = soln.getResource("mapping");			
-				MappingInfoDTO dto = mappingMapper.mapToMappingDTO(
-						mappingResource.getURI(), 
-						crosswalkModel);
-				mappings.add(dto);
-			}
+			List<MappingInfoDTO> mappings = getOrderedMappings(pid, crosswalkModel, targetSchemaContent);
 			if(exportFormat !=null) {
 				Model sourceSchemaModel = jenaService.getSchema(crosswalk.getSourceSchema());
 				Model targetSchemaModel = jenaService.getSchema(crosswalk.getTargetSchema());
@@ -1094,4 +1159,148 @@ public class Crosswalk extends BaseMSCRController {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
 		}		
 	}	
+
+	@Operation(summary = "Transform a batch of documents with the crosswalk", description = "Documents are given as a JSON array (strings are used as is, other values as JSON documents). "
+			+ "Results are returned as JSON Lines in the order of the input, one {\"index\", \"output\"} or {\"index\", \"error\"} object per document.")
+	@ApiResponse(responseCode = "200")
+	@PostMapping(path = {"/crosswalk/{pid}/transform", "/crosswalk/{pid}/{suffix}/transform"}, consumes = APPLICATION_JSON_VALUE, produces = NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> transform(
+			@PathVariable String pid,
+			@PathVariable(required = false) String suffix,
+			@RequestParam(name = "sourceFormat") String sourceFormat,
+			@RequestParam(name = "targetFormat") String targetFormat,
+			@RequestParam(name = "rootElement", required = false) String rootElement,
+			@RequestBody List<Object> documents) {
+		ObjectMapper objectMapper = new ObjectMapper();
+		Iterator<String> iterator = documents.stream().map(document -> {
+			if (document instanceof String str) {
+				return str;
+			}
+			try {
+				return objectMapper.writeValueAsString(document);
+			} catch (JsonProcessingException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).iterator();
+		return transformBatch(pid, suffix, sourceFormat, targetFormat, rootElement, iterator);
+	}
+
+	@Operation(summary = "Transform a stream of JSON documents with the crosswalk", description = "Each line of the request is a source document. "
+			+ "Results are returned as JSON Lines in the order of the input, one {\"index\", \"output\"} or {\"index\", \"error\"} object per document.")
+	@ApiResponse(responseCode = "200")
+	@PostMapping(path = {"/crosswalk/{pid}/transform", "/crosswalk/{pid}/{suffix}/transform"}, consumes = NDJSON_VALUE, produces = NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> transformStream(
+			@PathVariable String pid,
+			@PathVariable(required = false) String suffix,
+			@RequestParam(name = "targetFormat") String targetFormat,
+			@RequestParam(name = "rootElement", required = false) String rootElement,
+			@Parameter(hidden = true) InputStream body) {
+		// lines are read while the results are written
+		Iterator<String> iterator = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)).lines()
+				.filter(line -> !line.isBlank())
+				.iterator();
+		return transformBatch(pid, suffix, "json", targetFormat, rootElement, iterator);
+	}
+
+	@Operation(summary = "Transform uploaded documents with the crosswalk", description = "Each file is a source document. "
+			+ "Results are returned as JSON Lines in the order of the files, one {\"index\", \"output\"} or {\"index\", \"error\"} object per file.")
+	@ApiResponse(responseCode = "200")
+	@PostMapping(path = {"/crosswalk/{pid}/transform", "/crosswalk/{pid}/{suffix}/transform"}, consumes = "multipart/form-data", produces = NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> transformFiles(
+			@PathVariable String pid,
+			@PathVariable(required = false) String suffix,
+			@RequestParam(name = "sourceFormat") String sourceFormat,
+			@RequestParam(name = "targetFormat") String targetFormat,
+			@RequestParam(name = "rootElement", required = false) String rootElement,
+			@RequestParam("files") List<MultipartFile> files) {
+		Iterator<String> iterator = files.stream().map(file -> {
+			try {
+				return new String(file.getBytes(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).iterator();
+		return transformBatch(pid, suffix, sourceFormat, targetFormat, rootElement, iterator);
+	}
+
+	@Operation(summary = "Transform a stream of records with the crosswalk", description = "The request body is a single source file that is read one record at a time: "
+			+ "a CSV row, a line of JSON Lines or an XML element named by recordElement (a JSON document is a single record). "
+			+ "Each record is written to the response as soon as it has been transformed, as JSON Lines, CSV rows or XML elements inside a records element.")
+	@ApiResponse(responseCode = "200")
+	@PostMapping(path = {"/crosswalk/{pid}/transform/records", "/crosswalk/{pid}/{suffix}/transform/records"}, produces = {NDJSON_VALUE, "text/csv", APPLICATION_XML_VALUE})
+	public ResponseEntity<StreamingResponseBody> transformRecords(
+			@PathVariable String pid,
+			@PathVariable(required = false) String suffix,
+			@RequestParam(name = "sourceFormat") String sourceFormat,
+			@RequestParam(name = "targetFormat") String targetFormat,
+			@RequestParam(name = "rootElement", required = false) String rootElement,
+			@RequestParam(name = "recordElement", required = false) String recordElement,
+			@Parameter(hidden = true) InputStream body) {
+		if(!RECORD_SOURCE_FORMATS.contains(sourceFormat) || !TRANSFORMATION_FORMATS.contains(targetFormat)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Supported source formats are " + RECORD_SOURCE_FORMATS + " and target formats " + TRANSFORMATION_FORMATS);
+		}
+		if("xml".equals(sourceFormat) && recordElement == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "recordElement is required for XML sources");
+		}
+		TransformationPlan plan = getTransformationPlan(suffix != null ? pid + "/" + suffix : pid);
+		// records are read from the request while the results are written
+		StreamingResponseBody output = out -> {
+			try {
+				dataTransformationService.transformRecords(body, sourceFormat, plan, targetFormat, null, rootElement, recordElement, out);
+			} catch (IOException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		};
+		String contentType = switch (targetFormat) {
+			case "csv" -> "text/csv";
+			case "xml" -> APPLICATION_XML_VALUE;
+			default -> NDJSON_VALUE;
+		};
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(contentType))
+				.body(output);
+	}
+
+	private ResponseEntity<StreamingResponseBody> transformBatch(String pid, String suffix, String sourceFormat, String targetFormat, String rootElement, Iterator<String> documents) {
+		if (suffix != null) {
+			pid = pid + "/" + suffix;
+		}
+		if(!TRANSFORMATION_FORMATS.contains(sourceFormat) || !TRANSFORMATION_FORMATS.contains(targetFormat)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Supported source and target formats are " + TRANSFORMATION_FORMATS);
+		}
+		TransformationPlan plan = getTransformationPlan(pid);
+		StreamingResponseBody body = out -> batchTransformationService.transform(documents, sourceFormat, plan, targetFormat, null, rootElement, out);
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(NDJSON_VALUE))
+				.body(body);
+	}
+
+	private TransformationPlan getTransformationPlan(String pid) {
+		final String internalPID;
+		try {
+			internalPID = PIDService.mapToInternal(pid);
+		} catch (RuntimeException rex) {
+			throw rex;
+		} catch (Exception ex) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
+		}
+		if(!jenaService.doesCrosswalkExist(internalPID)) {
+			throw new ResourceNotFoundException(internalPID);
+		}
+		// mappings are loaded only when the crosswalk has changed since the plan was compiled, the modification time
+		// and the content are read from the store so that changes made through other instances are seen
+		String modified = jenaService.getCrosswalkModified(internalPID);
+		return dataTransformationService.getPlan(internalPID, modified, () -> {
+			CrosswalkInfoDTO crosswalk = mapper.mapToCrosswalkDTO(internalPID, jenaService.getCrosswalk(internalPID), null, groupManagementService.mapOwner());
+			Model content;
+			try {
+				content = jenaService.fetchCrosswalkContent(internalPID);
+			} catch (ResourceNotFoundException e) {
+				content = ModelFactory.createDefaultModel();
+			}
+			return new ArrayList<MappingDTO>(getOrderedMappings(internalPID, content, jenaService.getSchemaContent(crosswalk.getTargetSchema())));
+		});
+	}
 }
@@ -20,10 +20,15 @@ public class IndexController {
         this.indexer = indexer;
     }
 
-    @Operation(summary = "Reindex all datamodels")
+    @Operation(summary = "Reindex all datamodels", description = "With delta=true only content modified since the previous reindex is indexed and removed content is dropped from the index")
     @SecurityRequirement(name = "Bearer Authentication")
     @PostMapping(value = "/reindex")
-    public void reIndex(@RequestParam(required = false) String index) {
-        indexer.reindex(index);
+    public void reIndex(@RequestParam(required = false) String index,
+                        @RequestParam(required = false, defaultValue = "false") boolean delta) {
+        if (delta) {
+            indexer.reindexDelta(index);
+        } else {
+            indexer.reindex(index);
+        }
     }
 }
@@ -0,0 +1,49 @@
+package fi.vm.yti.datamodel.api.v2.endpoint;
+
+import static fi.vm.yti.security.AuthorizationException.check;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+import java.util.UUID;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
+import fi.vm.yti.datamodel.api.v2.endpoint.error.ResourceNotFoundException;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService;
+import fi.vm.yti.security.AuthenticatedUserProvider;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("v2")
+@Tag(name = "Ingestion job")
+public class IngestionJobController {
+
+	private final IngestionJobService ingestionJobService;
+
+	private final AuthenticatedUserProvider userProvider;
+
+	public IngestionJobController(IngestionJobService ingestionJobService, AuthenticatedUserProvider userProvider) {
+		this.ingestionJobService = ingestionJobService;
+		this.userProvider = userProvider;
+	}
+
+	@Operation(summary = "Get the status and progress of a schema or crosswalk file ingestion job", description = "Finished jobs are available for a limited time")
+	@ApiResponse(responseCode = "200", description = "")
+	@SecurityRequirement(name = "Bearer Authentication")
+	@GetMapping(value = "/jobs/{id}", produces = APPLICATION_JSON_VALUE)
+	public IngestionJobDTO getJob(@PathVariable UUID id) {
+		var job = ingestionJobService.getJob(id);
+		if (job == null) {
+			throw new ResourceNotFoundException(id.toString());
+		}
+		var user = userProvider.getUser();
+		check(user.isSuperuser() || job.getOwner() == null || job.getOwner().equals(user.getId()));
+		return job;
+	}
+}
@@ -4,6 +4,7 @@ import static fi.vm.yti.security.AuthorizationException.check;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Collection;
@@ -19,6 +20,7 @@ import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -29,11 +31,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.server.ResponseStatusException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -41,6 +44,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.v2.dto.DeleteResponseDTO;
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
 import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRState;
 import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
@@ -55,21 +59,26 @@ import fi.vm.yti.datamodel.api.v2.mapper.MapperUtils;
 import fi.vm.yti.datamodel.api.v2.mapper.SchemaMapper;
 import fi.vm.yti.datamodel.api.v2.opensearch.index.OpenSearchIndexer;
 import fi.vm.yti.datamodel.api.v2.service.GroupManagementService;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService.Job;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService.Progress;
 import fi.vm.yti.datamodel.api.v2.service.JSONValidationService;
 import fi.vm.yti.datamodel.api.v2.service.JenaService;
 import fi.vm.yti.datamodel.api.v2.service.PIDService;
 import fi.vm.yti.datamodel.api.v2.service.SchemaService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFile;
+import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
 import fi.vm.yti.datamodel.api.v2.service.ValidationRecord;
-import fi.vm.yti.datamodel.api.v2.service.impl.PostgresStorageService;
 import fi.vm.yti.datamodel.api.v2.validator.ValidSchema;
 import fi.vm.yti.security.AuthenticatedUserProvider;
 import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.PostConstruct;
 
 @RestController
 @RequestMapping("v2")
@@ -97,10 +106,12 @@ public class Schema extends BaseMSCRController {
 
 	private final GroupManagementService groupManagementService;
 
+	private final IngestionJobService ingestionJobService;
+
 	public Schema(JenaService jenaService, AuthorizationManager authorizationManager,
 			OpenSearchIndexer openSearchIndexer, SchemaMapper schemaMapper, SchemaService schemaService,
-			PIDService PIDService, PostgresStorageService storageService, AuthenticatedUserProvider userProvider,
-			GroupManagementService groupManagementService) {
+			PIDService PIDService, StorageService storageService, AuthenticatedUserProvider userProvider,
+			GroupManagementService groupManagementService, IngestionJobService ingestionJobService) {
 
 		this.jenaService = jenaService;
 		this.openSearchIndexer = openSearchIndexer;
@@ -111,6 +122,7 @@ public class Schema extends BaseMSCRController {
 		this.storageService = storageService;
 		this.userProvider = userProvider;
 		this.groupManagementService = groupManagementService;
+		this.ingestionJobService = ingestionJobService;
 	}
 
 	private byte[] validateFileUpload(byte[] fileInBytes, SchemaFormat format) {
@@ -150,8 +162,14 @@ public class Schema extends BaseMSCRController {
 
 	private void addFileToSchema(final String pid, final SchemaFormat format, final byte[] fileInBytes, final String contentURL,
 			final String contentType) {
+		addFileToSchema(pid, format, fileInBytes, contentURL, contentType, Progress.NONE);
+	}
+
+	private void addFileToSchema(final String pid, final SchemaFormat format, final byte[] fileInBytes, final String contentURL,
+			final String contentType, final Progress progress) {
 		try {
 			Model schemaModel = null;
+			progress.update(20, "Transforming " + format + " content");
 
 			if (format == SchemaFormat.JSONSCHEMA) {
 				JsonNode jsonObj = schemaService.parseSchema(new String(fileInBytes));
@@ -202,7 +220,9 @@ public class Schema extends BaseMSCRController {
 				throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
 						String.format("Unsupported schema description format: %s not supported", format));
 			}
+			progress.update(70, "Storing content");
 			jenaService.putToSchema(pid + ":content", schemaModel);			
+			progress.update(90, "Storing file");
 			storageService.storeSchemaFile(pid, contentType, fileInBytes, generateFilename(pid, contentType));
 
 		} catch (ResponseStatusException statusex) {
@@ -292,7 +312,8 @@ public class Schema extends BaseMSCRController {
 
 		final String PID = "mscr:schema:" + UUID.randomUUID();
 		String aggregationKey = null;
-		Model contentModel = ModelFactory.createDefaultModel();
+		// schema whose content is copied to the new schema
+		String contentSource = null;
 		if (action != null) {
 			Model prevModel = getSchemaModel(target);
 			SchemaInfoDTO prevSchema = getSchemaDTO(target, prevModel, true, false);
@@ -306,7 +327,7 @@ public class Schema extends BaseMSCRController {
 				aggregationKey = prevSchema.getAggregationKey();
 				if(prevSchema.getFormat() == SchemaFormat.MSCR) {
 					if(jenaService.doesSchemaExist(prevSchema.getPID() + ":content")) {
-						contentModel = jenaService.getSchemaContent(prevSchema.getPID());
+						contentSource = prevSchema.getPID();
 					}
 										
 				}
@@ -329,7 +350,10 @@ public class Schema extends BaseMSCRController {
 					contentType = "application/octet-stream"; // TODO: fix this
 				}
 				else {
-					StoredFile schemaFile = storageService.retrieveAllSchemaFiles(target).get(0); // there is currently only one file always
+					StoredFile schemaFile = storageService.retrievePrimaryFile(target, MSCRType.SCHEMA);
+					if(schemaFile == null) {
+						throw new ResourceNotFoundException(target + "@file");
+					}
 					fileBytes = schemaFile.data();
 					contentType = schemaFile.contentType();
 				}
@@ -354,8 +378,8 @@ public class Schema extends BaseMSCRController {
 			}
 			var jenaModel = mapper.mapToJenaModel(PID, handle, schemaDTO, target, aggregationKey,
 					userProvider.getUser());
-			if(!contentModel.isEmpty()) {
-				jenaService.putToSchema(PID+":content", contentModel);
+			if(contentSource != null) {
+				jenaService.copySchemaContent(contentSource, PID);
 			}
 			jenaService.putToSchema(PID, jenaModel);
 
@@ -381,6 +405,13 @@ public class Schema extends BaseMSCRController {
 			} catch (Exception _ex) {
 				logger.error(_ex.getMessage(), _ex);
 			}
+			if (contentSource != null) {
+				try {
+					jenaService.deleteFromSchema(PID + ":content");
+				} catch (Exception _ex) {
+					logger.error(_ex.getMessage(), _ex);
+				}
+			}
 			try {
 				openSearchIndexer.deleteSchemaFromIndex(PID);
 			} catch (Exception _ex) {
@@ -396,18 +427,18 @@ public class Schema extends BaseMSCRController {
 
 	}
 
-	@Operation(summary = "Upload and associate a schema description file to an existing schema")
-	@ApiResponse(responseCode = "200", description = "")
+	@Operation(summary = "Upload and associate a schema description file to an existing schema", description = "The file is processed in the background. The response is the ingestion job, which can be followed at /v2/jobs/{id}.")
+	@ApiResponse(responseCode = "202", description = "")
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/schema/{pid}/upload", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public SchemaInfoDTO uploadSchemaFile(@PathVariable String pid, @RequestParam("file") MultipartFile file) {
+	public ResponseEntity<IngestionJobDTO> uploadSchemaFile(@PathVariable String pid, @RequestParam("file") MultipartFile file) {
 		return uploadSchemaFile(pid, null, file);
 	}
 
 	@Hidden
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/schema/{pid}/{suffix}/upload", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public SchemaInfoDTO uploadSchemaFile(
+	public ResponseEntity<IngestionJobDTO> uploadSchemaFile(
 			@PathVariable String pid,
 			@PathVariable String suffix, 
 			@RequestParam("file") MultipartFile file) {
@@ -433,25 +464,20 @@ public class Schema extends BaseMSCRController {
 						.toList();
 				check(authorizationManager.hasRightToAnyOrganization(orgs));
 			}
-			addFileToSchema(pid, schemaDTO.getFormat(), file.getBytes(), null, file.getContentType());
-			return schemaDTO;
+			return acceptedJob(ingestionJobService.submit(MSCRType.SCHEMA, IngestionJobService.Operation.UPLOAD, pid,
+					schemaDTO.getFormat().name(), null, file.getContentType(), file.getBytes(), userProvider.getUser().getId()));
 		} catch (RuntimeException rex) {
 			throw rex;
 		} catch (Exception ex) {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
-		} finally {
-			try {
-				storageService.deleteAllSchemaFiles(pid);
-			} catch (Exception _ex) {
-			}
 		}
 	}
 
-	@Operation(summary = "Create schema by uploading metadata and files in one multipart request")
-	@ApiResponse(responseCode = "200", description = "")
+	@Operation(summary = "Create schema by uploading metadata and files in one multipart request", description = "The schema metadata is created immediately and the file is processed in the background. The response is the ingestion job, which can be followed at /v2/jobs/{id}. The schema is removed if the file can not be processed.")
+	@ApiResponse(responseCode = "202", description = "")
 	@SecurityRequirement(name = "Bearer Authentication")
 	@PutMapping(path = "/schemaFull", produces = APPLICATION_JSON_VALUE, consumes = "multipart/form-data")
-	public SchemaInfoDTO createSchemaFull(@RequestParam("metadata") String metadataString,
+	public ResponseEntity<IngestionJobDTO> createSchemaFull(@RequestParam("metadata") String metadataString,
 			@RequestParam(name = "contentURL", required = false) String contentURL,
 			@RequestParam(name = "file", required = false) MultipartFile file,
 			@RequestParam(name = "action", required = false) CONTENT_ACTION action,
@@ -470,25 +496,24 @@ public class Schema extends BaseMSCRController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
 					"Could not parse SchemaDTO from the metadata content. " + e.getMessage(), e);
 		}
-		String contentType = "";
+		if (schemaDTO.getFormat() == null || schemaDTO.getFormat() == SchemaFormat.MSCR) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					String.format("Unsupported schema description format: %s not supported", schemaDTO.getFormat()));
+		}
+		// content from the URL is downloaded by the job
+		String contentType = "application/octet-stream"; // TODO: fix this
 		byte[] fileBytes = null;
-		try {
-			if (file == null) {
-				// try to download url to file
-				File tempFile = File.createTempFile("schema", "temp");
-				FileUtils.copyURLToFile(new URL(contentURL), tempFile);
-				fileBytes = validateFileUpload(FileUtils.readFileToByteArray(tempFile), schemaDTO.getFormat());
-				contentType = "application/octet-stream"; // TODO: fix this
-			} else {
-				fileBytes = validateFileUpload(file.getBytes(), schemaDTO.getFormat());
+		if (file != null) {
+			try {
+				fileBytes = file.getBytes();
 				contentType = file.getContentType();
+			} catch (IOException ex) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
 			}
-
-		} catch (Exception ex) {
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
 		}
 		
 		SchemaInfoDTO dto = null;
+		IngestionJobDTO job = null;
 		try {
 			dto = createSchema(schemaDTO, action, target);
 			final String PID = dto.getPID();
@@ -497,28 +522,66 @@ public class Schema extends BaseMSCRController {
 				Collection<UUID> orgs = schemaDTO.getOrganizations();
 				check(authorizationManager.hasRightToAnyOrganization(orgs));
 			}
-			addFileToSchema(PID, schemaDTO.getFormat(), fileBytes, contentURL, contentType);	
+			job = ingestionJobService.submit(MSCRType.SCHEMA, IngestionJobService.Operation.CREATE, PID,
+					schemaDTO.getFormat().name(), contentURL, contentType, fileBytes, userProvider.getUser().getId());
 		}catch(Exception ex) {
 			// revert any possible metadata changes
 			if(dto != null) {
-				try {
-					jenaService.deleteFromSchema(dto.getPID());
-				} catch (Exception _ex) {
-					//logger.error(_ex.getMessage(), _ex);
-				}
-				try {
-					openSearchIndexer.deleteSchemaFromIndex(dto.getPID());
-				} catch (Exception _ex) {
-					//logger.error(_ex.getMessage(), _ex);
-				}				
+				revertSchema(dto.getPID());
 			}
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
 			
 		}		
-		return dto;
+		return acceptedJob(job);
 
 	}
 
+	@PostConstruct
+	public void registerIngestionHandler() {
+		ingestionJobService.registerHandler(MSCRType.SCHEMA, this::ingestFile);
+	}
+
+	private void ingestFile(Job job, byte[] input, Progress progress) throws Exception {
+		SchemaFormat format = SchemaFormat.valueOf(job.format());
+		if (job.operation() == IngestionJobService.Operation.UPLOAD) {
+			try {
+				addFileToSchema(job.pid(), format, input, null, job.contentType(), progress);
+			} finally {
+				try {
+					storageService.deleteAllSchemaFiles(job.pid());
+				} catch (Exception _ex) {
+				}
+			}
+			return;
+		}
+		try {
+			byte[] fileBytes = input;
+			if (fileBytes == null) {
+				progress.update(0, "Downloading content");
+				fileBytes = downloadContent(job.contentURL());
+			}
+			progress.update(10, "Validating content");
+			addFileToSchema(job.pid(), format, validateFileUpload(fileBytes, format), job.contentURL(), job.contentType(), progress);
+		} catch (Exception ex) {
+			// the schema was created for the job
+			revertSchema(job.pid());
+			throw ex;
+		}
+	}
+
+	private void revertSchema(String pid) {
+		try {
+			jenaService.deleteFromSchema(pid);
+		} catch (Exception _ex) {
+			//logger.error(_ex.getMessage(), _ex);
+		}
+		try {
+			openSearchIndexer.deleteSchemaFromIndex(pid);
+		} catch (Exception _ex) {
+			//logger.error(_ex.getMessage(), _ex);
+		}
+	}
+
 	@Operation(summary = "Modify schema")
 	@io.swagger.v3.oas.annotations.parameters.RequestBody(description = "The JSON data for the new schema node")
 	@ApiResponse(responseCode = "200", description = "The JSON of the update model, basically the same as the request body.")
@@ -708,15 +771,17 @@ public class Schema extends BaseMSCRController {
 	@Operation(summary = "Get original file version of the schema (if available)", description = "If the result is only one file it is returned as is, but if the content includes multiple files they a returned as a zip file.")
 	@ApiResponse(responseCode = "200", description = "")
 	@GetMapping(path = "/schema/{pid}/original")
-	public ResponseEntity<byte[]> exportOriginalFile(@PathVariable("pid") String pid) {
-		return exportOriginalFile(pid, null);
+	public ResponseEntity<StreamingResponseBody> exportOriginalFile(@PathVariable("pid") String pid,
+			@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
+		return exportOriginalFile(pid, null, headers);
 	}
 
 	@Hidden
 	@GetMapping(path = "/schema/{pid}/{suffix}/original")
-	public ResponseEntity<byte[]> exportOriginalFile(
+	public ResponseEntity<StreamingResponseBody> exportOriginalFile(
 			@PathVariable String pid,
-			@PathVariable String suffix) {
+			@PathVariable String suffix,
+			@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
 		if (suffix != null) {
 			pid = pid + "/" + suffix;
 		}
@@ -725,8 +790,8 @@ public class Schema extends BaseMSCRController {
 			var ownerMapper = groupManagementService.mapOwner();
 			SchemaInfoDTO schemaInfo = mapper.mapToSchemaDTO(pid, jenaService.getSchema(pid), null, ownerMapper);
 			
-			List<StoredFile> files = storageService.retrieveAllSchemaFiles(pid);
-			return handleFileDownload(files, schemaInfo.getLabel().get("en") + "-" + schemaInfo.getVersionLabel(), schemaInfo.getFormat().name());
+			List<StoredFileMetadata> files = storageService.retrieveAllSchemaFilesMetadata(pid);
+			return handleFileDownload(storageService, files, schemaInfo.getLabel().get("en") + "-" + schemaInfo.getVersionLabel(), schemaInfo.getFormat().name(), headers);
 		} catch (RuntimeException rex) {
 			throw rex;
 		} catch (Exception ex) {
@@ -738,17 +803,19 @@ public class Schema extends BaseMSCRController {
 	@Operation(summary = "Download schema related file with a given id.")
 	@ApiResponse(responseCode = "200")
 	@GetMapping(path = "/schema/{pid}/files/{fileID}")
-	public ResponseEntity<byte[]> downloadFile(@PathVariable String pid, @PathVariable String fileID,
-			@RequestParam(name = "download", defaultValue = "false") String download) {
-		return downloadFile(pid, null, fileID, download);
+	public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable String pid, @PathVariable String fileID,
+			@RequestParam(name = "download", defaultValue = "false") String download,
+			@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
+		return downloadFile(pid, null, fileID, download, headers);
 	}
 
 	@Hidden
 	@GetMapping(path = "/schema/{pid}/{suffix}/files/{fileID}")
-	public ResponseEntity<byte[]> downloadFile(
+	public ResponseEntity<StreamingResponseBody> downloadFile(
 			@PathVariable String pid,
 			@PathVariable String suffix, @PathVariable String fileID,
-			@RequestParam(name = "download", defaultValue = "false") String download) {
+			@RequestParam(name = "download", defaultValue = "false") String download,
+			@Parameter(hidden = true) @RequestHeader HttpHeaders headers) {
 		if (suffix != null) {
 			pid = pid + "/" + suffix;
 		}
@@ -756,11 +823,11 @@ public class Schema extends BaseMSCRController {
 			pid = PIDService.mapToInternal(pid);
 			var ownerMapper = groupManagementService.mapOwner();
 			SchemaInfoDTO schemaInfo = mapper.mapToSchemaDTO(pid, jenaService.getSchema(pid), null, ownerMapper);
-			StoredFile file = storageService.retrieveFile(pid, Long.parseLong(fileID), MSCRType.SCHEMA);
+			StoredFileMetadata file = storageService.retrieveFileMetadata(pid, Long.parseLong(fileID), MSCRType.SCHEMA);
 			if (file == null) {
 				throw new ResourceNotFoundException(pid + "@file=" + fileID);
 			}
-			return handleFileDownload(List.of(file), download, schemaInfo.getLabel().get("en") + "-" + schemaInfo.getVersionLabel(), schemaInfo.getFormat().name());
+			return handleFileDownload(storageService, List.of(file), download, schemaInfo.getLabel().get("en") + "-" + schemaInfo.getVersionLabel(), schemaInfo.getFormat().name(), headers);
 		} catch (RuntimeException rex) {
 			throw rex;
 		} catch (Exception ex) {
@@ -962,8 +1029,9 @@ public class Schema extends BaseMSCRController {
 			// update metadata 
 			schemaService.updateRootResourceMetadata(rootResource, schemaID, model);
 			
-			jenaService.putToSchema(schemaID+":content", contentModel);
+			// the content is written last, it updates the modification time of the schema
 			jenaService.putToSchema(schemaID, model);
+			jenaService.putToSchema(schemaID+":content", contentModel);
 			return new UpdateResponseDTO("Updated root resource", schemaID);
 
 		} catch (RuntimeException rex) {
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
@@ -47,7 +48,6 @@ import fi.vm.yti.datamodel.api.v2.repository.CoreRepository;
 import fi.vm.yti.datamodel.api.v2.service.JenaService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
-import fi.vm.yti.datamodel.api.v2.service.impl.PostgresStorageService;
 import fi.vm.yti.security.YtiUser;
 
 @Service
@@ -61,7 +61,7 @@ public class CrosswalkMapper {
 	
 	public CrosswalkMapper(
 			CoreRepository coreRepository,
-			PostgresStorageService storageService,
+			StorageService storageService,
 			@Value("${defaultNamespace}") String defaultNamespace,
 			JenaService jenaService) {
 		this.coreRepository = coreRepository;
@@ -364,7 +364,7 @@ public class CrosswalkMapper {
 		
 	}
 	
-    public IndexCrosswalk mapToIndexModel(String pid, Model model, Model revisionsModel) {    	
+    public IndexCrosswalk mapToIndexModel(String pid, Model model, Map<String, List<Revision>> revisions) {    	
     	var resource = model.getResource(pid);
         var indexModel = new IndexCrosswalk();
         indexModel.setId(pid);
@@ -405,31 +405,23 @@ public class CrosswalkMapper {
         indexModel.setRevisionOf(MapperUtils.propertyToString(resource, MSCR.PROV_wasRevisionOf));
         
         indexModel.setHasRevision(null);
-        List<Revision> revs = new ArrayList<Revision>();
-        if(revisionsModel == null) {
-        	revisionsModel = jenaService.constructWithQueryCrosswalks(MapperUtils.getRevisionsQuery(indexModel.getAggregationKey()));
-        }
         Resource aggregationResource = resource.getPropertyResourceValue(MSCR.aggregationKey);
         if(aggregationResource != null) {
-            revisionsModel.listSubjects().forEach(res -> {
-    			revs.add(MapperUtils.mapToRevision(res));				
-    		});
-    		List<Revision> orderedRevs = revs.stream()
-    				.sorted((Revision r1, Revision r2) -> r1.getCreated().compareTo(r2.getCreated()))
-    				.collect(Collectors.toList());
-    		//indexModel.setRevisions(orderedRevs); 
-    		if(orderedRevs.size() > 0) {
-        		Revision latestRev = orderedRevs.get(orderedRevs.size() - 1);
-        		if(latestRev.getPid().equals(pid)) {
-        			indexModel.setHasRevision("false");
-        			indexModel.setNumberOfRevisions(orderedRevs.size());
-        		}
-        		else {
-        			indexModel.setHasRevision("true");
-        		}
-    			
-    		}
-        }        
+        	List<Revision> orderedRevs;
+        	if(revisions == null) {
+        		var revisionsModel = jenaService.constructWithQueryCrosswalks(MapperUtils.getRevisionsQuery(indexModel.getAggregationKey()));
+        		List<Revision> revs = new ArrayList<Revision>();
+        		revisionsModel.listSubjects().forEach(res -> {
+        			revs.add(MapperUtils.mapToRevision(res));
+        		});
+        		revs.sort((Revision r1, Revision r2) -> r1.getCreated().compareTo(r2.getCreated()));
+        		orderedRevs = revs;
+        	}
+        	else {
+        		orderedRevs = revisions.getOrDefault(aggregationResource.getURI(), List.of());
+        	}
+        	MapperUtils.mapRevisionInfo(pid, orderedRevs, indexModel::setHasRevision, indexModel::setNumberOfRevisions);
+        }
         indexModel.setVersionLabel(MapperUtils.propertyToString(resource, MSCR.versionLabel));
         
        
@@ -432,6 +432,64 @@ public class MapperUtils {
   			
     }   
     
+    /**
+     * Query the revision information of all resources in a dataset in one request
+     *
+     * @return query constructing label, created, version label, state and aggregation key of every revision
+     */
+    public static Query getAllRevisionsQuery() {
+    	var b = new ConstructBuilder();
+    	var r = "?resource";
+    	SparqlUtils.addConstructProperty(r, b, RDFS.label, "?label");
+    	SparqlUtils.addConstructProperty(r, b, DCTerms.created, "?created");
+    	SparqlUtils.addConstructProperty(r, b, MSCR.versionLabel, "?versionLabel");
+    	SparqlUtils.addConstructProperty(r, b, MSCR.state, "?state");
+    	SparqlUtils.addConstructProperty(r, b, MSCR.aggregationKey, "?aggregationKey");
+    	return b.build();
+    }
+
+    /**
+     * Group revisions by aggregation key, ordered by creation time
+     *
+     * @param revisionsModel result of {@link #getAllRevisionsQuery()}
+     * @return revisions by aggregation key
+     */
+    public static Map<String, List<Revision>> mapToRevisionsByAggregationKey(Model revisionsModel) {
+    	var revisions = new HashMap<String, List<Revision>>();
+    	if(revisionsModel == null) {
+    		return revisions;
+    	}
+    	revisionsModel.listSubjectsWithProperty(MSCR.aggregationKey).forEach(res -> {
+    		var aggregationKey = res.getPropertyResourceValue(MSCR.aggregationKey);
+    		if(aggregationKey != null) {
+    			revisions.computeIfAbsent(aggregationKey.getURI(), k -> new ArrayList<>()).add(mapToRevision(res));
+    		}
+    	});
+    	revisions.values().forEach(revs -> revs.sort(Comparator.comparing(Revision::getCreated)));
+    	return revisions;
+    }
+
+    /**
+     * Set hasRevision and numberOfRevisions based on the revisions of the aggregation key
+     *
+     * @param pid PID of the indexed schema or crosswalk
+     * @param orderedRevs revisions ordered by creation time
+     * @param setHasRevision setter for hasRevision
+     * @param setNumberOfRevisions setter for numberOfRevisions
+     */
+    public static void mapRevisionInfo(String pid, List<Revision> orderedRevs, Consumer<String> setHasRevision, Consumer<Integer> setNumberOfRevisions) {
+    	if(orderedRevs.size() > 0) {
+    		Revision latestRev = orderedRevs.get(orderedRevs.size() - 1);
+    		if(latestRev.getPid().equals(pid)) {
+    			setHasRevision.accept("false");
+    			setNumberOfRevisions.accept(orderedRevs.size());
+    		}
+    		else {
+    			setHasRevision.accept("true");
+    		}
+    	}
+    }
+
     public static Revision mapToRevision(Resource rev) {
     	var pid = rev.getURI();
     	var label = MapperUtils.localizedPropertyToMap(rev, RDFS.label);
@@ -49,7 +49,6 @@ import fi.vm.yti.datamodel.api.v2.repository.CoreRepository;
 import fi.vm.yti.datamodel.api.v2.service.JenaService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService;
 import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
-import fi.vm.yti.datamodel.api.v2.service.impl.PostgresStorageService;
 import fi.vm.yti.datamodel.api.v2.utils.SparqlUtils;
 import fi.vm.yti.security.YtiUser;
 
@@ -64,7 +63,7 @@ public class SchemaMapper {
 	
 	public SchemaMapper(
 			CoreRepository coreRepository,
-			PostgresStorageService storageService,
+			StorageService storageService,
 			JenaService jenaService) {
 		this.coreRepository = coreRepository;
 		this.storageService = storageService;
@@ -403,7 +402,7 @@ public class SchemaMapper {
      * @param model Model
      * @return Index model
      */
-    public IndexSchema mapToIndexModel(String pid, Model model, Model revisionsModel){
+    public IndexSchema mapToIndexModel(String pid, Model model, Map<String, List<Revision>> revisions){
         var resource = model.getResource(pid);
         var indexModel = new IndexSchema();
         indexModel.setId(pid);
@@ -444,31 +443,22 @@ public class SchemaMapper {
         indexModel.setRevisionOf(MapperUtils.propertyToString(resource, MSCR.PROV_wasRevisionOf));
         
         indexModel.setHasRevision(null);
-        List<Revision> revs = new ArrayList<Revision>();
-        if(revisionsModel == null) {
-        	revisionsModel = jenaService.constructWithQuerySchemas(MapperUtils.getRevisionsQuery(indexModel.getAggregationKey()));
-        }
-
         Resource aggregationResource = resource.getPropertyResourceValue(MSCR.aggregationKey);
         if(aggregationResource != null) {
-            revisionsModel.listSubjects().forEach(res -> {
-    			revs.add(MapperUtils.mapToRevision(res));				
-    		});
-    		List<Revision> orderedRevs = revs.stream()
-    				.sorted((Revision r1, Revision r2) -> r1.getCreated().compareTo(r2.getCreated()))
-    				.collect(Collectors.toList());
-    		//indexModel.setRevisions(orderedRevs); 
-    		if(orderedRevs.size() > 0) {
-        		Revision latestRev = orderedRevs.get(orderedRevs.size() - 1);
-        		if(latestRev.getPid().equals(pid)) {
-        			indexModel.setHasRevision("false");
-        			indexModel.setNumberOfRevisions(orderedRevs.size());
-        		}
-        		else {
-        			indexModel.setHasRevision("true");
-        		}    			
-    		}
-    		
+        	List<Revision> orderedRevs;
+        	if(revisions == null) {
+        		var revisionsModel = jenaService.constructWithQuerySchemas(MapperUtils.getRevisionsQuery(indexModel.getAggregationKey()));
+        		List<Revision> revs = new ArrayList<Revision>();
+        		revisionsModel.listSubjects().forEach(res -> {
+        			revs.add(MapperUtils.mapToRevision(res));
+        		});
+        		revs.sort((Revision r1, Revision r2) -> r1.getCreated().compareTo(r2.getCreated()));
+        		orderedRevs = revs;
+        	}
+        	else {
+        		orderedRevs = revisions.getOrDefault(aggregationResource.getURI(), List.of());
+        	}
+        	MapperUtils.mapRevisionInfo(pid, orderedRevs, indexModel::setHasRevision, indexModel::setNumberOfRevisions);
         }
         indexModel.setVersionLabel(resource.getProperty(MSCR.versionLabel).getString());
 
@@ -205,7 +205,7 @@ public class JSONSchemaMapper {
 		return propertyResource;
 	}
 	
-	private String capitaliseNodeIdentifier(String propID) {
+	String capitaliseNodeIdentifier(String propID) {
 		int lastSlash = propID.lastIndexOf('/');
 		String stringAfterSlash = propID.substring(lastSlash + 1);
 		char firstChar = Character.toUpperCase(stringAfterSlash.charAt(0));
@@ -244,6 +244,46 @@ public class JSONSchemaMapper {
 	 */
 	public void handleObject(String propID, JsonNode node, String schemaPID, Model model, Map<String, JsonNode> definitions) {
 
+		Resource nodeShapeResource = addNodeShape(propID, node, schemaPID, model);
+		if (node == null || node.get("properties") == null) 
+			return;
+		String propIDCapitalised = capitaliseNodeIdentifier(propID);
+		
+		/*
+		 * Iterate over properties If a property is an array or object – add and
+		 * recursively iterate over them. If a property is a datatype or literal – it's just added.
+		 */
+
+		Iterator<Entry<String, JsonNode>> propertiesIterator = node.get("properties").fields();
+		while (propertiesIterator.hasNext()) {
+			Entry<String, JsonNode> entry = propertiesIterator.next();
+			if (entry.getKey().startsWith("_") || entry.getKey().startsWith("$"))
+				continue;
+			handleProperty(propIDCapitalised, entry, schemaPID, model, nodeShapeResource, definitions);
+			
+			final String key = URLEncoder.encode(entry.getKey());
+			String valueType = entry.getValue().get("type") != null ? entry.getValue().get("type").asText() : "string";
+			if (valueType.equals("object")) {
+				handleObject(propIDCapitalised + "/" + key, entry.getValue(), schemaPID, model, definitions);
+			}
+			else if (valueType.equals("array") && !isLangString(entry) && hasObjectItems(entry)) {
+				handleObject(propIDCapitalised + "/" + key, entry.getValue().get("items"), schemaPID, model, definitions);
+			}
+		}
+	
+	}
+
+	/**
+	 * Creates the (Node)Shape of an object property without its properties.
+	 * 
+	 * @param propID    The property ID.
+	 * @param node      The JSON node containing the property details.
+	 * @param schemaPID The schema PID.
+	 * @param model     The RDF model.
+	 * @return The created resource representing the node shape.
+	 */
+	Resource addNodeShape(String propID, JsonNode node, String schemaPID, Model model) {
+
 		String propIDCapitalised = capitaliseNodeIdentifier(propID);
 		String nameProperty = propID.substring(propID.lastIndexOf("/") + 1);		
 		Resource nodeShapeResource = model.createResource(schemaPID + "#" + propIDCapitalised);
@@ -257,7 +297,7 @@ public class JSONSchemaMapper {
 		
 		
 		if (node == null || node.get("properties") == null) 
-			return;
+			return nodeShapeResource;
 		if (node.has("description"))
 			nodeShapeResource.addProperty(DCTerms.description, node.get("description").asText());
 		if (node.has("additionalProperties"))
@@ -265,29 +305,57 @@ public class JSONSchemaMapper {
 		if(node.has("namespace")) {
 			nodeShapeResource.addProperty(MSCR.namespace, model.createResource(node.get("namespace").asText()));			
 		}
-		
-		/*
-		 * Iterate over properties If a property is an array or object – add and
-		 * recursively iterate over them. If a property is a datatype or literal – it's just added.
-		 */
-
-		Iterator<Entry<String, JsonNode>> propertiesIterator = node.get("properties").fields();
-		while (propertiesIterator.hasNext()) {
-			
+		return nodeShapeResource;
+	}
 
-			
-			Entry<String, JsonNode> entry = propertiesIterator.next();
-			String valueType = "string"; // default value
-			if (entry.getKey().startsWith("_") || entry.getKey().startsWith("$"))
-				continue;
-			if (entry.getValue().get("type") != null) {
-				valueType = entry.getValue().get("type").asText();
+	/**
+	 * Adds the property shape of one property of an object. The properties of object and array items are not handled.
+	 * 
+	 * @param propIDCapitalised The property ID of the object's node shape.
+	 * @param entry             The property name and the JSON node containing the property details.
+	 * @param schemaPID         The schema PID.
+	 * @param model             The RDF model.
+	 * @param nodeShapeResource The node shape of the object.
+	 * @return The created resource representing the property.
+	 */
+	Resource handleProperty(String propIDCapitalised, Entry<String, JsonNode> entry, String schemaPID, Model model,
+			Resource nodeShapeResource, Map<String, JsonNode> definitions) {
+		String valueType = "string"; // default value
+		if (entry.getValue().get("type") != null) {
+			valueType = entry.getValue().get("type").asText();
+		}
+		final String key = URLEncoder.encode(entry.getKey());
+		Resource propertyShape = null;
+		
+		
+		if (valueType.equals("object")) {
+			propertyShape = addObjectProperty(propIDCapitalised + "/" + key, entry.getValue(), model, schemaPID,
+					schemaPID + "#" + propIDCapitalised + "/" + key +"/" + StringUtils.capitalise(key));
+			if(entry.getValue().has("@id")) {
+				propertyShape.addProperty(MSCR.qname, model.createResource(entry.getValue().get("@id").asText()));			
+			}
+			if(entry.getValue().has("namespace")) {
+				propertyShape.addProperty(MSCR.namespace, model.createResource(entry.getValue().get("namespace").asText()));			
+			}
+			// default max
+			if(!entry.getValue().has("maxItems")) {
+				propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(1));	
+			}
+			else {
+				if(entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
+					propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
+				}
+				
 			}
-			final String key = URLEncoder.encode(entry.getKey());
-			Resource propertyShape = null;
-			
 			
-			if (valueType.equals("object")) {
+			nodeShapeResource.addProperty(SH.property, propertyShape);
+		}
+		else if (valueType.equals("array")) {
+			if(isLangString(entry)) {
+				Entry<String, JsonNode> item = Map.entry(key, entry.getValue());
+				propertyShape = handleDatatypeProperty(propIDCapitalised, item, model, schemaPID, nodeShapeResource, false, true);
+			}					
+			else {
 				propertyShape = addObjectProperty(propIDCapitalised + "/" + key, entry.getValue(), model, schemaPID,
 						schemaPID + "#" + propIDCapitalised + "/" + key +"/" + StringUtils.capitalise(key));
 				if(entry.getValue().has("@id")) {
@@ -296,119 +364,86 @@ public class JSONSchemaMapper {
 				if(entry.getValue().has("namespace")) {
 					propertyShape.addProperty(MSCR.namespace, model.createResource(entry.getValue().get("namespace").asText()));			
 				}
-				// default max
-				if(!entry.getValue().has("maxItems")) {
-					propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(1));	
-				}
-				else {
-					if(entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
-						propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
-					}
-					
-				}
-				
-				nodeShapeResource.addProperty(SH.property, propertyShape);
-				handleObject(propIDCapitalised + "/" + key, entry.getValue(), schemaPID, model,definitions);	
-			}
-			else if (valueType.equals("array")) {
-				if(isLangString(entry)) {
-					Entry<String, JsonNode> item = Map.entry(key, entry.getValue());
-					propertyShape = handleDatatypeProperty(propIDCapitalised, item, model, schemaPID, nodeShapeResource, false, true);
-				}					
-				else {
-					propertyShape = addObjectProperty(propIDCapitalised + "/" + key, entry.getValue(), model, schemaPID,
-							schemaPID + "#" + propIDCapitalised + "/" + key +"/" + StringUtils.capitalise(key));
-					if(entry.getValue().has("@id")) {
-						propertyShape.addProperty(MSCR.qname, model.createResource(entry.getValue().get("@id").asText()));			
-					}
-					if(entry.getValue().has("namespace")) {
-						propertyShape.addProperty(MSCR.namespace, model.createResource(entry.getValue().get("namespace").asText()));			
-					}
 
-					nodeShapeResource.addProperty(SH.property, propertyShape);
-					
-					if (hasObjectItems(entry)) {
-						handleObject(propIDCapitalised + "/" + key, entry.getValue().get("items"), schemaPID, model, definitions);
+				nodeShapeResource.addProperty(SH.property, propertyShape);
+				
+				if (!hasObjectItems(entry)) {
+					if(!entry.getValue().has("items")) {
+						logger.warn("Array property " + entry.getKey() + " does not have any items. Skipping.");
 					}
 					else {
-						if(!entry.getValue().has("items")) {
-							logger.warn("Array property " + entry.getKey() + " does not have any items. Skipping.");
-						}
-						else {
-							Entry<String, JsonNode> arrayItem = Map.entry(key, entry.getValue().get("items"));
-							propertyShape.removeAll(DCTerms.type); // TODO: remove this hack
-							propertyShape.removeAll(SH.node);
-							propertyShape = handleDatatypeProperty(propIDCapitalised, arrayItem, model, schemaPID, nodeShapeResource, false, true);
-							
-						}
+						Entry<String, JsonNode> arrayItem = Map.entry(key, entry.getValue().get("items"));
+						propertyShape.removeAll(DCTerms.type); // TODO: remove this hack
+						propertyShape.removeAll(SH.node);
+						propertyShape = handleDatatypeProperty(propIDCapitalised, arrayItem, model, schemaPID, nodeShapeResource, false, true);
+						
 					}
-									
-					if(entry.getValue().get("maxItems") != null && entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
-						propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
-					}					
-					
 				}
+								
+				if(entry.getValue().get("maxItems") != null && entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
+					propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
+				}					
 				
 			}
-			else {
-				boolean isRequired = (entry.getValue().has("required") && (entry.getValue().get("required").asBoolean() == true));								
-				propertyShape = handleDatatypeProperty(propIDCapitalised, entry, model, schemaPID, nodeShapeResource, isRequired, false);
-				if(entry.getValue().has("sourceType")) {
-					propertyShape.addProperty(MSCR.sourceType, MSCR.sourceTypeAttribute);
-				}
-
-				// default max
-				if(!entry.getValue().has("maxItems")) {
-					propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(1));	
-				}
-				else {					
-					if(entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
-						propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
-					}					
-				}
-				if(entry.getValue().has("@id")) {
-					propertyShape.addProperty(MSCR.qname, model.createResource(entry.getValue().get("@id").asText()));			
-				}
-				if(entry.getValue().has("namespace")) {
-					propertyShape.addProperty(MSCR.namespace, model.createResource(entry.getValue().get("namespace").asText()));			
-				}
+			
+		}
+		else {
+			boolean isRequired = (entry.getValue().has("required") && (entry.getValue().get("required").asBoolean() == true));								
+			propertyShape = handleDatatypeProperty(propIDCapitalised, entry, model, schemaPID, nodeShapeResource, isRequired, false);
+			if(entry.getValue().has("sourceType")) {
+				propertyShape.addProperty(MSCR.sourceType, MSCR.sourceTypeAttribute);
+			}
 
-				
+			// default max
+			if(!entry.getValue().has("maxItems")) {
+				propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(1));	
 			}
-			if(entry.getValue().get("order") != null) {
-				propertyShape.addLiteral(SH.order, ResourceFactory.createTypedLiteral(entry.getValue().get("order").asInt()));
+			else {					
+				if(entry.getValue().get("maxItems").asText(null) != null &&  !entry.getValue().get("maxItems").asText().equals("unbounded")) {
+					propertyShape.addLiteral(SH.maxCount, model.createTypedLiteral(entry.getValue().get("maxItems").asInt()));
+				}					
+			}
+			if(entry.getValue().has("@id")) {
+				propertyShape.addProperty(MSCR.qname, model.createResource(entry.getValue().get("@id").asText()));			
 			}
-			if(entry.getValue().get("depth") != null) {
-				propertyShape.addLiteral(MSCR.depth, ResourceFactory.createTypedLiteral(entry.getValue().get("depth").asInt()));
+			if(entry.getValue().has("namespace")) {
+				propertyShape.addProperty(MSCR.namespace, model.createResource(entry.getValue().get("namespace").asText()));			
 			}
 
-			if (entry.getValue().get("$ref") != null) {
-				String ref = entry.getValue().get("$ref").asText();
-				// TODO: set the class and datatype according to the references definition
-				String shapeName = ref.substring(ref.lastIndexOf("/")+1);
-				JsonNode defObj = definitions.get(shapeName);
-				if(defObj != null) {
-					String targetType = defObj.get("type") != null ? defObj.get("type").asText() : "string";
-					propertyShape.removeAll(SH.datatype);
-					propertyShape.removeAll(DCTerms.type);
-					if(targetType.equals("object")) {
-												
-						propertyShape.addProperty(SH.node, model.createResource(schemaPID + ":definition#" + shapeName + "/" +  shapeName));
-						propertyShape.addProperty(DCTerms.type, OWL.ObjectProperty);
-					}
-					else {
-						Resource typeResource = XSDTypesMap.get(targetType);
-						propertyShape.addProperty(SH.datatype, typeResource);
-						propertyShape.addProperty(DCTerms.type, OWL.DatatypeProperty);
-					}
+			
+		}
+		if(entry.getValue().get("order") != null) {
+			propertyShape.addLiteral(SH.order, ResourceFactory.createTypedLiteral(entry.getValue().get("order").asInt()));
+		}
+		if(entry.getValue().get("depth") != null) {
+			propertyShape.addLiteral(MSCR.depth, ResourceFactory.createTypedLiteral(entry.getValue().get("depth").asInt()));
+		}
+
+		if (entry.getValue().get("$ref") != null) {
+			String ref = entry.getValue().get("$ref").asText();
+			// TODO: set the class and datatype according to the references definition
+			String shapeName = ref.substring(ref.lastIndexOf("/")+1);
+			JsonNode defObj = definitions.get(shapeName);
+			if(defObj != null) {
+				String targetType = defObj.get("type") != null ? defObj.get("type").asText() : "string";
+				propertyShape.removeAll(SH.datatype);
+				propertyShape.removeAll(DCTerms.type);
+				if(targetType.equals("object")) {
+											
+					propertyShape.addProperty(SH.node, model.createResource(schemaPID + ":definition#" + shapeName + "/" +  shapeName));
+					propertyShape.addProperty(DCTerms.type, OWL.ObjectProperty);
 				}
 				else {
-					throw new RuntimeException("Referenced object "+ shapeName + " not found in definitions.");
+					Resource typeResource = XSDTypesMap.get(targetType);
+					propertyShape.addProperty(SH.datatype, typeResource);
+					propertyShape.addProperty(DCTerms.type, OWL.DatatypeProperty);
 				}
 			}
-
+			else {
+				throw new RuntimeException("Referenced object "+ shapeName + " not found in definitions.");
+			}
 		}
-	
+		return propertyShape;
 	}
 	
 	public void handleDefinitions(Map<String, JsonNode> defs, String schemaPID, Model model) {
@@ -0,0 +1,145 @@
+package fi.vm.yti.datamodel.api.v2.mapper.mscr;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.io.RDFLiteral;
+import org.semanticweb.owlapi.io.RDFNode;
+import org.semanticweb.owlapi.io.RDFResource;
+import org.semanticweb.owlapi.io.RDFTriple;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLDatatype;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.rdf.RDFRendererBase;
+import org.semanticweb.owlapi.rdf.model.RDFGraph;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Maps an OWL ontology to a Jena model using the same RDF mapping as OWLAPI uses when it saves the ontology as
+ * Turtle. The triples are taken from the graphs that OWLAPI builds for its document renderers, so the ontology is
+ * not written to a document and parsed again.
+ */
+public class OWLGraphRenderer extends RDFRendererBase {
+
+	private final Graph target;
+	// blank nodes by OWLAPI node id, ids are unique within a rendering
+	private final Map<String, Node> blankNodes = new HashMap<>();
+	private final Set<RDFNode> renderedNodes = new HashSet<>();
+	private RDFGraph renderedGraph;
+
+	private OWLGraphRenderer(OWLOntology ontology, OWLDocumentFormat format, Graph target) {
+		super(ontology, format, ontology.getOWLOntologyManager().getOntologyWriterConfiguration());
+		this.target = target;
+	}
+
+	public static Model mapToModel(OWLOntology ontology) {
+		Model model = ModelFactory.createDefaultModel();
+		// same prefixes as in the Turtle document, the ontology namespace is the default prefix
+		TurtleDocumentFormat format = new TurtleDocumentFormat();
+		ontology.getOntologyID().getOntologyIRI().ifPresent(iri -> {
+			String namespace = iri.toString();
+			format.setDefaultPrefix(namespace.endsWith("/") || namespace.endsWith("#") ? namespace : namespace + "#");
+		});
+		format.getPrefixName2PrefixMap().forEach((name, namespace) -> model.setNsPrefix(name.substring(0, name.length() - 1), namespace));
+		new OWLGraphRenderer(ontology, format, model.getGraph()).render();
+		return model;
+	}
+
+	/**
+	 * Adds the triples of the node and of the blank nodes it refers to, which are the triples the document renderers
+	 * write for it
+	 */
+	@Override
+	protected void render(RDFResource node, boolean root) {
+		if (graph != renderedGraph) {
+			renderedGraph = graph;
+			renderedNodes.clear();
+		}
+		if (!renderedNodes.add(node)) {
+			return;
+		}
+		for (RDFTriple triple : graph.getTriplesForSubject(node)) {
+			// lists are written as collections without their types
+			if (node.isAnonymous() && isListType(triple)) {
+				continue;
+			}
+			target.add(Triple.create(toNode(triple.getSubject()), toNode(triple.getPredicate()), toNode(triple.getObject())));
+			if (triple.getObject().isAnonymous()) {
+				render((RDFResource) triple.getObject(), false);
+			}
+		}
+	}
+
+	private static boolean isListType(RDFTriple triple) {
+		return triple.getPredicate().getIRI().equals(OWLRDFVocabulary.RDF_TYPE.getIRI())
+				&& OWLRDFVocabulary.RDF_LIST.getIRI().equals(triple.getObject().getIRI());
+	}
+
+	private Node toNode(RDFNode node) {
+		if (node.isLiteral()) {
+			RDFLiteral literal = (RDFLiteral) node;
+			if (literal.hasLang()) {
+				return NodeFactory.createLiteral(literal.getLexicalValue(), literal.getLang());
+			}
+			return NodeFactory.createLiteral(literal.getLexicalValue(),
+					TypeMapper.getInstance().getSafeTypeByName(literal.getDatatype().toString()));
+		}
+		if (node.isAnonymous()) {
+			return blankNodes.computeIfAbsent(node.getIRI().toString(), id -> NodeFactory.createBlankNode());
+		}
+		return NodeFactory.createURI(node.getIRI().toString());
+	}
+
+	// nothing to write outside of the triples
+
+	@Override
+	protected void beginDocument() {
+	}
+
+	@Override
+	protected void endDocument() {
+	}
+
+	@Override
+	protected void writeAnnotationPropertyComment(OWLAnnotationProperty prop) {
+	}
+
+	@Override
+	protected void writeDataPropertyComment(OWLDataProperty prop) {
+	}
+
+	@Override
+	protected void writeObjectPropertyComment(OWLObjectProperty prop) {
+	}
+
+	@Override
+	protected void writeClassComment(OWLClass cls) {
+	}
+
+	@Override
+	protected void writeDatatypeComment(OWLDatatype datatype) {
+	}
+
+	@Override
+	protected void writeIndividualComments(OWLNamedIndividual ind) {
+	}
+
+	@Override
+	protected void writeBanner(String name) {
+	}
+}
@@ -1,17 +1,21 @@
 package fi.vm.yti.datamodel.api.v2.mapper.mscr;
 
 import java.io.FileNotFoundException;
+import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.TransformerConfigurationException;
 
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
 import org.springframework.stereotype.Service;
 import org.xmlet.xsdparser.core.XsdParser;
 import org.xmlet.xsdparser.xsdelements.XsdAbstractElement;
@@ -30,6 +34,7 @@ import org.xmlet.xsdparser.xsdelements.XsdSequence;
 import org.xmlet.xsdparser.xsdelements.XsdSimpleContent;
 import org.xmlet.xsdparser.xsdelements.XsdSimpleType;
 import org.xmlet.xsdparser.xsdelements.xsdrestrictions.XsdPattern;
+import org.topbraid.shacl.vocabulary.SH;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -45,6 +50,29 @@ public class XSDMapper {
 
 	private static final ObjectMapper m = new ObjectMapper();
 
+	private final JSONSchemaMapper shapeMapper = new JSONSchemaMapper();
+
+	/**
+	 * Receives the elements and attributes found while walking the content of a complex type
+	 */
+	private interface ContentHandler {
+		void element(XsdElement e, XsdSchema schema, ObjectNode parentObj, Set<Object> handledTypes, int index, int depth);
+
+		void attribute(XsdAttribute attr, ObjectNode props);
+	}
+
+	private final ContentHandler jsonContent = new ContentHandler() {
+		@Override
+		public void element(XsdElement e, XsdSchema schema, ObjectNode parentObj, Set<Object> handledTypes, int index, int depth) {
+			handleElement(e, schema, parentObj, handledTypes, index, depth);
+		}
+
+		@Override
+		public void attribute(XsdAttribute attr, ObjectNode props) {
+			handleAttribute(attr, props);
+		}
+	};
+
 	private void processSchema(SchemaPart part, String schemaLocation, Map<String, XsdSchema> map, Set<String> added) {
 		SchemaPart newPart = new SchemaPart(schemaLocation, true);
 		part.getHasPart().add(newPart);
@@ -79,14 +107,8 @@ public class XSDMapper {
 	public SchemaParserResultDTO loadSchema(String filePath) {
 		SchemaParserResultDTO r = new SchemaParserResultDTO();
 
-		//System.setProperty("javax.xml.parsers.DocumentBuilderFactory",
-//		        "com.sun.org.apache.xerces.internal.jaxp.DocumentBuilderFactoryImpl");		
-		Properties systemProperties = System.getProperties();
-		systemProperties.remove("javax.xml.parsers.DocumentBuilderFactory");
-//		systemProperties.setProperty("javax.xml.transform.TransformerFactory", "org.apache.xalan.xsltc.trax.TransformerFactoryImpl");
-		System.setProperties(systemProperties);
 		try {
-			XsdParser p = new XsdParser(filePath);
+			XsdParser p = XsdSourceParser.parse(filePath);
 			SchemaPart root = new SchemaPart(filePath, true);
 			Map<String, XsdSchema> schemaMap = new HashMap<String, XsdSchema>();
 			p.getResultXsdSchemas().forEach(schema -> schemaMap.put(schema.getFilePath(), schema));
@@ -109,16 +131,15 @@ public class XSDMapper {
 	}
 
 	public ObjectNode mapToInternalJson(String filePath) {
-		Properties systemProperties = System.getProperties();
-		systemProperties.remove("javax.xml.parsers.DocumentBuilderFactory");
-		System.setProperties(systemProperties);
-		XsdParser p = new XsdParser(filePath);
+		return mapToInternalJson(XsdSourceParser.parse(filePath));
+	}
 
-		ObjectNode jroot = m.createObjectNode();
-		ObjectNode rootProperties = m.createObjectNode();
-		jroot.put("type", "object");
-		jroot.set("properties", rootProperties);
-		jroot.put("$schema", "http://json-schema.org/draft-04/schema#");	
+	public ObjectNode mapToInternalJson(byte[] content) {
+		return mapToInternalJson(XsdSourceParser.parse(content));
+	}
+
+	private ObjectNode mapToInternalJson(XsdParser p) {
+		ObjectNode jroot = createRootNode();
 		List<XsdElement> list = p.getResultXsdElements().toList();
 		int index = 0;
 		for(XsdElement e: list) {
@@ -130,6 +151,151 @@ public class XSDMapper {
 		return jroot;
 	}
 
+	/**
+	 * Maps the schema to the same SHACL shapes that JSONSchemaMapper creates from the output of mapToInternalJson. The
+	 * shapes are written while the XSD element tree is walked, so the JSON Schema of the whole schema is never built.
+	 */
+	public Model mapToInternalModel(String schemaPID, String filePath) {
+		return mapToInternalModel(schemaPID, XsdSourceParser.parse(filePath));
+	}
+
+	public Model mapToInternalModel(String schemaPID, byte[] content) {
+		return mapToInternalModel(schemaPID, XsdSourceParser.parse(content));
+	}
+
+	private Model mapToInternalModel(String schemaPID, XsdParser p) {
+		Model model = ModelFactory.createDefaultModel();
+		ObjectNode jroot = createRootNode();
+		ShapeContent content = new ShapeContent(model, schemaPID, "root");
+		List<XsdElement> list = p.getResultXsdElements().toList();
+		int index = 0;
+		for(XsdElement e: list) {
+			Set<Object> handledTypes = new HashSet<Object>();
+			content.element(e, findSchema(e), jroot, handledTypes, index, 0);
+			index++;
+		}
+		content.finish(jroot);
+		return model;
+	}
+
+	private ObjectNode createRootNode() {
+		ObjectNode jroot = m.createObjectNode();
+		ObjectNode rootProperties = m.createObjectNode();
+		jroot.put("type", "object");
+		jroot.set("properties", rootProperties);
+		jroot.put("$schema", "http://json-schema.org/draft-04/schema#");
+		return jroot;
+	}
+
+	/**
+	 * Writes the shapes of the properties of one node shape. The element and attribute nodes only hold the details
+	 * of the property itself, the properties of the parent node refer to them with null values.
+	 */
+	private class ShapeContent implements ContentHandler {
+
+		private final Model model;
+		private final String schemaPID;
+		private final String propID;
+		private final String propIDCapitalised;
+		private final Resource nodeShape;
+		// properties written so far, in a JSON object a later property with the same name replaces the earlier one
+		private final Set<String> written = new HashSet<>();
+
+		private ShapeContent(Model model, String schemaPID, String propID) {
+			this.model = model;
+			this.schemaPID = schemaPID;
+			this.propID = propID;
+			this.propIDCapitalised = shapeMapper.capitaliseNodeIdentifier(propID);
+			this.nodeShape = model.createResource(schemaPID + "#" + propIDCapitalised);
+		}
+
+		@Override
+		public void element(XsdElement e, XsdSchema schema, ObjectNode parentObj, Set<Object> handledTypes, int index, int depth) {
+			if (handledTypes.contains(e)) {
+				return;
+			}
+			String name = e.getName();
+			replace(name);
+			try {
+				ShapeContent children = new ShapeContent(model, schemaPID, propIDCapitalised + "/" + URLEncoder.encode(name));
+				ObjectNode obj = createElementNode(e, schema, handledTypes, index, depth, children);
+				children.finish(obj);
+				write(name, obj);
+				ObjectNode properties = (ObjectNode)parentObj.get("properties");
+				properties.putNull(name);
+			} catch (RuntimeException ex) {
+				remove(name);
+				throw ex;
+			}
+		}
+
+		@Override
+		public void attribute(XsdAttribute attr, ObjectNode props) {
+			String name = attr.getName();
+			replace(name);
+			try {
+				write(name, createAttributeNode(attr));
+				props.putNull(name);
+			} catch (RuntimeException ex) {
+				remove(name);
+				throw ex;
+			}
+		}
+
+		private void write(String name, ObjectNode obj) {
+			// JSONSchemaMapper skips these properties together with their children
+			if (name.startsWith("_") || name.startsWith("$")) {
+				remove(name);
+				return;
+			}
+			shapeMapper.handleProperty(propIDCapitalised, Map.entry(name, obj), schemaPID, model, nodeShape, Map.of());
+			written.add(name);
+		}
+
+		/**
+		 * Adds the node shape once all properties of the node have been walked. Properties that are no longer part of
+		 * the node, for example because a simple content extension removed them, are removed again.
+		 */
+		private void finish(ObjectNode obj) {
+			boolean isObject = obj.has("type") && obj.get("type").asText().equals("object");
+			ObjectNode properties = (ObjectNode)obj.get("properties");
+			for (String name : List.copyOf(written)) {
+				if (!isObject || properties == null || !properties.has(name)) {
+					remove(name);
+				}
+			}
+			if (isObject) {
+				shapeMapper.addNodeShape(propID, obj, schemaPID, model);
+			}
+		}
+
+		private void replace(String name) {
+			if (written.contains(name)) {
+				remove(name);
+			}
+		}
+
+		/**
+		 * Removes the shapes of a property and everything below it
+		 */
+		private void remove(String name) {
+			written.remove(name);
+			String uri = schemaPID + "#" + propIDCapitalised + "/" + URLEncoder.encode(name);
+			model.remove(nodeShape, SH.property, model.createResource(uri));
+			List<Statement> statements = model.listStatements()
+					.filterKeep(st -> st.getSubject().isURIResource()
+							&& (st.getSubject().getURI().equals(uri) || st.getSubject().getURI().startsWith(uri + "/")))
+					.toList();
+			for (Statement st : statements) {
+				// sh:in lists
+				if (st.getObject().isAnon()) {
+					model.removeAll(st.getObject().asResource(), null, null);
+				}
+			}
+			model.remove(statements);
+		}
+	}
+
 	void handleDesc(XsdElement e, ObjectNode props) {
 		String desc = getAnnotationStr(e);
 		if (desc.length() > 0) {
@@ -146,47 +312,51 @@ public class XSDMapper {
 
 	void handleElement(XsdElement e, XsdSchema schema, ObjectNode parentObj, Set<Object> handledTypes, int index, int depth) {
 		if (!handledTypes.contains(e)) {
-			ObjectNode obj = m.createObjectNode();
-			obj.put("order", index);
-			obj.put("depth", depth);
-				
-			String elementNamespace = null;
-			String elementName = e.getName();
-			if (schema != null) {				
-				if (e.getXsdSchema() != null && e.getXsdSchema().getTargetNamespace() != null) {
-					elementNamespace = e.getXsdSchema().getTargetNamespace();
-				}				
-				else if  (findSchema(e) != null && findSchema(e).getTargetNamespace() != null) {
-					elementNamespace = findSchema(e).getTargetNamespace();
-				}
-				else if(schema.getTargetNamespace() != null) {
-					elementNamespace = schema.getTargetNamespace();					
-				}
-			}
-			if (e.getTypeAsBuiltInDataType() != null) {
-				handleBuiltInType(e.getTypeAsBuiltInDataType(), obj);		
-			} else if (e.getXsdSimpleType() != null) {
-				handleSimpleType(e.getXsdSimpleType(), obj);				
-			} else if (e.getXsdComplexType() != null) {
-				handledTypes.add(e);
-				handleComplexType(schema, e.getXsdComplexType(), obj, handledTypes, depth);
-			} else {
-				// just an element
-				obj.put("type", "string");
-			}
-			handleDesc(e, obj);
-			if (elementNamespace != null) {
-				obj.put("namespace", elementNamespace);
-			}			
-			obj.put("title", e.getName());
-			handleCardinalities(e, obj);
+			ObjectNode obj = createElementNode(e, schema, handledTypes, index, depth, jsonContent);
 			ObjectNode properties = (ObjectNode)parentObj.get("properties");
-			properties.set(elementName, obj);
-			
+			properties.set(e.getName(), obj);
 		}
 
 	}
 
+	private ObjectNode createElementNode(XsdElement e, XsdSchema schema, Set<Object> handledTypes, int index, int depth,
+			ContentHandler content) {
+		ObjectNode obj = m.createObjectNode();
+		obj.put("order", index);
+		obj.put("depth", depth);
+			
+		String elementNamespace = null;
+		if (schema != null) {				
+			if (e.getXsdSchema() != null && e.getXsdSchema().getTargetNamespace() != null) {
+				elementNamespace = e.getXsdSchema().getTargetNamespace();
+			}				
+			else if  (findSchema(e) != null && findSchema(e).getTargetNamespace() != null) {
+				elementNamespace = findSchema(e).getTargetNamespace();
+			}
+			else if(schema.getTargetNamespace() != null) {
+				elementNamespace = schema.getTargetNamespace();					
+			}
+		}
+		if (e.getTypeAsBuiltInDataType() != null) {
+			handleBuiltInType(e.getTypeAsBuiltInDataType(), obj);		
+		} else if (e.getXsdSimpleType() != null) {
+			handleSimpleType(e.getXsdSimpleType(), obj);				
+		} else if (e.getXsdComplexType() != null) {
+			handledTypes.add(e);
+			handleComplexType(schema, e.getXsdComplexType(), obj, handledTypes, depth, content);
+		} else {
+			// just an element
+			obj.put("type", "string");
+		}
+		handleDesc(e, obj);
+		if (elementNamespace != null) {
+			obj.put("namespace", elementNamespace);
+		}			
+		obj.put("title", e.getName());
+		handleCardinalities(e, obj);
+		return obj;
+	}
+
 	private void convertAndAddBuiltInType(XsdBuiltInDataType datatype, ArrayNode a, String value) {
 		if (datatype != null) {
 
@@ -534,6 +704,10 @@ public class XSDMapper {
 	}
 
 	void handleAttribute(XsdAttribute attr, ObjectNode props) {
+		props.set(attr.getName(), createAttributeNode(attr));
+	}
+
+	private ObjectNode createAttributeNode(XsdAttribute attr) {
 		ObjectNode obj = m.createObjectNode();
 		obj.put("sourceType", "attribute");
 		obj.put("name", attr.getName());
@@ -560,11 +734,10 @@ public class XSDMapper {
 			obj.put("minItems", 0);
 			obj.put("maxItems", 1);
 		}
-		props.set(attr.getName(), obj);
-		
+		return obj;
 	}
 	void handleComplexType(XsdSchema schema, XsdComplexType e, ObjectNode obj,
-			Set<Object> handledTypes, int depth) {
+			Set<Object> handledTypes, int depth, ContentHandler content) {
 		String ctypeName = e.getName();
 		if (!"".equals(ctypeName) && !handledTypes.contains(ctypeName)) {
 			obj.put("type", "object");
@@ -590,7 +763,7 @@ public class XSDMapper {
 						}
 						List<XsdAttribute> attrs = ext.getXsdAttributes().toList();
 						for(XsdAttribute attr : attrs) {
-							handleAttribute(attr, properties);
+							content.attribute(attr, properties);
 						}
 					}
 					else {
@@ -605,7 +778,7 @@ public class XSDMapper {
 						}						
 					}
 					if (ext.getBaseAsComplexType() != null) {
-						handleComplexType(schema, ext.getBaseAsComplexType(), obj, handledTypes, depth);
+						handleComplexType(schema, ext.getBaseAsComplexType(), obj, handledTypes, depth, content);
 					}
 					
 
@@ -618,11 +791,11 @@ public class XSDMapper {
 				if (c.getXsdExtension() != null) {
 					XsdExtension ext = c.getXsdExtension();
 					if (ext.getBaseAsComplexType() != null) {
-						handleComplexType(schema, ext.getBaseAsComplexType(), obj, handledTypes, depth);
+						handleComplexType(schema, ext.getBaseAsComplexType(), obj, handledTypes, depth, content);
 					}
 					if (ext.getChildAsSequence() != null) {
 
-						handleMultipleElements(schema, ext.getChildAsSequence(), obj, handledTypes, depth);
+						handleMultipleElements(schema, ext.getChildAsSequence(), obj, handledTypes, depth, content);
 					}
 				}
 
@@ -630,24 +803,24 @@ public class XSDMapper {
 				List<XsdAttribute> attrs =  e.getAllXsdAttributes().toList();
 				for(int ia = 0; ia < attrs.size(); ia++) {
 					XsdAttribute attr = attrs.get(ia);
-					handleAttribute(attr, properties);
+					content.attribute(attr, properties);
 				}
 			}			
 			try {
 				XsdSequence seq = e.getChildAsSequence();
-				handleMultipleElements(schema, seq, obj, handledTypes, depth);
+				handleMultipleElements(schema, seq, obj, handledTypes, depth, content);
 			} catch (Exception ex) {
 
 			}
 			try {
 				XsdAll a = e.getChildAsAll();
-				handleMultipleElements(schema, a, obj, handledTypes, depth);
+				handleMultipleElements(schema, a, obj, handledTypes, depth, content);
 			} catch (Exception ex) {
 
 			}
 			try {
 				XsdChoice c = e.getChildAsChoice();
-				handleMultipleElements(schema, c, obj, handledTypes, depth);
+				handleMultipleElements(schema, c, obj, handledTypes, depth, content);
 			} catch (Exception ex) {
 
 			}
@@ -655,7 +828,7 @@ public class XSDMapper {
 	}
 
 	private void handleMultipleElements(XsdSchema schema, XsdMultipleElements c, ObjectNode obj,
-			Set<Object> handledTypes, int depth) {
+			Set<Object> handledTypes, int depth, ContentHandler content) {
 		List<XsdAbstractElement> aes = c.getXsdElements().collect(Collectors.toList());
 		int index = 0;
 		for (XsdAbstractElement ae : aes) {
@@ -664,13 +837,13 @@ public class XSDMapper {
 				XsdSchema newSchema = findSchema(ae);	
 				
 				if (newSchema != null) {
-					handleElement((XsdElement) ae, newSchema, obj, handledTypes, index, depth + 1);
+					content.element((XsdElement) ae, newSchema, obj, handledTypes, index, depth + 1);
 				} else {
-					handleElement((XsdElement) ae, schema, obj, handledTypes, index, depth + 1);
+					content.element((XsdElement) ae, schema, obj, handledTypes, index, depth + 1);
 				}
 			}
 			else if (ae instanceof XsdMultipleElements) {
-				handleMultipleElements(schema, (XsdMultipleElements) ae, obj, handledTypes, depth);
+				handleMultipleElements(schema, (XsdMultipleElements) ae, obj, handledTypes, depth, content);
 			}
 			index++;
 		}
@@ -0,0 +1,212 @@
+package fi.vm.yti.datamodel.api.v2.mapper.mscr;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xmlet.xsdparser.core.XsdParser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * XsdParser that reads schemas without global side effects. Documents are built with the JDK's own
+ * DocumentBuilderFactory instead of the one configured in the system properties and uploaded schemas are parsed
+ * from memory. Schemas read from a location, typically the includes and imports shared by many schemas, are parsed
+ * once and the documents are shared between parsers by the hash of their content. Remote schemas (for example
+ * http://www.w3.org/2001/xml.xsd) are downloaded once and reused until their cache entry expires.
+ * Parsers can be used concurrently from different threads.
+ */
+class XsdSourceParser extends XsdParser {
+
+	private static final String MEMORY_SCHEME = "mem:/";
+
+	// uploaded schemas by their generated location, only present while they are being parsed
+	private static final Map<String, byte[]> memorySources = new ConcurrentHashMap<>();
+	private static final Cache<String, byte[]> remoteSources = CacheBuilder.newBuilder()
+			.maximumSize(200)
+			.expireAfterWrite(1, TimeUnit.HOURS)
+			.build();
+	// parsed documents by SHA-256 of the content, parsers always get a copy since XsdParser normalizes the documents.
+	// Uploaded schemas are not cached, the weight of a document is the size of its source, a DOM is a few times larger
+	private static final Cache<String, CachedDocument> documents = CacheBuilder.newBuilder()
+			.maximumWeight(16 * 1024 * 1024)
+			.weigher((String hash, CachedDocument cached) -> cached.sourceSize())
+			.build();
+
+	private record CachedDocument(Document document, int sourceSize) {}
+
+	private XsdSourceParser(String location) {
+		super(location);
+	}
+
+	static XsdParser parse(String location) {
+		return new XsdSourceParser(location);
+	}
+
+	/**
+	 * Parses a schema given as bytes. Relative includes and imports of the schema can not be resolved.
+	 */
+	static XsdParser parse(byte[] content) {
+		String location = MEMORY_SCHEME + UUID.randomUUID() + "/schema.xsd";
+		memorySources.put(location, content);
+		try {
+			return new XsdSourceParser(location);
+		} finally {
+			memorySources.remove(location);
+		}
+	}
+
+	@Override
+	protected DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		// same configuration as in XsdParserCore
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newDefaultInstance();
+		factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", false);
+		factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+		factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+		factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		factory.setXIncludeAware(false);
+		factory.setExpandEntityReferences(false);
+		factory.setNamespaceAware(true);
+		return new SourceDocumentBuilder(factory.newDocumentBuilder());
+	}
+
+	private static byte[] read(String location) throws IOException {
+		if (location.startsWith(MEMORY_SCHEME)) {
+			byte[] content = memorySources.get(location);
+			if (content == null) {
+				throw new FileNotFoundException(location);
+			}
+			return content;
+		}
+		if (location.startsWith("http://") || location.startsWith("https://")) {
+			try {
+				return remoteSources.get(location, () -> download(location));
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+			}
+		}
+		Path path = location.startsWith("file:") ? Path.of(URI.create(location)) : Path.of(location);
+		if (!Files.exists(path)) {
+			throw new FileNotFoundException(location);
+		}
+		return Files.readAllBytes(path);
+	}
+
+	private static byte[] download(String location) throws IOException {
+		URLConnection connection = new URL(location).openConnection();
+		connection.setConnectTimeout(10000);
+		connection.setReadTimeout(30000);
+		try (InputStream input = connection.getInputStream()) {
+			return input.readAllBytes();
+		}
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Resolves the locations given to parse(String) through the source caches
+	 */
+	private static class SourceDocumentBuilder extends DocumentBuilder {
+
+		private final DocumentBuilder delegate;
+
+		private SourceDocumentBuilder(DocumentBuilder delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Document parse(String uri) throws SAXException, IOException {
+			byte[] content = read(uri);
+			if (uri.startsWith(MEMORY_SCHEME)) {
+				return parse(content, uri);
+			}
+			String hash = hash(content);
+			CachedDocument entry = documents.getIfPresent(hash);
+			if (entry == null) {
+				entry = new CachedDocument(parse(content, uri), content.length);
+				documents.put(hash, entry);
+			}
+			Document cached = entry.document();
+			// DOM nodes are not safe for concurrent use, even for reading
+			synchronized (cached) {
+				Document copy = delegate.newDocument();
+				copy.appendChild(copy.importNode(cached.getDocumentElement(), true));
+				return copy;
+			}
+		}
+
+		private Document parse(byte[] content, String uri) throws SAXException, IOException {
+			InputSource source = new InputSource(new ByteArrayInputStream(content));
+			source.setSystemId(uri);
+			Document document = delegate.parse(source);
+			document.getDocumentElement().normalize();
+			return document;
+		}
+
+		@Override
+		public Document parse(InputSource is) throws SAXException, IOException {
+			return delegate.parse(is);
+		}
+
+		@Override
+		public boolean isNamespaceAware() {
+			return delegate.isNamespaceAware();
+		}
+
+		@Override
+		public boolean isValidating() {
+			return delegate.isValidating();
+		}
+
+		@Override
+		public void setEntityResolver(EntityResolver er) {
+			delegate.setEntityResolver(er);
+		}
+
+		@Override
+		public void setErrorHandler(ErrorHandler eh) {
+			delegate.setErrorHandler(eh);
+		}
+
+		@Override
+		public Document newDocument() {
+			return delegate.newDocument();
+		}
+
+		@Override
+		public DOMImplementation getDOMImplementation() {
+			return delegate.getDOMImplementation();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package fi.vm.yti.datamodel.api.v2.opensearch.index;
+
+import fi.vm.yti.datamodel.api.v2.utils.DataModelUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.opensearch.client.json.JsonpMapper;
+import org.opensearch.client.json.jackson.JacksonJsonpMapper;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.IndexOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends documents to OpenSearch in bulk requests. Batches are flushed when either the document count or the
+ * estimated payload size limit is reached, and up to a configured number of requests are in flight at the same time.
+ * Requests and items rejected with 429 or 5xx are retried with exponential backoff.
+ */
+@Service
+public class BulkIngester {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngester.class);
+    private static final JsonpMapper MAPPER = new JacksonJsonpMapper();
+    // action line and separators of a bulk index operation, excluding the id
+    private static final int OPERATION_OVERHEAD_BYTES = 64;
+
+    private final OpenSearchClient client;
+    private final MeterRegistry meterRegistry;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+
+    public BulkIngester(OpenSearchClient client,
+                        MeterRegistry meterRegistry,
+                        @Value("${openSearchBulkConcurrency:4}") int concurrency,
+                        @Value("${openSearchBulkMaxActions:1000}") int maxActions,
+                        @Value("${openSearchBulkMaxBytes:5242880}") long maxBytes,
+                        @Value("${openSearchBulkMaxRetries:3}") int maxRetries,
+                        @Value("${openSearchBulkBackoffMillis:200}") long backoffMillis) {
+        this.client = client;
+        this.meterRegistry = meterRegistry;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.inFlight = new Semaphore(concurrency);
+        this.executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Index documents and wait until all batches have been processed
+     *
+     * @param index index name or alias
+     * @param documents documents to index
+     * @return number of documents that could not be indexed
+     */
+    public <T extends IndexBase> int ingest(String index, List<T> documents) {
+        var startTime = System.nanoTime();
+        var futures = new ArrayList<CompletableFuture<Integer>>();
+        var batch = new ArrayList<BulkOperation>();
+        long batchBytes = 0;
+        try {
+            for (var doc : documents) {
+                var id = DataModelUtils.encode(doc.getId());
+                var size = estimateSize(doc) + id.length() + OPERATION_OVERHEAD_BYTES;
+                if (!batch.isEmpty() && (batch.size() >= maxActions || batchBytes + size > maxBytes)) {
+                    futures.add(submit(index, batch, batchBytes));
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(new IndexOperation.Builder<IndexBase>()
+                        .index(index)
+                        .id(id)
+                        .document(doc)
+                        .build()
+                        ._toBulkOperation());
+                batchBytes += size;
+            }
+            if (!batch.isEmpty()) {
+                futures.add(submit(index, batch, batchBytes));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Bulk indexing to {} interrupted", index);
+        }
+
+        var failed = futures.stream().mapToInt(CompletableFuture::join).sum();
+        var tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.info("Indexed {} documents to {} in {} ms ({} docs/s), failed: {}",
+                documents.size() - failed, index, tookMillis, throughput(documents.size(), tookMillis), failed);
+        return failed;
+    }
+
+    private CompletableFuture<Integer> submit(String index, List<BulkOperation> batch, long batchBytes) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> send(index, batch, batchBytes), executor)
+                    .whenComplete((result, ex) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a batch, retrying the whole request on transport errors and the rejected items on 429/5xx responses
+     *
+     * @return number of documents that failed permanently
+     */
+    private int send(String index, List<BulkOperation> batch, long batchBytes) {
+        var pending = batch;
+        var failed = 0;
+        for (var attempt = 0; ; attempt++) {
+            var startTime = System.nanoTime();
+            List<BulkOperation> retry;
+            try {
+                var response = client.bulk(new BulkRequest.Builder().operations(pending).build());
+                var tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                Timer.builder("opensearch.bulk.took")
+                        .tag("index", metricIndexName(index))
+                        .register(meterRegistry)
+                        .record(tookMillis, TimeUnit.MILLISECONDS);
+                logger.debug("Bulk request to {}: items: {}, bytes: {}, took: {} ms (server {} ms), {} docs/s",
+                        index, pending.size(), batchBytes, tookMillis, response.took(), throughput(pending.size(), tookMillis));
+
+                retry = new ArrayList<>();
+                var rejected = 0;
+                if (response.errors()) {
+                    var items = response.items();
+                    for (var i = 0; i < items.size() && i < pending.size(); i++) {
+                        var item = items.get(i);
+                        if (item.error() == null) {
+                            continue;
+                        }
+                        if (isRetryable(item.status())) {
+                            retry.add(pending.get(i));
+                        } else {
+                            rejected++;
+                            logger.warn("Error in document {}, caused by {}", item.id(), item.error().reason());
+                        }
+                    }
+                }
+                failed += rejected;
+                count(index, "success", pending.size() - retry.size() - rejected);
+            } catch (OpenSearchException e) {
+                if (!isRetryable(e.status())) {
+                    logger.warn("Error in bulk operation", e);
+                    count(index, "failed", pending.size());
+                    return failed + pending.size();
+                }
+                retry = pending;
+            } catch (IOException e) {
+                logger.debug("Bulk request to {} failed: {}", index, e.getMessage());
+                retry = pending;
+            }
+
+            if (retry.isEmpty()) {
+                count(index, "failed", failed);
+                return failed;
+            }
+            if (attempt >= maxRetries) {
+                logger.warn("Giving up on {} documents to {} after {} retries", retry.size(), index, maxRetries);
+                count(index, "failed", failed + retry.size());
+                return failed + retry.size();
+            }
+            count(index, "retried", retry.size());
+            try {
+                Thread.sleep(backoffMillis << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                count(index, "failed", failed + retry.size());
+                return failed + retry.size();
+            }
+            pending = retry;
+        }
+    }
+
+    private void count(String index, String outcome, int amount) {
+        if (amount > 0) {
+            Counter.builder("opensearch.bulk.documents")
+                    .tag("index", metricIndexName(index))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .increment(amount);
+        }
+    }
+
+    /**
+     * Versioned index names (models_v2_20240101120000000) are reported by their alias to keep metric tags bounded
+     */
+    private static String metricIndexName(String index) {
+        return index.replaceFirst("_\\d{17}$", "");
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private static long throughput(int documents, long tookMillis) {
+        return tookMillis > 0 ? documents * 1000L / tookMillis : documents;
+    }
+
+    private static long estimateSize(Object doc) {
+        var out = new ByteArrayOutputStream();
+        try (var generator = MAPPER.jsonProvider().createGenerator(out)) {
+            MAPPER.serialize(doc, generator);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,265 @@
+package fi.vm.yti.datamodel.api.v2.opensearch.index;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fi.vm.yti.datamodel.api.v2.utils.DataModelUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox for search index writes. Index operations are stored in Postgres by the request thread and sent to
+ * OpenSearch in bulk by a background worker, so a slow or unavailable cluster does not affect API writes and
+ * failed operations are retried instead of lost. Operations on the same document within a batch are coalesced.
+ * All operations are idempotent, so a batch may safely be sent again if the worker fails before removing it.
+ * <p>
+ * A worker claims the oldest entry of each document together with the later entries of the same document, so the
+ * operations of one document are sent by one worker in order. Entries waiting for a retry hold back the later
+ * entries of their document.
+ */
+@Service
+public class IndexOutbox {
+
+    public enum Operation {
+        INDEX, UPDATE, DELETE
+    }
+
+    private record Entry(long id, String index, String docId, Operation operation, String document, int attempts) {
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexOutbox.class);
+    private static final long MAX_BACKOFF_SECONDS = 600;
+    // claims of a worker that has stopped expire after this
+    private static final long CLAIM_SECONDS = 300;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OpenSearchClient client;
+    private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final int batchSize;
+    private final int maxAttempts;
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+
+    public IndexOutbox(JdbcTemplate jdbcTemplate,
+                       OpenSearchClient client,
+                       MeterRegistry meterRegistry,
+                       @Value("${openSearchOutboxBatchSize:500}") int batchSize,
+                       @Value("${openSearchOutboxMaxAttempts:10}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.client = client;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        Gauge.builder("opensearch.outbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest pending index operation in seconds")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("opensearch.outbox.pending", pending, AtomicLong::get)
+                .description("Number of pending index operations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Store an index operation to be sent to OpenSearch
+     *
+     * @param index index name or alias
+     * @param id document id (not encoded)
+     * @param operation operation
+     * @param document document for INDEX and UPDATE operations, null for DELETE
+     */
+    public void enqueue(String index, String id, Operation operation, Object document) {
+        String json;
+        try {
+            json = document != null ? mapper.writeValueAsString(document) : null;
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not serialize document " + id, e);
+            return;
+        }
+        jdbcTemplate.update(
+                "insert into index_outbox(index_name, doc_id, operation, document) values(?, ?, ?, ?)",
+                index, DataModelUtils.encode(id), operation.name(), json);
+    }
+
+    @Scheduled(fixedDelayString = "${openSearchOutboxPollMillis:1000}")
+    public void drain() {
+        try {
+            List<Entry> entries;
+            do {
+                entries = fetchBatch();
+                if (!entries.isEmpty()) {
+                    process(entries);
+                }
+            } while (entries.size() >= batchSize);
+            updateMetrics();
+        } catch (DataAccessException e) {
+            logger.warn("Could not process index outbox", e);
+        }
+    }
+
+    private List<Entry> fetchBatch() {
+        // skip locked so that instances sharing the database do not claim the same documents
+        var entries = jdbcTemplate.query(
+                "with heads as (select id, index_name, doc_id from index_outbox o "
+                        + "where next_attempt <= now() and (claimed_until is null or claimed_until < now()) "
+                        + "and not exists (select 1 from index_outbox e "
+                        + "where e.index_name = o.index_name and e.doc_id = o.doc_id and e.id < o.id) "
+                        + "order by id limit ? for update skip locked) "
+                        + "update index_outbox t set claimed_until = ? from heads h "
+                        + "where t.index_name = h.index_name and t.doc_id = h.doc_id "
+                        + "returning t.id, t.index_name, t.doc_id, t.operation, t.document, t.attempts",
+                (rs, rowNum) -> new Entry(
+                        rs.getLong(1),
+                        rs.getString(2),
+                        rs.getString(3),
+                        Operation.valueOf(rs.getString(4)),
+                        rs.getString(5),
+                        rs.getInt(6)),
+                batchSize, Timestamp.from(Instant.now().plusSeconds(CLAIM_SECONDS)));
+        entries.sort(Comparator.comparingLong(Entry::id));
+        return entries;
+    }
+
+    private void process(List<Entry> entries) {
+        // entries are in insertion order, coalesce operations on the same document
+        var coalesced = new LinkedHashMap<String, List<Entry>>();
+        for (var entry : entries) {
+            var key = entry.index() + "/" + entry.docId();
+            if (entry.operation() != Operation.UPDATE) {
+                coalesced.remove(key);
+            }
+            coalesced.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        }
+
+        var operations = new ArrayList<BulkOperation>();
+        var groups = new ArrayList<List<Entry>>();
+        for (var group : coalesced.values()) {
+            var operation = toBulkOperation(group);
+            if (operation != null) {
+                operations.add(operation);
+                groups.add(group);
+            }
+        }
+
+        var done = new ArrayList<Entry>(entries);
+        var retry = new ArrayList<Entry>();
+        try {
+            var response = client.bulk(new BulkRequest.Builder().operations(operations).build());
+            var items = response.items();
+            for (var i = 0; i < items.size() && i < groups.size(); i++) {
+                var item = items.get(i);
+                if (item.error() == null || item.status() == 404) {
+                    continue;
+                }
+                if (item.status() == 429 || item.status() >= 500) {
+                    retry.addAll(groups.get(i));
+                } else {
+                    logger.warn("Index operation for {} failed, caused by {}", item.id(), item.error().reason());
+                }
+            }
+            logger.debug("Sent {} index operations ({} outbox entries), took {} ms",
+                    operations.size(), entries.size(), response.took());
+        } catch (IOException | OpenSearchException e) {
+            logger.warn("Could not send index operations: {}", e.getMessage());
+            retry.addAll(groups.stream().flatMap(List::stream).toList());
+        }
+
+        done.removeAll(retry);
+        retry.removeIf(entry -> {
+            if (entry.attempts() + 1 >= maxAttempts) {
+                logger.warn("Dropping index operation {} for {} after {} attempts", entry.operation(), entry.docId(), maxAttempts);
+                done.add(entry);
+                return true;
+            }
+            return false;
+        });
+
+        jdbcTemplate.batchUpdate("delete from index_outbox where id = ?",
+                done.stream().map(entry -> new Object[]{entry.id()}).toList());
+        jdbcTemplate.batchUpdate("update index_outbox set attempts = attempts + 1, next_attempt = ?, claimed_until = null where id = ?",
+                retry.stream().map(entry -> new Object[]{
+                        Timestamp.from(Instant.now().plusSeconds(Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(entry.attempts(), 20)))),
+                        entry.id()
+                }).toList());
+    }
+
+    /**
+     * Combine the operations of one document into one bulk operation. The group starts with at most one
+     * INDEX or DELETE operation and continues with UPDATE operations, whose documents are merged in order.
+     */
+    private BulkOperation toBulkOperation(List<Entry> group) {
+        var first = group.get(0);
+        if (first.operation() == Operation.DELETE) {
+            return BulkOperation.of(b -> b.delete(d -> d.index(first.index()).id(first.docId())));
+        }
+        ObjectNode document = null;
+        for (var entry : group) {
+            var node = readDocument(entry);
+            if (node == null) {
+                continue;
+            }
+            document = document == null ? node : merge(document, node);
+        }
+        if (document == null) {
+            return null;
+        }
+        var doc = document;
+        if (first.operation() == Operation.INDEX) {
+            return BulkOperation.of(b -> b.index(i -> i.index(first.index()).id(first.docId()).document(doc)));
+        }
+        return BulkOperation.of(b -> b.update(u -> u.index(first.index()).id(first.docId()).document(doc)));
+    }
+
+    private ObjectNode readDocument(Entry entry) {
+        try {
+            var node = entry.document() != null ? mapper.readTree(entry.document()) : null;
+            return node instanceof ObjectNode objectNode ? objectNode : null;
+        } catch (JsonProcessingException e) {
+            logger.warn("Invalid document in index outbox for " + entry.docId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Merge a partial document the same way OpenSearch applies partial updates
+     */
+    private static ObjectNode merge(ObjectNode target, ObjectNode update) {
+        update.fields().forEachRemaining(field -> {
+            JsonNode existing = target.get(field.getKey());
+            if (existing instanceof ObjectNode existingObject && field.getValue() instanceof ObjectNode updateObject) {
+                merge(existingObject, updateObject);
+            } else {
+                target.set(field.getKey(), field.getValue());
+            }
+        });
+        return target;
+    }
+
+    private void updateMetrics() {
+        jdbcTemplate.query("select count(*), min(created) from index_outbox", rs -> {
+            pending.set(rs.getLong(1));
+            var oldest = rs.getTimestamp(2);
+            lagSeconds.set(oldest != null ? Math.max(0, Instant.now().getEpochSecond() - oldest.toInstant().getEpochSecond()) : 0);
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package fi.vm.yti.datamodel.api.v2.opensearch.index;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Persists the high-water mark of each search index, i.e. the time when the index was last known to be
+ * in sync with the triple store. Delta reindexing only indexes graphs modified after this time.
+ */
+@Service
+public class IndexStateStore {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public IndexStateStore(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * @param index index alias
+	 * @return high-water mark of the index or null if the index has not been synchronized yet
+	 */
+	public Instant getHighWaterMark(String index) {
+		var marks = jdbcTemplate.query(
+				"select high_water_mark from index_state where index_name = ?",
+				(rs, rowNum) -> rs.getTimestamp(1).toInstant(),
+				index);
+		return marks.isEmpty() ? null : marks.get(0);
+	}
+
+	public void setHighWaterMark(String index, Instant highWaterMark) {
+		jdbcTemplate.update(
+				"insert into index_state(index_name, high_water_mark) values(?, ?) "
+						+ "on conflict (index_name) do update set high_water_mark = excluded.high_water_mark",
+				index, Timestamp.from(highWaterMark));
+	}
+}
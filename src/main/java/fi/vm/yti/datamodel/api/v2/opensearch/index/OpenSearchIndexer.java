@@ -1,12 +1,12 @@
 package fi.vm.yti.datamodel.api.v2.opensearch.index;
 
-import com.google.common.collect.Iterables;
 import fi.vm.yti.datamodel.api.index.OpenSearchConnector;
 import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.v2.dto.Iow;
 import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.dto.ModelConstants;
 import fi.vm.yti.datamodel.api.v2.mapper.CrosswalkMapper;
+import fi.vm.yti.datamodel.api.v2.mapper.MapperUtils;
 import fi.vm.yti.datamodel.api.v2.mapper.ModelMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.ResourceMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.SchemaMapper;
@@ -18,26 +18,32 @@ import fi.vm.yti.datamodel.api.v2.utils.SparqlUtils;
 import org.apache.jena.arq.querybuilder.ConstructBuilder;
 import org.apache.jena.arq.querybuilder.ExprFactory;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolution;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.sparql.lang.sparql_11.ParseException;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
-import org.opensearch.client.opensearch.OpenSearchClient;
 import org.opensearch.client.opensearch._types.mapping.*;
-import org.opensearch.client.opensearch.core.BulkRequest;
-import org.opensearch.client.opensearch.core.bulk.BulkOperation;
-import org.opensearch.client.opensearch.core.bulk.IndexOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.topbraid.shacl.vocabulary.SH;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 import static fi.vm.yti.security.AuthorizationException.check;
 
@@ -61,7 +67,9 @@ public class OpenSearchIndexer {
     private final ModelMapper modelMapper;
     private final SchemaMapper schemaMapper;
     private final CrosswalkMapper crosswalkMapper;
-    private final OpenSearchClient client;
+    private final BulkIngester bulkIngester;
+    private final IndexStateStore indexStateStore;
+    private final IndexOutbox indexOutbox;
 
     public OpenSearchIndexer(OpenSearchConnector openSearchConnector,
 				    		 CoreRepository coreRepository,
@@ -71,7 +79,9 @@ public class OpenSearchIndexer {
                              ModelMapper modelMapper,
                              SchemaMapper schemaMapper,
                              CrosswalkMapper crosswalkMapper,
-                             OpenSearchClient client) {
+                             BulkIngester bulkIngester,
+                             IndexStateStore indexStateStore,
+                             IndexOutbox indexOutbox) {
         this.openSearchConnector = openSearchConnector;
         this.coreRepository = coreRepository;
         this.importsRepository = importsRepository;
@@ -80,24 +90,17 @@ public class OpenSearchIndexer {
         this.modelMapper = modelMapper;
         this.schemaMapper = schemaMapper;
         this.crosswalkMapper = crosswalkMapper;
-        this.client = client;
+        this.bulkIngester = bulkIngester;
+        this.indexStateStore = indexStateStore;
+        this.indexOutbox = indexOutbox;
     }
 
     public void initIndexes(){
         try {
-            openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_MODEL);
-            openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_RESOURCE);
-			openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_CROSSWALK);
-			openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_SCHEMA);
-            logger.info("v2 Indexes cleaned");
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_MODEL, getModelMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_RESOURCE, getResourceMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_SCHEMA, getSchemaMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_CROSSWALK, getCrosswalkMappings());
-            initModelIndex();
-            initResourceIndex();
-            initSchemaIndex();
-            initCrosswalkIndex();
+            rebuildIndex(OPEN_SEARCH_INDEX_MODEL, getModelMappings(), this::initModelIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_RESOURCE, getResourceMappings(), this::initResourceIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_SCHEMA, getSchemaMappings(), this::initSchemaIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_CROSSWALK, getCrosswalkMappings(), this::initCrosswalkIndex);
 
             logger.info("Indexes initialized");
         } catch (IOException ex) {
@@ -111,34 +114,94 @@ public class OpenSearchIndexer {
             reindexAll();
             return;
         }
+        try {
+            rebuildIndex(index);
+        } catch (IOException ex) {
+            logger.warn("Reindex failed for " + index, ex);
+        }
+    }
+
+    /**
+     * Index only the graphs modified after the last synchronization of the index and remove documents
+     * whose graphs no longer exist. Indexes that have not been synchronized yet are fully rebuilt.
+     * The external resources index has no modification timestamps, so it is always rebuilt.
+     *
+     * @param index index to synchronize, all indexes if null
+     */
+    public void reindexDelta(String index) {
+        check(authorizationManager.hasRightToDropDatabase());
+        var indexes = index != null
+                ? List.of(index)
+                : List.of(OPEN_SEARCH_INDEX_MODEL, OPEN_SEARCH_INDEX_RESOURCE, OPEN_SEARCH_INDEX_SCHEMA, OPEN_SEARCH_INDEX_CROSSWALK);
+        for (var indexName : indexes) {
+            try {
+                deltaIndex(indexName);
+            } catch (IOException ex) {
+                logger.warn("Delta reindex failed for " + indexName, ex);
+            }
+        }
+    }
+
+    private void deltaIndex(String index) throws IOException {
+        // changes committed while indexing are picked up by the next run
+        var startTime = Instant.now();
+        var since = indexStateStore.getHighWaterMark(index);
+        if (since == null || index.equals(OPEN_SEARCH_INDEX_EXTERNAL)) {
+            rebuildIndex(index);
+            return;
+        }
+        logger.info("Indexing changes to {} since {}", index, since);
+        int failed;
+        switch (index) {
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL -> {
+                failed = initModelIndex(index, getModelIndexQuery(since));
+                removeDeleted(index, selectIds(getModelIndexQuery(null), coreRepository::querySelect));
+            }
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_RESOURCE -> {
+                failed = initResourceIndex(index, getResourceIndexQuery(since));
+                removeDeleted(index, selectIds(getResourceIndexQuery(null), coreRepository::querySelect));
+            }
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_SCHEMA -> {
+                failed = initSchemaIndex(index, getSchemaIndexQuery(since));
+                removeDeleted(index, selectIds(getSchemaIndexQuery(null), jenaService::selectWithQuerySchemas));
+            }
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_CROSSWALK -> {
+                failed = initCrosswalkIndex(index, getCrosswalkIndexQuery(since));
+                removeDeleted(index, selectIds(getCrosswalkIndexQuery(null), jenaService::selectWithQueryCrosswalks));
+            }
+            default -> throw new IllegalArgumentException("Given value not allowed");
+        }
+        if (failed > 0) {
+            // the failed documents are indexed again by the next run
+            logger.warn("High-water mark of {} not moved, {} documents could not be indexed", index, failed);
+            return;
+        }
+        indexStateStore.setHighWaterMark(index, startTime);
+    }
+
+    private void rebuildIndex(String index) throws IOException {
         switch (index){
-            case OpenSearchIndexer.OPEN_SEARCH_INDEX_EXTERNAL -> initExternalResourceIndex();
-            case OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL -> initModelIndex();
-            case OpenSearchIndexer.OPEN_SEARCH_INDEX_RESOURCE -> initResourceIndex();
-            case OpenSearchIndexer.OPEN_SEARCH_INDEX_SCHEMA -> initSchemaIndex();
-            case OpenSearchIndexer.OPEN_SEARCH_INDEX_CROSSWALK -> initCrosswalkIndex();
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_EXTERNAL ->
+                    rebuildIndex(index, getExternalResourceMappings(), this::initExternalResourceIndex);
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL ->
+                    rebuildIndex(index, getModelMappings(), this::initModelIndex);
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_RESOURCE ->
+                    rebuildIndex(index, getResourceMappings(), this::initResourceIndex);
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_SCHEMA ->
+                    rebuildIndex(index, getSchemaMappings(), this::initSchemaIndex);
+            case OpenSearchIndexer.OPEN_SEARCH_INDEX_CROSSWALK ->
+                    rebuildIndex(index, getCrosswalkMappings(), this::initCrosswalkIndex);
             default -> throw new IllegalArgumentException("Given value not allowed");
         }
     }
 
     public void reindexAll() {
         try {
-            openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_MODEL);
-            openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_RESOURCE);
-			openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_CROSSWALK);
-			openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_SCHEMA);
-			openSearchConnector.cleanIndex(OPEN_SEARCH_INDEX_EXTERNAL);
-            logger.info("v2 Indexes cleaned");
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_MODEL, getModelMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_RESOURCE, getResourceMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_CROSSWALK, getCrosswalkMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_SCHEMA, getSchemaMappings());
-            openSearchConnector.createIndex(OPEN_SEARCH_INDEX_EXTERNAL, getExternalResourceMappings());
-            initModelIndex();
-            initResourceIndex();
-            initSchemaIndex();
-            initCrosswalkIndex();
-            initExternalResourceIndex();
+            rebuildIndex(OPEN_SEARCH_INDEX_MODEL, getModelMappings(), this::initModelIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_RESOURCE, getResourceMappings(), this::initResourceIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_SCHEMA, getSchemaMappings(), this::initSchemaIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_CROSSWALK, getCrosswalkMappings(), this::initCrosswalkIndex);
+            rebuildIndex(OPEN_SEARCH_INDEX_EXTERNAL, getExternalResourceMappings(), this::initExternalResourceIndex);
 
             logger.info("Indexes initialized");
         } catch (IOException ex) {
@@ -146,6 +209,35 @@ public class OpenSearchIndexer {
         }
     }
 
+    /**
+     * Blue/green rebuild of an index. Documents are loaded into a new versioned index while searches are still
+     * served from the old one through the alias. The alias is swapped once the new index is complete.
+     * The start time is stored as the high-water mark of the index, so writes that went to the old index
+     * during the rebuild are picked up by the next delta reindex. If any document cannot be indexed, the new
+     * index is discarded and the alias and the high-water mark are kept.
+     *
+     * @param alias alias (e.g. schemas_v2) the index is served from
+     * @param mappings mappings of the index
+     * @param loader loads all documents to the given physical index and returns the number of failed documents
+     * @throws IOException in case there is a problem sending the request or parsing back the response, or some
+     * documents could not be indexed
+     */
+    private void rebuildIndex(String alias, TypeMapping mappings, ToIntFunction<String> loader) throws IOException {
+        var startTime = Instant.now();
+        var index = openSearchConnector.createVersionedIndex(alias, mappings);
+        try {
+            var failed = loader.applyAsInt(index);
+            if (failed > 0) {
+                throw new IOException(failed + " documents could not be indexed to " + index);
+            }
+            openSearchConnector.activateIndex(alias, index);
+        } catch (IOException | RuntimeException ex) {
+            openSearchConnector.discardIndex(index);
+            throw ex;
+        }
+        indexStateStore.setHighWaterMark(alias, startTime);
+    }
+
     private TypeMapping getCrosswalkMappings() {
         return new TypeMapping.Builder()
                 .dynamicTemplates(getCrosswalkDynamicTemplates())
@@ -189,17 +281,17 @@ public class OpenSearchIndexer {
      */
     public void createModelToIndex(IndexModel model) {
         logger.info("Indexing: {}", model.getId());
-        openSearchConnector.putToIndex(OPEN_SEARCH_INDEX_MODEL, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_MODEL, model.getId(), IndexOutbox.Operation.INDEX, model);
     }
     
     public void createSchemaToIndex(IndexSchema model) { 
         logger.info("Indexing: {}", model.getId());
-        openSearchConnector.putToIndex(OPEN_SEARCH_INDEX_SCHEMA, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_SCHEMA, model.getId(), IndexOutbox.Operation.INDEX, model);
     }    
 
     public void createCrosswalkToIndex(IndexCrosswalk model) {
         logger.info("Indexing: {}", model.getId());
-        openSearchConnector.putToIndex(OPEN_SEARCH_INDEX_CROSSWALK, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_CROSSWALK, model.getId(), IndexOutbox.Operation.INDEX, model);
     }    
     /**
      * Update existing model in index
@@ -207,15 +299,15 @@ public class OpenSearchIndexer {
      * @param model Model to index
      */
     public void updateModelToIndex(IndexModel model) {
-        openSearchConnector.updateToIndex(OPEN_SEARCH_INDEX_MODEL, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_MODEL, model.getId(), IndexOutbox.Operation.UPDATE, model);
     }
     
     public void updateSchemaToIndex(IndexSchema model) {
-        openSearchConnector.updateToIndex(OPEN_SEARCH_INDEX_SCHEMA, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_SCHEMA, model.getId(), IndexOutbox.Operation.UPDATE, model);
     }
     
     public void deleteModelFromIndex(String graph) {
-        openSearchConnector.removeFromIndex(OPEN_SEARCH_INDEX_MODEL, graph);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_MODEL, graph, IndexOutbox.Operation.DELETE, null);
     }
 
     /**
@@ -225,7 +317,7 @@ public class OpenSearchIndexer {
      */
     public void createResourceToIndex(IndexResource indexResource) {
         logger.info("Indexing: {}", indexResource.getId());
-        openSearchConnector.putToIndex(OPEN_SEARCH_INDEX_RESOURCE, indexResource.getId(), indexResource);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_RESOURCE, indexResource.getId(), IndexOutbox.Operation.INDEX, indexResource);
     }
 
     /**
@@ -235,30 +327,38 @@ public class OpenSearchIndexer {
      */
     public void updateResourceToIndex(IndexResource indexResource) {
         logger.info("Updating index for: {}", indexResource.getId());
-        openSearchConnector.updateToIndex(OPEN_SEARCH_INDEX_RESOURCE, indexResource.getId(), indexResource);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_RESOURCE, indexResource.getId(), IndexOutbox.Operation.UPDATE, indexResource);
     }
 
     public void deleteResourceFromIndex(String id){
         logger.info("Removing index for: {}", id);
-        openSearchConnector.removeFromIndex(OPEN_SEARCH_INDEX_RESOURCE, id);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_RESOURCE, id, IndexOutbox.Operation.DELETE, null);
     }
 
     public void updateCrosswalkToIndex(IndexCrosswalk model) {
-        openSearchConnector.updateToIndex(OPEN_SEARCH_INDEX_CROSSWALK, model.getId(), model);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_CROSSWALK, model.getId(), IndexOutbox.Operation.UPDATE, model);
     }
 
     public void deleteCrosswalkFromIndex(String graph) {
-        openSearchConnector.removeFromIndex(OPEN_SEARCH_INDEX_CROSSWALK, graph);
+        indexOutbox.enqueue(OPEN_SEARCH_INDEX_CROSSWALK, graph, IndexOutbox.Operation.DELETE, null);
     }
 
 	public void deleteSchemaFromIndex(String graph) {
-		openSearchConnector.removeFromIndex(OPEN_SEARCH_INDEX_SCHEMA, graph);		
+		indexOutbox.enqueue(OPEN_SEARCH_INDEX_SCHEMA, graph, IndexOutbox.Operation.DELETE, null);		
 	}
 
     /**
      * Init model index
      */
     public void initModelIndex() {
+        initModelIndex(OPEN_SEARCH_INDEX_MODEL);
+    }
+
+    private int initModelIndex(String indexName) {
+        return initModelIndex(indexName, getModelIndexQuery(null));
+    }
+
+    private ConstructBuilder getModelIndexQuery(Instant modifiedSince) {
         var constructBuilder = new ConstructBuilder()
                 .addPrefixes(ModelConstants.PREFIXES);
         SparqlUtils.addConstructProperty(GRAPH_VARIABLE, constructBuilder, RDFS.label, "?prefLabel");
@@ -276,6 +376,11 @@ public class OpenSearchIndexer {
         constructBuilder.addConstruct(GRAPH_VARIABLE, DCTerms.language, "?language")
                 .addOptional(GRAPH_VARIABLE, "dcterms:language/rdf:rest*/rdf:first", "?language")
                 .addOptional(GRAPH_VARIABLE, DCTerms.language, "?language");
+        addModifiedFilter(constructBuilder, modifiedSince);
+        return constructBuilder;
+    }
+
+    private int initModelIndex(String indexName, ConstructBuilder constructBuilder) {
         var indexModels = coreRepository.queryConstruct(constructBuilder.build());
         var list = new ArrayList<IndexModel>();
         indexModels.listSubjects().forEach(next -> {
@@ -284,11 +389,19 @@ public class OpenSearchIndexer {
             var indexModel = modelMapper.mapToIndexModel(next.getLocalName(), newModel);
             list.add(indexModel);
         });
-        bulkInsert(OPEN_SEARCH_INDEX_MODEL, list);
+        return bulkInsert(indexName, list);
     }
 
 
     public void initSchemaIndex() {
+        initSchemaIndex(OPEN_SEARCH_INDEX_SCHEMA);
+    }
+
+    private int initSchemaIndex(String indexName) {
+        return initSchemaIndex(indexName, getSchemaIndexQuery(null));
+    }
+
+    private ConstructBuilder getSchemaIndexQuery(Instant modifiedSince) {
         var constructBuilder = new ConstructBuilder()
                 .addPrefixes(ModelConstants.PREFIXES);
         SparqlUtils.addConstructProperty(GRAPH_VARIABLE, constructBuilder, RDFS.label, "?prefLabel");
@@ -329,17 +442,31 @@ public class OpenSearchIndexer {
 		} catch (ParseException e) {
 			e.printStackTrace();
 		}
-        
+        addModifiedFilter(constructBuilder, modifiedSince);
+        return constructBuilder;
+    }
+
+    private int initSchemaIndex(String indexName, ConstructBuilder constructBuilder) {
         var indexModels = jenaService.constructWithQuerySchemas(constructBuilder.build());
+        var revisions = MapperUtils.mapToRevisionsByAggregationKey(
+                jenaService.constructWithQuerySchemas(MapperUtils.getAllRevisionsQuery()));
         var list = new ArrayList<IndexSchema>();
         indexModels.listSubjects().forEach(next -> {
-            var indexModel = schemaMapper.mapToIndexModel(next.getURI(),indexModels);
+            var indexModel = schemaMapper.mapToIndexModel(next.getURI(), indexModels, revisions);
             list.add(indexModel);
         });
-        bulkInsert(OPEN_SEARCH_INDEX_SCHEMA, list);
+        return bulkInsert(indexName, list);
     }
     
     public void initResourceIndex() {
+        initResourceIndex(OPEN_SEARCH_INDEX_RESOURCE);
+    }
+
+    private int initResourceIndex(String indexName) {
+        return initResourceIndex(indexName, getResourceIndexQuery(null));
+    }
+
+    private ConstructBuilder getResourceIndexQuery(Instant modifiedSince) {
         var constructBuilder = new ConstructBuilder()
                 .addPrefixes(ModelConstants.PREFIXES)
                 .addConstruct(GRAPH_VARIABLE, RDF.type, "?resourceType")
@@ -358,7 +485,11 @@ public class OpenSearchIndexer {
         SparqlUtils.addConstructOptional(GRAPH_VARIABLE, constructBuilder, OWL.equivalentProperty, "?equivalentProperty");
         SparqlUtils.addConstructOptional(GRAPH_VARIABLE, constructBuilder, DCTerms.subject, "?subject");
         SparqlUtils.addConstructOptional(GRAPH_VARIABLE, constructBuilder, SH.targetClass, "?targetClass");
+        addModifiedFilter(constructBuilder, modifiedSince);
+        return constructBuilder;
+    }
 
+    private int initResourceIndex(String indexName, ConstructBuilder constructBuilder) {
         var indexClasses = coreRepository.queryConstruct(constructBuilder.build());
         var list = new ArrayList<IndexResource>();
         indexClasses.listSubjects().forEach(next -> {
@@ -368,10 +499,18 @@ public class OpenSearchIndexer {
             var indexClass = ResourceMapper.mapToIndexResource(newClass, next.getURI());
             list.add(indexClass);
         });
-        bulkInsert(OPEN_SEARCH_INDEX_RESOURCE, list);
+        return bulkInsert(indexName, list);
     }
 
     public void initCrosswalkIndex() {
+        initCrosswalkIndex(OPEN_SEARCH_INDEX_CROSSWALK);
+    }
+
+    private int initCrosswalkIndex(String indexName) {
+        return initCrosswalkIndex(indexName, getCrosswalkIndexQuery(null));
+    }
+
+    private ConstructBuilder getCrosswalkIndexQuery(Instant modifiedSince) {
         var constructBuilder = new ConstructBuilder()
                 .addPrefixes(ModelConstants.PREFIXES);
         SparqlUtils.addConstructProperty(GRAPH_VARIABLE, constructBuilder, RDFS.label, "?prefLabel");
@@ -411,17 +550,28 @@ public class OpenSearchIndexer {
 					);
 		} catch (ParseException e) {
 			e.printStackTrace();
-		}        
+		}
+        addModifiedFilter(constructBuilder, modifiedSince);
+        return constructBuilder;
+    }
+
+    private int initCrosswalkIndex(String indexName, ConstructBuilder constructBuilder) {
         var indexModels = jenaService.constructWithQueryCrosswalks(constructBuilder.build());
+        var revisions = MapperUtils.mapToRevisionsByAggregationKey(
+                jenaService.constructWithQueryCrosswalks(MapperUtils.getAllRevisionsQuery()));
         var list = new ArrayList<IndexCrosswalk>();
         indexModels.listSubjects().forEach(next -> {
-            var indexModel = crosswalkMapper.mapToIndexModel(next.getURI(), indexModels);
+            var indexModel = crosswalkMapper.mapToIndexModel(next.getURI(), indexModels, revisions);
             list.add(indexModel);
         });
-        bulkInsert(OPEN_SEARCH_INDEX_CROSSWALK, list);
+        return bulkInsert(indexName, list);
     }
     
     public void initExternalResourceIndex() {
+        initExternalResourceIndex(OPEN_SEARCH_INDEX_EXTERNAL);
+    }
+
+    private int initExternalResourceIndex(String indexName) {
         var builder = new ConstructBuilder()
                 .addPrefixes(ModelConstants.PREFIXES);
 
@@ -444,44 +594,60 @@ public class OpenSearchIndexer {
             }
             list.add(indexClass);
         });
-        logger.info("Indexing {} items to index {},", list.size(), OPEN_SEARCH_INDEX_EXTERNAL);
-        bulkInsert(OPEN_SEARCH_INDEX_EXTERNAL, list);
-    }
-
-    public <T extends IndexBase> void bulkInsert(String indexName,
-                                                 List<T> documents) {
-        List<BulkOperation> bulkOperations = new ArrayList<>();
-        documents.forEach(doc ->
-                bulkOperations.add(new IndexOperation.Builder<IndexBase>()
-                        .index(indexName)
-                        .id(DataModelUtils.encode(doc.getId()))
-                        .document(doc)
-                        .build().
-                        _toBulkOperation())
-        );
-        if (bulkOperations.isEmpty()) {
-            logger.info("No data to index");
+        logger.info("Indexing {} items to index {},", list.size(), indexName);
+        return bulkInsert(indexName, list);
+    }
+
+    /**
+     * Restrict an index query to resources modified after the given time
+     */
+    private static void addModifiedFilter(ConstructBuilder constructBuilder, Instant modifiedSince) {
+        if (modifiedSince == null) {
             return;
         }
+        var exprFactory = new ExprFactory();
+        var since = NodeFactory.createLiteral(modifiedSince.toString(), XSDDatatype.XSDdateTime);
+        constructBuilder.addFilter(exprFactory.or(
+                exprFactory.gt("?modified", since),
+                exprFactory.and(exprFactory.bound("?contentModified"), exprFactory.gt("?contentModified", since))));
+    }
 
-        Iterables.partition(bulkOperations, 300).forEach(batch -> {
-            var bulkRequest = new BulkRequest.Builder()
-                    .operations(batch);
-            try {
-                var response = client.bulk(bulkRequest.build());
-
-                if (response.errors()) {
-                    logger.warn("Errors occurred in bulk operation");
-                    response.items().stream()
-                            .filter(i -> i.error() != null)
-                            .forEach(i -> logger.warn("Error in document {}, caused by {}", i.id(), i.error().reason()));
-                }
-                logger.debug("Bulk insert status for {}: errors: {}, items: {}, took: {}",
-                        indexName, response.errors(), response.items().size(), response.took());
-            } catch (IOException e) {
-                logger.warn("Error in bulk operation", e);
-            }
-        });
+    /**
+     * Select the (encoded) document ids an index query would produce
+     */
+    private static Set<String> selectIds(ConstructBuilder constructBuilder, BiConsumer<Query, Consumer<QuerySolution>> select) {
+        var query = constructBuilder.build();
+        query.setQuerySelectType();
+        query.setDistinct(true);
+        query.addResultVar(GRAPH_VARIABLE.substring(1));
+        var ids = new HashSet<String>();
+        select.accept(query, solution -> ids.add(DataModelUtils.encode(solution.getResource(GRAPH_VARIABLE.substring(1)).getURI())));
+        return ids;
+    }
+
+    private void removeDeleted(String index, Set<String> existingIds) throws IOException {
+        var removed = openSearchConnector.getIndexedIds(index);
+        removed.removeAll(existingIds);
+        if (!removed.isEmpty()) {
+            logger.info("Removing {} deleted documents from {}", removed.size(), index);
+            openSearchConnector.removeAllFromIndex(index, removed);
+        }
+    }
+
+    /**
+     * @return number of documents that could not be indexed
+     */
+    public <T extends IndexBase> int bulkInsert(String indexName,
+                                                List<T> documents) {
+        if (documents.isEmpty()) {
+            logger.info("No data to index");
+            return 0;
+        }
+        var failed = bulkIngester.ingest(indexName, documents);
+        if (failed > 0) {
+            logger.warn("{} documents could not be indexed to {}", failed, indexName);
+        }
+        return failed;
     }
 
     private List<Map<String, DynamicTemplate>> getModelDynamicTemplates() {
@@ -6,11 +6,16 @@ import org.apache.jena.arq.querybuilder.AskBuilder;
 import org.apache.jena.arq.querybuilder.UpdateBuilder;
 import org.apache.jena.arq.querybuilder.WhereBuilder;
 import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
 import org.apache.jena.update.UpdateRequest;
 import org.springframework.http.HttpStatus;
 
@@ -57,6 +62,51 @@ public abstract class BaseRepository {
         write.put(graph, model);
     }
 
+    /**
+     * Write only the changed triples of a graph with a single DELETE DATA / INSERT DATA update
+     * instead of replacing the whole graph. Falls back to put if the changes contain blank nodes,
+     * because blank nodes cannot be referenced in DELETE DATA.
+     * @param graph Graph name
+     * @param oldModel Graph content as it was fetched
+     * @param newModel Modified graph content
+     */
+    public void putDiff(String graph, Model oldModel, Model newModel) {
+        var removed = oldModel.difference(newModel);
+        var added = newModel.difference(oldModel);
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        if (update == null || hasBlankNodes(removed) || hasBlankNodes(added)) {
+            put(graph, newModel);
+            return;
+        }
+        var graphNode = NodeFactory.createURI(graph);
+        var request = new UpdateRequest();
+        if (!removed.isEmpty()) {
+            request.add(new UpdateDataDelete(toQuadData(graphNode, removed)));
+        }
+        if (!added.isEmpty()) {
+            request.add(new UpdateDataInsert(toQuadData(graphNode, added)));
+        }
+        try {
+            update.update(request);
+        } catch (HttpException ex) {
+            throw new JenaQueryException();
+        }
+    }
+
+    private static QuadDataAcc toQuadData(Node graph, Model model) {
+        var quads = new QuadDataAcc();
+        model.getGraph().find().forEachRemaining(triple -> quads.addQuad(new Quad(graph, triple)));
+        return quads;
+    }
+
+    private static boolean hasBlankNodes(Model model) {
+        return model.getGraph().find()
+                .filterKeep(triple -> triple.getSubject().isBlank() || triple.getObject().isBlank())
+                .hasNext();
+    }
+
     public void delete(String graph) {
         try{
             write.delete(graph);
@@ -69,14 +119,37 @@ public abstract class BaseRepository {
         }
     }
 
-    public void deleteResource(String resource) {
-        var deleteBuilder = new UpdateBuilder();
-        var expr = deleteBuilder.getExprFactory();
-        var filter = expr.or(expr.eq("?s", NodeFactory.createURI(resource)), expr.eq("?o", NodeFactory.createURI(resource)));
-        deleteBuilder.addDelete("?g", "?s", "?p", "?o")
-                .addGraph("?g", new WhereBuilder().addWhere("?s", "?p", "?o").addFilter(filter));
+    /**
+     * Delete resource from the graph it belongs to. Only references inside the same graph are removed.
+     * @param graph Graph the resource belongs to
+     * @param resource Resource uri
+     */
+    public void deleteResource(String graph, String resource) {
+        deleteResource(graph, resource, false);
+    }
+
+    /**
+     * Delete resource from the graph it belongs to. Both patterns have a bound subject or object
+     * so the store can use its indexes instead of scanning every triple in the dataset.
+     * @param graph Graph the resource belongs to
+     * @param resource Resource uri
+     * @param deleteReferences Remove also triples referencing the resource in other graphs
+     */
+    public void deleteResource(String graph, String resource, boolean deleteReferences) {
+        var graphNode = NodeFactory.createURI(graph);
+        var resourceNode = NodeFactory.createURI(resource);
+        var request = new UpdateRequest();
+        request.add(new UpdateBuilder()
+                .addDelete(graphNode, resourceNode, "?p", "?o")
+                .addGraph(graphNode, new WhereBuilder().addWhere(resourceNode, "?p", "?o"))
+                .build());
+        Object referenceGraph = deleteReferences ? "?g" : graphNode;
+        request.add(new UpdateBuilder()
+                .addDelete(referenceGraph, "?s", "?p", resourceNode)
+                .addGraph(referenceGraph, new WhereBuilder().addWhere("?s", "?p", resourceNode))
+                .build());
         try{
-            update.update(deleteBuilder.buildRequest());
+            update.update(request);
         } catch (HttpException ex) {
             if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
                 throw new ResourceNotFoundException(resource);
@@ -0,0 +1,142 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Transforms batches of source documents with a crosswalk. Documents are transformed in parallel, at most a
+ * configured number at the same time, and the results are written as JSON Lines in the order of the input. A
+ * failing document produces an error line instead of failing the whole batch.
+ */
+@Service
+public class BatchTransformationService {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchTransformationService.class);
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final DataTransformationService dataTransformationService;
+	private final ExecutorService executor;
+	private final int concurrency;
+	private final int window;
+
+	public BatchTransformationService(DataTransformationService dataTransformationService,
+			@Value("${transformationConcurrency:4}") int concurrency,
+			@Value("${transformationWindow:64}") int window) {
+		this.dataTransformationService = dataTransformationService;
+		this.concurrency = concurrency;
+		this.window = Math.max(window, concurrency);
+		this.executor = createExecutor(concurrency);
+	}
+
+	/**
+	 * Virtual threads on runtimes that have them (Java 21+), a fixed pool otherwise. Concurrency is limited
+	 * separately, so both are bounded the same way.
+	 */
+	private static ExecutorService createExecutor(int concurrency) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(concurrency);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Transform the documents and write a line {"index": n, "output": "..."} or {"index": n, "error": "..."}
+	 * for each of them. Documents are read from the iterator only as fast as the results are written.
+	 *
+	 * @return number of documents that could not be transformed
+	 */
+	public int transform(Iterator<String> documents, String sourceFormat, TransformationPlan plan, String targetFormat,
+			Map<String, String> namespaces, String rootElement, OutputStream output) throws IOException {
+		var inFlight = new Semaphore(concurrency);
+		Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+		int index = 0;
+		int failed = 0;
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(null);
+			try {
+				while (documents.hasNext()) {
+					String document = documents.next();
+					inFlight.acquire();
+					try {
+						pending.add(CompletableFuture
+								.supplyAsync(() -> transform(document, sourceFormat, plan, targetFormat, namespaces, rootElement), executor)
+								.whenComplete((result, ex) -> inFlight.release()));
+					} catch (RuntimeException e) {
+						inFlight.release();
+						throw e;
+					}
+					if (pending.size() >= window) {
+						failed += write(generator, index++, pending.poll());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("Batch transformation interrupted after {} documents", index);
+			}
+			while (!pending.isEmpty()) {
+				failed += write(generator, index++, pending.poll());
+			}
+		} finally {
+			pending.forEach(future -> future.cancel(false));
+		}
+		logger.info("Transformed {} documents, failed: {}", index, failed);
+		return failed;
+	}
+
+	private String transform(String document, String sourceFormat, TransformationPlan plan, String targetFormat,
+			Map<String, String> namespaces, String rootElement) {
+		try {
+			return dataTransformationService.transform(document, sourceFormat, plan, targetFormat, namespaces, rootElement);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private int write(JsonGenerator generator, int index, CompletableFuture<String> result) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("index", index);
+		int failed = 0;
+		try {
+			generator.writeStringField("output", result.join());
+		} catch (CompletionException | CancellationException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			generator.writeStringField("error", cause.getMessage() != null ? cause.getMessage() : cause.toString());
+			failed = 1;
+		}
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		// results are handed to the client as soon as they are in order
+		generator.flush();
+		return failed;
+	}
+}
@@ -16,6 +16,7 @@ import fi.vm.yti.datamodel.api.v2.repository.ImportsRepository;
 import fi.vm.yti.security.AuthenticatedUserProvider;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.SimpleSelector;
@@ -141,6 +142,7 @@ public class ClassService {
         check(authorizationManager.hasRightToModel(prefix, model));
         checkDataModelType(model.getResource(modelUri), dto);
         terminologyService.resolveConcept(dto.getSubject());
+        var oldModel = ModelFactory.createDefaultModel().add(model);
 
 
         if(applicationProfile) {
@@ -150,7 +152,7 @@ public class ClassService {
             ClassMapper.createOntologyClassAndMapToModel(modelUri, model, (ClassDTO) dto, userProvider.getUser());
         }
 
-        coreRepository.put(modelUri, model);
+        coreRepository.putDiff(modelUri, oldModel, model);
         openSearchIndexer.createResourceToIndex(ResourceMapper.mapToIndexResource(model, classUri));
         return new URI(classUri);
     }
@@ -185,6 +187,7 @@ public class ClassService {
         checkDataModelType(model.getResource(graph), dto);
         check(authorizationManager.hasRightToModel(prefix, model));
         terminologyService.resolveConcept(dto.getSubject());
+        var oldModel = ModelFactory.createDefaultModel().add(model);
 
         var classResource = model.getResource(classURI);
         if (MapperUtils.isLibrary(model.getResource(graph))) {
@@ -218,7 +221,7 @@ public class ClassService {
             ClassMapper.mapToUpdateNodeShape(model, graph, classResource, (NodeShapeDTO) dto,
                     nodeShapeProperties, userProvider.getUser());
         }
-        coreRepository.put(graph, model);
+        coreRepository.putDiff(graph, oldModel, model);
 
         var indexClass = ResourceMapper.mapToIndexResource(model, classURI);
         openSearchIndexer.updateResourceToIndex(indexClass);
@@ -237,7 +240,7 @@ public class ClassService {
         }
         var model = coreRepository.fetch(modelURI);
         check(authorizationManager.hasRightToModel(prefix, model));
-        coreRepository.deleteResource(classURI);
+        coreRepository.deleteResource(modelURI, classURI, true);
         openSearchIndexer.deleteResourceFromIndex(classURI);
     }
 
@@ -318,6 +321,7 @@ public class ClassService {
         var model = coreRepository.fetch(modelURI);
         var classURI = modelURI + ModelConstants.RESOURCE_SEPARATOR + nodeShapeIdentifier;
         check(authorizationManager.hasRightToModel(prefix, model));
+        var oldModel = ModelFactory.createDefaultModel().add(model);
 
         var classResource = model.getResource(classURI);
         var existingProperties = getTargetNodeProperties(MapperUtils.propertyToString(classResource, SH.node));
@@ -326,7 +330,7 @@ public class ClassService {
         }else {
             ClassMapper.mapAppendNodeShapeProperty(classResource, uri, existingProperties);
         }
-        coreRepository.put(modelURI, model);
+        coreRepository.putDiff(modelURI, oldModel, model);
     }
 
     public void togglePropertyShape(String prefix, String propertyUri) {
@@ -337,7 +341,8 @@ public class ClassService {
         }
         var model = coreRepository.fetch(modelURI);
         check(authorizationManager.hasRightToModel(prefix, model));
+        var oldModel = ModelFactory.createDefaultModel().add(model);
         ClassMapper.toggleAndMapDeactivatedProperty(model, propertyUri);
-        coreRepository.put(modelURI, model);
+        coreRepository.putDiff(modelURI, oldModel, model);
     }
 }
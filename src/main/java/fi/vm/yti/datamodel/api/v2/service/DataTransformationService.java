@@ -1,7 +1,10 @@
 package fi.vm.yti.datamodel.api.v2.service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
 
@@ -10,5 +13,32 @@ public interface DataTransformationService {
 	//public String transform(String sourceDocument, String sourceFormat, String targetFormat, String crosswalkID) throws Exception;
 	public String transform(String sourceDocument, String sourceFormat, List<MappingDTO> mappings, String targetFormat) throws Exception;
 	public String transform(String sourceDocument, String sourceFormat, List<MappingDTO> mappings, String targetFormat, Map<String, String> namespaces, String rootElement) throws Exception;
+	public String transform(String sourceDocument, String sourceFormat, TransformationPlan plan, String targetFormat, Map<String, String> namespaces, String rootElement) throws Exception;
+
+	/**
+	 * Transform a source with many records, one record at a time. Each record is transformed separately and
+	 * written to the output as soon as it is ready, so memory use does not grow with the size of the source.
+	 * Json output is written as JSON Lines, csv output as rows under one header and xml output as elements of a
+	 * records root element.
+	 *
+	 * @param source source document, closed when done
+	 * @param sourceFormat csv (record per row), ndjson (record per line), xml (record per recordElement) or json (one record)
+	 * @param recordElement name of the repeated record element in xml sources
+	 * @param output output for the transformed records, flushed but not closed
+	 * @return number of records transformed
+	 */
+	public long transformRecords(InputStream source, String sourceFormat, TransformationPlan plan, String targetFormat, Map<String, String> namespaces, String rootElement, String recordElement, OutputStream output) throws Exception;
+
+	public TransformationPlan compile(List<MappingDTO> mappings);
+
+	/**
+	 * Get the cached plan of a crosswalk or compile it from the mappings given by the loader
+	 *
+	 * @param crosswalkPID crosswalk PID
+	 * @param modified modification time of the crosswalk, which changes on every mapping change. It must be read
+	 * before the mappings, a new plan is compiled when it changes.
+	 * @param mappings loader for the mappings of the crosswalk
+	 */
+	public TransformationPlan getPlan(String crosswalkPID, String modified, Supplier<List<MappingDTO>> mappings);
 
 }
@@ -0,0 +1,307 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobStatus;
+import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Background processing of uploaded schema and crosswalk files. Jobs are stored in Postgres together with the
+ * uploaded content and run on a bounded worker pool, so an upload returns as soon as its job has been stored.
+ * Running jobs keep a heartbeat in the database; jobs whose heartbeat stops, for example because the instance
+ * running them was restarted, are queued again until they have been attempted the configured number of times.
+ * Heartbeats are sent from their own thread so that other scheduled tasks cannot delay them, and the updates of a
+ * run are matched by its attempt number so that a run which has been replaced cannot store its result.
+ */
+@Service
+public class IngestionJobService {
+
+	public enum Operation {
+		// content of a schema or crosswalk created for the job
+		CREATE,
+		// content uploaded to an existing schema or crosswalk
+		UPLOAD
+	}
+
+	public record Job(UUID id, MSCRType type, Operation operation, String pid, String format, String contentURL,
+			String contentType, int attempts) {}
+
+	/**
+	 * Progress reported by a running job
+	 */
+	@FunctionalInterface
+	public interface Progress {
+		Progress NONE = (percent, step) -> {};
+
+		void update(int percent, String step);
+	}
+
+	/**
+	 * Does the work of a job. A job that throws an exception is marked as failed with the message of the exception.
+	 */
+	@FunctionalInterface
+	public interface Handler {
+		/**
+		 * @param input uploaded content or null if the content is given by the content URL of the job
+		 */
+		void run(Job job, byte[] input, Progress progress) throws Exception;
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+	private static final String JOB_COLUMNS = "id, type, operation, pid, format, content_url, content_type, attempts";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final Map<MSCRType, Handler> handlers = new ConcurrentHashMap<>();
+	// attempt numbers of the jobs running on this instance by job id
+	private final Map<UUID, Integer> running = new ConcurrentHashMap<>();
+	private final Semaphore slots;
+	private final ExecutorService executor;
+	private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ingestion-heartbeat");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Duration staleAfter;
+	private final int maxAttempts;
+	private final Duration retention;
+
+	public IngestionJobService(JdbcTemplate jdbcTemplate,
+			@Value("${ingestionConcurrency:2}") int concurrency,
+			@Value("${ingestionJobStaleSeconds:120}") long staleSeconds,
+			@Value("${ingestionJobMaxAttempts:3}") int maxAttempts,
+			@Value("${ingestionJobRetentionDays:7}") long retentionDays) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.slots = new Semaphore(concurrency);
+		this.executor = Executors.newFixedThreadPool(concurrency);
+		this.staleAfter = Duration.ofSeconds(staleSeconds);
+		this.maxAttempts = maxAttempts;
+		this.retention = Duration.ofDays(retentionDays);
+	}
+
+	@PostConstruct
+	public void startHeartbeats() {
+		long interval = Math.max(1000, staleAfter.toMillis() / 4);
+		heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		heartbeats.shutdown();
+		executor.shutdown();
+	}
+
+	void sendHeartbeats() {
+		try {
+			jdbcTemplate.batchUpdate("update ingestion_jobs set heartbeat = now() where id = ? and attempts = ? and status = ?",
+					running.entrySet().stream()
+							.map(entry -> new Object[] { entry.getKey(), entry.getValue(), IngestionJobStatus.RUNNING.name() })
+							.toList());
+		} catch (RuntimeException e) {
+			// the next heartbeat is sent anyway
+			logger.warn("Could not update the heartbeat of ingestion jobs: {}", e.getMessage());
+		}
+	}
+
+	public void registerHandler(MSCRType type, Handler handler) {
+		handlers.put(type, handler);
+	}
+
+	/**
+	 * Store a job and start it if a worker is free
+	 *
+	 * @param input uploaded content or null if the content is downloaded from the content URL
+	 * @param owner id of the user who can follow the job
+	 * @return the queued job
+	 */
+	public IngestionJobDTO submit(MSCRType type, Operation operation, String pid, String format, String contentURL,
+			String contentType, byte[] input, UUID owner) {
+		UUID id = UUID.randomUUID();
+		jdbcTemplate.update("insert into ingestion_jobs(id, type, operation, pid, format, content_url, content_type, input, owner, status) "
+				+ "values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+				id, type.name(), operation.name(), pid, format, contentURL, contentType, input, owner, IngestionJobStatus.QUEUED.name());
+		logger.info("Queued ingestion job {} for {}", id, pid);
+		IngestionJobDTO job = getJob(id);
+		try {
+			dispatch();
+		} catch (DataAccessException e) {
+			// the job is started by the next poll
+			logger.warn("Could not start ingestion jobs", e);
+		}
+		return job;
+	}
+
+	/**
+	 * @return the job or null if it does not exist or has been removed after finishing
+	 */
+	public IngestionJobDTO getJob(UUID id) {
+		List<IngestionJobDTO> jobs = jdbcTemplate.query(
+				"select id, type, pid, status, progress, step, message, created, started, finished, owner from ingestion_jobs where id = ?",
+				(rs, rowNum) -> mapToJobDTO(rs), id);
+		return jobs.isEmpty() ? null : jobs.get(0);
+	}
+
+	private IngestionJobDTO mapToJobDTO(ResultSet rs) throws SQLException {
+		IngestionJobDTO dto = new IngestionJobDTO();
+		dto.setId(rs.getObject("id", UUID.class));
+		dto.setType(MSCRType.valueOf(rs.getString("type")));
+		dto.setPid(rs.getString("pid"));
+		dto.setStatus(IngestionJobStatus.valueOf(rs.getString("status")));
+		dto.setProgress(rs.getInt("progress"));
+		dto.setStep(rs.getString("step"));
+		dto.setMessage(rs.getString("message"));
+		dto.setCreated(rs.getTimestamp("created"));
+		dto.setStarted(rs.getTimestamp("started"));
+		dto.setFinished(rs.getTimestamp("finished"));
+		dto.setOwner(rs.getObject("owner", UUID.class));
+		return dto;
+	}
+
+	@Scheduled(fixedDelayString = "${ingestionJobPollMillis:5000}")
+	public void poll() {
+		try {
+			Timestamp stale = Timestamp.from(Instant.now().minus(staleAfter));
+			int requeued = jdbcTemplate.update("update ingestion_jobs set status = ? where status = ? and heartbeat < ? and attempts < ?",
+					IngestionJobStatus.QUEUED.name(), IngestionJobStatus.RUNNING.name(), stale, maxAttempts);
+			if (requeued > 0) {
+				logger.info("Queued {} interrupted ingestion jobs again", requeued);
+			}
+			jdbcTemplate.update("update ingestion_jobs set status = ?, message = ?, finished = now(), input = null "
+					+ "where status = ? and heartbeat < ? and attempts >= ?",
+					IngestionJobStatus.FAILED.name(), "Job was interrupted " + maxAttempts + " times",
+					IngestionJobStatus.RUNNING.name(), stale, maxAttempts);
+			jdbcTemplate.update("delete from ingestion_jobs where finished < ?", Timestamp.from(Instant.now().minus(retention)));
+			dispatch();
+		} catch (DataAccessException e) {
+			logger.warn("Could not process ingestion jobs", e);
+		}
+	}
+
+	/**
+	 * Start queued jobs in the order they were created while there are free workers
+	 */
+	private void dispatch() {
+		while (slots.tryAcquire()) {
+			Job job;
+			try {
+				job = claimNext();
+			} catch (DataAccessException e) {
+				slots.release();
+				throw e;
+			}
+			if (job == null) {
+				slots.release();
+				return;
+			}
+			running.put(job.id(), job.attempts());
+			try {
+				executor.execute(() -> run(job));
+			} catch (RejectedExecutionException e) {
+				// shutting down, the job is queued again when its heartbeat has stopped
+				running.remove(job.id(), job.attempts());
+				slots.release();
+				return;
+			}
+		}
+	}
+
+	private Job claimNext() {
+		// skip locked so that instances sharing the database do not claim the same job
+		List<Job> jobs = jdbcTemplate.query(
+				"update ingestion_jobs set status = ?, started = now(), heartbeat = now(), attempts = attempts + 1 "
+						+ "where id = (select id from ingestion_jobs where status = ? order by created limit 1 for update skip locked) "
+						+ "returning " + JOB_COLUMNS,
+				(rs, rowNum) -> new Job(
+						rs.getObject(1, UUID.class),
+						MSCRType.valueOf(rs.getString(2)),
+						Operation.valueOf(rs.getString(3)),
+						rs.getString(4),
+						rs.getString(5),
+						rs.getString(6),
+						rs.getString(7),
+						rs.getInt(8)),
+				IngestionJobStatus.RUNNING.name(), IngestionJobStatus.QUEUED.name());
+		return jobs.isEmpty() ? null : jobs.get(0);
+	}
+
+	private void run(Job job) {
+		try {
+			Handler handler = handlers.get(job.type());
+			if (handler == null) {
+				throw new IllegalStateException("No ingestion handler for " + job.type());
+			}
+			logger.info("Running ingestion job {} for {} (attempt {})", job.id(), job.pid(), job.attempts());
+			byte[] input = jdbcTemplate.queryForObject("select input from ingestion_jobs where id = ?", byte[].class, job.id());
+			handler.run(job, input, (percent, step) -> updateProgress(job, percent, step));
+			finish(job, IngestionJobStatus.SUCCEEDED, null);
+		} catch (Exception e) {
+			logger.warn("Ingestion job " + job.id() + " for " + job.pid() + " failed", e);
+			finish(job, IngestionJobStatus.FAILED, e instanceof ResponseStatusException rse ? rse.getReason() : e.getMessage());
+		} finally {
+			running.remove(job.id(), job.attempts());
+			slots.release();
+		}
+		try {
+			dispatch();
+		} catch (DataAccessException e) {
+			logger.warn("Could not start ingestion jobs", e);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the job has been claimed again, so that the replaced run stops before storing
+	 * anything
+	 */
+	void updateProgress(Job job, int percent, String step) {
+		int updated;
+		try {
+			updated = jdbcTemplate.update("update ingestion_jobs set progress = ?, step = ?, heartbeat = now() where id = ? and attempts = ?",
+					percent, step, job.id(), job.attempts());
+		} catch (DataAccessException e) {
+			// progress is informational, the job itself can still succeed
+			logger.warn("Could not update progress of ingestion job {}: {}", job.id(), e.getMessage());
+			return;
+		}
+		if (updated == 0) {
+			throw new IllegalStateException("Ingestion job " + job.id() + " attempt " + job.attempts() + " has been replaced");
+		}
+	}
+
+	void finish(Job job, IngestionJobStatus status, String message) {
+		try {
+			int updated = jdbcTemplate.update("update ingestion_jobs set status = ?, progress = greatest(progress, ?), step = null, message = ?, finished = now(), input = null "
+					+ "where id = ? and attempts = ?",
+					status.name(), status == IngestionJobStatus.SUCCEEDED ? 100 : 0, message, job.id(), job.attempts());
+			if (updated == 0) {
+				logger.warn("Result of ingestion job {} attempt {} was not stored, the job has been claimed again", job.id(), job.attempts());
+			}
+		} catch (DataAccessException e) {
+			logger.error("Could not store the result of ingestion job " + job.id(), e);
+		}
+	}
+}
@@ -1,24 +1,44 @@
 package fi.vm.yti.datamodel.api.v2.service;
 
+import java.util.Calendar;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
 import org.apache.jena.arq.querybuilder.AskBuilder;
 import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.datatypes.xsd.XSDDateTime;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.irix.IRIs;
+import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
-import org.apache.jena.rdf.model.Bag;
+import org.apache.jena.query.QuerySolution;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.NodeIterator;
-import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
-import org.apache.jena.rdf.model.Seq;
 import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.endpoint.error.ResourceNotFoundException;
 import fi.vm.yti.datamodel.api.v2.repository.CoreRepository;
@@ -33,10 +53,12 @@ public class JenaService {
     private final RDFConnection schemaRead;
     private final RDFConnection schemaWrite;
     private final RDFConnection schemaSparql;
+    private final RDFConnection schemaUpdate;
 
     private final RDFConnection crosswalkRead;
     private final RDFConnection crosswalkWrite;
     private final RDFConnection crosswalkSparql;
+    private final RDFConnection crosswalkUpdate;
 
 
         
@@ -47,21 +69,109 @@ public class JenaService {
 
     private static final String VERSION_NUMBER_GRAPH = "urn:yti:metamodel:version";    
 
+    private static final String SCHEMA_CACHE_KEY = "schema|";
+    private static final String CROSSWALK_CACHE_KEY = "crosswalk|";
+
+    /**
+     * Deletes every triple of a mapping including the blank node structures of source and target sequences,
+     * processing functions, parameter bags and nested oneOf mappings. Parameters ?graph and ?mapping are the
+     * content graph and the mapping PID. The reference from the crosswalk to the mapping is kept.
+     */
+    private static final String DELETE_MAPPING_SUBTREE = """
+    		PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
+    		PREFIX mscr: <http://uri.suomi.fi/datamodel/ns/mscr#>
+    		DELETE { GRAPH ?graph { ?n ?p ?o } }
+    		WHERE {
+    		  GRAPH ?graph {
+    		    {
+    		      ?mapping (mscr:oneOf/mscr:mappings)* ?n
+    		    } UNION {
+    		      ?mapping (mscr:oneOf/mscr:mappings)*/(mscr:oneOf|mscr:oneOf/mscr:filter|mscr:source|mscr:target|(mscr:source|mscr:target)/(!rdf:type)) ?n
+    		    } UNION {
+    		      ?mapping (mscr:oneOf/mscr:mappings)*/((mscr:source|mscr:target)/(!rdf:type))?/mscr:processing/(mscr:processingParams/(!rdf:type)?)? ?n
+    		    }
+    		    ?n ?p ?o .
+    		  }
+    		}
+    		""";
+
+    /**
+     * Sets the modification time of a schema or crosswalk to ?modified, or just after the previous modification
+     * time if that is not earlier, so that every write of the content gives a new value. Parameter ?pid is the PID,
+     * which is also the name of the metadata graph.
+     */
+    private static final String UPDATE_MODIFIED = """
+    		PREFIX dcterms: <http://purl.org/dc/terms/>
+    		PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>
+    		DELETE { GRAPH ?pid { ?pid dcterms:modified ?previous } }
+    		INSERT { GRAPH ?pid { ?pid dcterms:modified ?next } }
+    		WHERE {
+    		  GRAPH ?pid { ?pid dcterms:modified ?previous }
+    		  BIND(IF(?modified > ?previous, ?modified, ?previous + "PT0.001S"^^xsd:dayTimeDuration) AS ?next)
+    		}
+    		""";
+
+    private static final String SELECT_MODIFIED = """
+    		PREFIX dcterms: <http://purl.org/dc/terms/>
+    		SELECT ?modified WHERE { GRAPH ?pid { ?pid dcterms:modified ?modified } }
+    		""";
+
+    /**
+     * Copies a content graph to the content graph of a new schema or crosswalk and rewrites the references to the
+     * previous PID, that is the PID itself and the resources under it such as properties (PID#...) and mappings
+     * (PID@...), including the string identifiers of mappings. Parameters ?source and ?target are the content
+     * graphs, ?sourcePID and ?targetPID the previous and the new PID.
+     */
+    private static final String COPY_CONTENT = """
+    		PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>
+    		COPY ?source TO ?target ;
+    		DELETE { GRAPH ?target { ?s ?p ?o } }
+    		INSERT { GRAPH ?target { ?newS ?p ?newO } }
+    		WHERE {
+    		  GRAPH ?target { ?s ?p ?o }
+    		  BIND(isIRI(?s) && (STR(?s) = ?sourcePID || STRSTARTS(STR(?s), CONCAT(?sourcePID, "#")) || STRSTARTS(STR(?s), CONCAT(?sourcePID, "@"))) AS ?rewriteS)
+    		  BIND((isIRI(?o) || (isLiteral(?o) && DATATYPE(?o) = xsd:string))
+    		      && (STR(?o) = ?sourcePID || STRSTARTS(STR(?o), CONCAT(?sourcePID, "#")) || STRSTARTS(STR(?o), CONCAT(?sourcePID, "@"))) AS ?rewriteO)
+    		  FILTER(?rewriteS || ?rewriteO)
+    		  BIND(IF(?rewriteS, IRI(CONCAT(?targetPID, STRAFTER(STR(?s), ?sourcePID))), ?s) AS ?newS)
+    		  BIND(IF(?rewriteO, IF(isIRI(?o), IRI(CONCAT(?targetPID, STRAFTER(STR(?o), ?sourcePID))), CONCAT(?targetPID, STRAFTER(STR(?o), ?sourcePID))), ?o) AS ?newO)
+    		}
+    		""";
+
+    /**
+     * Parsed schema and crosswalk graphs keyed by dataset and graph name. Weighted by triple count.
+     */
+    private final Cache<String, Model> graphCache;
+
+    /**
+     * Incremented on every write, a graph fetched by a load started before a write is not kept in the cache.
+     */
+    private final AtomicLong graphWriteVersion = new AtomicLong();
+
     public JenaService(CoreRepository coreRepository, 
     					@Value("${model.cache.expiration:1800}") Long cacheExpireTime,
+    					@Value("${model.cache.maxTriples:2000000}") Long cacheMaxTriples,
                        @Value(("${endpoint}")) String endpoint,
                        @Value("${defaultNamespace}") String defaultNamespace) {
     	
     	this.coreRepository = coreRepository;
     	this.defaultNamespace = defaultNamespace;
+    	this.graphCache = CacheBuilder.newBuilder()
+    			.expireAfterWrite(cacheExpireTime, TimeUnit.SECONDS)
+    			.maximumWeight(cacheMaxTriples)
+    			.weigher((Weigher<String, Model>) (graph, model) -> (int) Math.max(1, Math.min(model.size(), Integer.MAX_VALUE)))
+    			.recordStats()
+    			.build();
     	
         this.schemaWrite = RDFConnection.connect(endpoint + "/schema/data");
         this.schemaRead = RDFConnection.connect(endpoint + "/schema/get");
         this.schemaSparql = RDFConnection.connect(endpoint + "/schema/sparql");
+        this.schemaUpdate = RDFConnection.connect(endpoint + "/schema/update");
 
         this.crosswalkWrite = RDFConnection.connect(endpoint + "/crosswalk/data");
         this.crosswalkRead = RDFConnection.connect(endpoint + "/crosswalk/get");
         this.crosswalkSparql = RDFConnection.connect(endpoint + "/crosswalk/sparql");
+        this.crosswalkUpdate = RDFConnection.connect(endpoint + "/crosswalk/update");
 
 
     }
@@ -86,6 +196,14 @@ public class JenaService {
     
 
 
+    public void selectWithQuerySchemas(Query query, Consumer<QuerySolution> consumer){
+        schemaSparql.querySelect(query, consumer);
+    }
+
+    public void selectWithQueryCrosswalks(Query query, Consumer<QuerySolution> consumer){
+        crosswalkSparql.querySelect(query, consumer);
+    }
+
     public int getVersionNumber() {
         var versionModel = coreRepository.fetch(VERSION_NUMBER_GRAPH);
         return versionModel.getResource(VERSION_NUMBER_GRAPH).getRequiredProperty(OWL.versionInfo).getInt();
@@ -102,25 +220,36 @@ public class JenaService {
     }
     
     public void putToSchema(String graphName, Model model) {
-        schemaWrite.put(graphName, model);
+    	try {
+    		schemaWrite.put(graphName, model);
+    		updateContentModified(schemaUpdate, SCHEMA_CACHE_KEY, graphName);
+    	} finally {
+    		invalidate(SCHEMA_CACHE_KEY, graphName);
+    	}
     }
     
     public void updateSchema(String graphName, Model model) {
-    	schemaWrite.delete(graphName);
-    	schemaWrite.put(graphName, model);
-    	
+    	try {
+	    	schemaWrite.delete(graphName);
+	    	schemaWrite.put(graphName, model);
+    	} finally {
+    		invalidate(SCHEMA_CACHE_KEY, graphName);
+    	}
     }
     
     public void updateCrosswalk(String graphName, Model model) {
-    	crosswalkWrite.delete(graphName);
-    	crosswalkWrite.put(graphName, model);
-    	
+    	try {
+	    	crosswalkWrite.delete(graphName);
+	    	crosswalkWrite.put(graphName, model);
+    	} finally {
+    		invalidate(CROSSWALK_CACHE_KEY, graphName);
+    	}
     }    
 
 	public Model getSchema(String graph) {
         logger.debug("Getting schema {}", graph);
         try {
-            return schemaRead.fetch(graph);
+            return fetchCached(SCHEMA_CACHE_KEY, schemaRead, graph);
         } catch (org.apache.jena.atlas.web.HttpException ex) {
             if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
                 logger.warn("Schema not found with PID {}", graph);
@@ -158,22 +287,34 @@ public class JenaService {
     
 
 	public void putToCrosswalk(String graph, Model model) {
-		crosswalkWrite.put(graph, model);
-		
+		try {
+			crosswalkWrite.put(graph, model);
+			updateContentModified(crosswalkUpdate, CROSSWALK_CACHE_KEY, graph);
+		} finally {
+			invalidate(CROSSWALK_CACHE_KEY, graph);
+		}
 	}	  
 	
 	public void deleteFromCrosswalk(String graph) {
-		crosswalkWrite.delete(graph);
+		try {
+			crosswalkWrite.delete(graph);
+		} finally {
+			invalidate(CROSSWALK_CACHE_KEY, graph);
+		}
 	}
 	
 	public void deleteFromSchema(String graph) {
-		schemaWrite.delete(graph);
+		try {
+			schemaWrite.delete(graph);
+		} finally {
+			invalidate(SCHEMA_CACHE_KEY, graph);
+		}
 	}	
 	
 	public Model getCrosswalk(String graph) {
         logger.debug("Getting crosswalk {}", graph);
         try {
-            return crosswalkRead.fetch(graph);
+            return fetchCached(CROSSWALK_CACHE_KEY, crosswalkRead, graph);
         } catch (HttpException ex) {
             if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
                 logger.warn("Crosswalk not found with PID {}", graph);
@@ -188,7 +329,7 @@ public class JenaService {
 	public Model getSchemaContent(String pid) {
 		final String graph = pid+":content";
         try {
-            return schemaRead.fetch(graph);
+            return fetchCached(SCHEMA_CACHE_KEY, schemaRead, graph);
         } catch (org.apache.jena.atlas.web.HttpException ex) {
             if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
                 logger.warn("Content not found for schemas  with PID {}", pid);
@@ -204,7 +345,7 @@ public class JenaService {
 	public Model getCrosswalkContent(String pid) {
 		final String graph = pid+":content";
         try {
-            return crosswalkRead.fetch(graph);
+            return fetchCached(CROSSWALK_CACHE_KEY, crosswalkRead, graph);
         } catch (org.apache.jena.atlas.web.HttpException ex) {
             if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
                 logger.warn("Content not found for crosswalk  with PID {}", pid);
@@ -215,78 +356,253 @@ public class JenaService {
         }
 	}
 
+    /**
+     * Read-through fetch of a graph. Callers always get their own copy of the cached model
+     * so that modifying the returned model does not affect the cache.
+     * @param dataset Cache key prefix of the dataset
+     * @param connection Read connection of the dataset
+     * @param graph Graph name
+     * @return copy of the graph
+     */
+    private Model fetchCached(String dataset, RDFConnection connection, String graph) {
+    	final String key = dataset + graph;
+    	final long version = graphWriteVersion.get();
+    	Model cached;
+    	try {
+    		// concurrent misses wait for the same load
+    		cached = graphCache.get(key, () -> connection.fetch(graph));
+    	} catch (ExecutionException | UncheckedExecutionException ex) {
+    		Throwables.throwIfUnchecked(ex.getCause());
+    		throw new JenaQueryException();
+    	}
+    	if(version != graphWriteVersion.get()) {
+    		// invalidating does not cancel a load in progress, the loaded graph may be older than the write
+    		graphCache.invalidate(key);
+    	}
+    	var model = ModelFactory.createDefaultModel();
+    	model.setNsPrefixes(cached.getNsPrefixMap());
+    	model.add(cached);
+    	return model;
+    }
+    
+    private void invalidate(String dataset, String graph) {
+    	graphWriteVersion.incrementAndGet();
+    	graphCache.invalidate(dataset + graph);
+    }
+    
+    public CacheStats getGraphCacheStats() {
+    	return graphCache.stats();
+    }
+    
+    @Scheduled(cron = "0 */30 * * * *")
+    public void logGraphCacheStats() {
+    	var stats = graphCache.stats();
+    	logger.info("Graph cache: {} entries, hits {}, misses {}, evictions {}, hit rate {}",
+    			graphCache.size(), stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+	/**
+	 * Copy the content of a schema to a new schema inside the triple store. The content is not transferred to this
+	 * service, references to the previous PID are changed to the new PID.
+	 * @param sourcePID PID of the schema whose content is copied
+	 * @param targetPID PID of the new schema
+	 */
+	public void copySchemaContent(String sourcePID, String targetPID) {
+		final String graph = targetPID + ":content";
+		try {
+			schemaUpdate.update(contentCopyRequest(sourcePID, targetPID));
+		} catch (HttpException ex) {
+			throw new JenaQueryException();
+		} finally {
+			invalidate(SCHEMA_CACHE_KEY, graph);
+		}
+	}
+
+	/**
+	 * Copy the content of a crosswalk to a new crosswalk inside the triple store. The content is not transferred to
+	 * this service, references to the previous PID, including the PIDs of the mappings, are changed to the new PID.
+	 * @param sourcePID PID of the crosswalk whose content is copied
+	 * @param targetPID PID of the new crosswalk
+	 */
+	public void copyCrosswalkContent(String sourcePID, String targetPID) {
+		updateCrosswalkContent(targetPID, contentCopyRequest(sourcePID, targetPID));
+	}
+
+	static UpdateRequest contentCopyRequest(String sourcePID, String targetPID) {
+		var update = new ParameterizedSparqlString(COPY_CONTENT);
+		update.setParam("source", NodeFactory.createURI(checkPID(sourcePID + ":content")));
+		update.setParam("target", NodeFactory.createURI(checkPID(targetPID + ":content")));
+		update.setLiteral("sourcePID", checkPID(sourcePID));
+		update.setLiteral("targetPID", checkPID(targetPID));
+		return update.asUpdate();
+	}
+
+	/**
+	 * Add a mapping to the content graph of a crosswalk without loading the rest of the graph.
+	 * @param crosswalkPID Crosswalk PID
+	 * @param mappingPID Mapping PID
+	 * @param mappingModel Mapping as mapped by MappingMapper
+	 */
+	public void addMapping(String crosswalkPID, String mappingPID, Model mappingModel) {
+		checkPID(crosswalkPID);
+		checkPID(mappingPID);
+		final String graph = crosswalkPID + ":content";
+		var model = ModelFactory.createDefaultModel().add(mappingModel);
+		model.add(model.createResource(crosswalkPID), MSCR.mappings, model.createResource(mappingPID));
+		var request = new UpdateRequest();
+		request.add(new UpdateDataInsert(toQuadData(graph, model)));
+		updateCrosswalkContent(crosswalkPID, request);
+	}
+
+	/**
+	 * Replace the subtree of a single mapping in the content graph of a crosswalk.
+	 * Delete and insert are sent in the same request so the change is applied atomically.
+	 * @param crosswalkPID Crosswalk PID
+	 * @param mappingPID Mapping PID
+	 * @param mappingModel New mapping content as mapped by MappingMapper
+	 */
+	public void updateMapping(String crosswalkPID, String mappingPID, Model mappingModel) {
+		final String graph = crosswalkPID + ":content";
+		var request = deleteMappingRequest(graph, mappingPID);
+		request.add(new UpdateDataInsert(toQuadData(graph, mappingModel)));
+		updateCrosswalkContent(crosswalkPID, request);
+	}
+
 	public void deleteMapping(String crosswalkPID, String mappingPID) {
-		// TODO Use an update instead of loading the whole graph
-		Model m = getCrosswalk(crosswalkPID+":content");
-		deleteMapping(crosswalkPID, mappingPID, m, true);
-		putToCrosswalk(crosswalkPID+":content", m);
+		final String graph = crosswalkPID + ":content";
+		var request = deleteMappingRequest(graph, mappingPID);
+		var reference = new QuadDataAcc();
+		reference.addQuad(new Quad(NodeFactory.createURI(graph), NodeFactory.createURI(crosswalkPID), MSCR.mappings.asNode(), NodeFactory.createURI(mappingPID)));
+		request.add(new UpdateDataDelete(reference));
+		updateCrosswalkContent(crosswalkPID, request);
 	}
-	
-	
-	public void deleteMapping(String crosswalkPID, String mappingPID, Model m, boolean removeRef) {
-		Resource mappingResource = m.createResource(mappingPID);
-		// first remove the source and target sequences
-		Seq s = mappingResource.getRequiredProperty(MSCR.source).getSeq();				
-		for(int i = s.size(); i >= 1; i--) {
-			if(s.getResource(i).hasProperty(MSCR.processing)) {
-				Resource pros = s.getResource(i).getPropertyResourceValue(MSCR.processing);
-				if(pros.hasProperty(MSCR.processingParams)) {
-					Bag b = pros.getRequiredProperty(MSCR.processingParams).getBag();
-					NodeIterator ii = b.iterator();
-					while(ii.hasNext()) {
-						ii.next().asResource().removeProperties();
-					}
-					b.removeProperties();
-				}
-				
-				pros.removeProperties();
-			}
-			s.getResource(i).removeProperties();
-			s.remove(i);
-		}				
-		s = mappingResource.getRequiredProperty(MSCR.target).getSeq();				
-		for(int i = s.size(); i >= 1; i--) {
-			if(s.getResource(i).hasProperty(MSCR.processing)) {
-				Resource pros = s.getResource(i).getPropertyResourceValue(MSCR.processing);
-				if(pros.hasProperty(MSCR.processingParams)) {
-					Bag b = pros.getRequiredProperty(MSCR.processingParams).getBag();
-					NodeIterator ii = b.iterator();
-					while(ii.hasNext()) {
-						ii.next().asResource().removeProperties();
-					}
-					b.removeProperties();
-				}
-				
-				pros.removeProperties();
-			}
-			s.getResource(i).removeProperties();
-			s.remove(i);
-		}	
-				
-		Resource c = mappingResource.getPropertyResourceValue(MSCR.source);
-		m.removeAll(c, null, null);
-		Resource c2 = mappingResource.getPropertyResourceValue(MSCR.target);
-		m.removeAll(c2, null, null);
-		
-		if(mappingResource.hasProperty(MSCR.processing)) {
-			Resource pros = mappingResource.getPropertyResourceValue(MSCR.processing);
-			if(pros.hasProperty(MSCR.processingParams)) {
-				Bag b = pros.getRequiredProperty(MSCR.processingParams).getBag();
-				NodeIterator ii = b.iterator();
-				while(ii.hasNext()) {
-					ii.next().asResource().removeProperties();
-				}
-				b.removeProperties();
+
+	private static UpdateRequest deleteMappingRequest(String graph, String mappingPID) {
+		var update = new ParameterizedSparqlString(DELETE_MAPPING_SUBTREE);
+		update.setParam("graph", NodeFactory.createURI(checkPID(graph)));
+		update.setParam("mapping", NodeFactory.createURI(checkPID(mappingPID)));
+		return update.asUpdate();
+	}
+
+	/**
+	 * PIDs are written to SPARQL updates as IRIs, a value that is not a valid IRI could change the update
+	 * @return the PID
+	 * @throws IllegalArgumentException if the PID is not an IRI
+	 */
+	private static String checkPID(String pid) {
+		if(pid == null || !IRIs.check(pid)) {
+			throw new IllegalArgumentException("Invalid PID: " + pid);
+		}
+		return pid;
+	}
+
+	public boolean doesMappingExist(String crosswalkPID, String mappingPID) {
+		var askBuilder = new AskBuilder()
+				.addGraph(NodeFactory.createURI(checkPID(crosswalkPID + ":content")), NodeFactory.createURI(checkPID(mappingPID)), RDF.type, MSCR.MAPPING);
+		try {
+			return crosswalkSparql.queryAsk(askBuilder.build());
+		}catch(HttpException ex){
+			throw new JenaQueryException();
+		}
+	}
+
+	/**
+	 * Apply a change to the content graph of a crosswalk. The modification time of the crosswalk is updated in the
+	 * same request, so a transformation plan keyed by it is compiled again on every instance.
+	 */
+	private void updateCrosswalkContent(String crosswalkPID, UpdateRequest request) {
+		request.add(modifiedUpdateRequest(crosswalkPID).getOperations().get(0));
+		try {
+			crosswalkUpdate.update(request);
+		} catch (HttpException ex) {
+			throw new JenaQueryException();
+		} finally {
+			invalidate(CROSSWALK_CACHE_KEY, crosswalkPID + ":content");
+			invalidate(CROSSWALK_CACHE_KEY, crosswalkPID);
+		}
+	}
+
+	static UpdateRequest modifiedUpdateRequest(String pid) {
+		var update = new ParameterizedSparqlString(UPDATE_MODIFIED);
+		update.setParam("pid", NodeFactory.createURI(checkPID(pid)));
+		update.setLiteral("modified", ResourceFactory.createTypedLiteral(new XSDDateTime(Calendar.getInstance())));
+		return update.asUpdate();
+	}
+
+	/**
+	 * After a content graph has been replaced, update the modification time of the schema or crosswalk it belongs to
+	 */
+	private void updateContentModified(RDFConnection connection, String dataset, String graph) {
+		if(!graph.endsWith(":content")) {
+			return;
+		}
+		final String pid = graph.substring(0, graph.length() - ":content".length());
+		try {
+			connection.update(modifiedUpdateRequest(pid));
+		} finally {
+			invalidate(dataset, pid);
+		}
+	}
+
+	/**
+	 * Modification time of a schema read from the store, not from the graph cache. It changes on every write of
+	 * the content of the schema, so it can be used to key data derived from the content.
+	 * @return modification time or null if the schema does not exist
+	 */
+	public String getSchemaModified(String pid) {
+		return selectModified(schemaSparql, pid);
+	}
+
+	/**
+	 * Modification time of a crosswalk read from the store, see getSchemaModified
+	 * @return modification time or null if the crosswalk does not exist
+	 */
+	public String getCrosswalkModified(String pid) {
+		return selectModified(crosswalkSparql, pid);
+	}
+
+	private static String selectModified(RDFConnection connection, String pid) {
+		var query = new ParameterizedSparqlString(SELECT_MODIFIED);
+		query.setParam("pid", NodeFactory.createURI(checkPID(pid)));
+		String[] modified = new String[1];
+		try {
+			connection.querySelect(query.asQuery(), solution -> modified[0] = solution.getLiteral("modified").getLexicalForm());
+		} catch (HttpException ex) {
+			throw new JenaQueryException();
+		}
+		return modified[0];
+	}
+
+	/**
+	 * Read the content of a schema from the store, not from the graph cache. Used with getSchemaModified, the
+	 * modification time read before the content is never newer than the content.
+	 */
+	public Model fetchSchemaContent(String pid) {
+		return fetchUncached(schemaRead, pid + ":content");
+	}
+
+	/**
+	 * Read the content of a crosswalk from the store, not from the graph cache, see fetchSchemaContent
+	 */
+	public Model fetchCrosswalkContent(String pid) {
+		return fetchUncached(crosswalkRead, pid + ":content");
+	}
+
+	private static Model fetchUncached(RDFConnection connection, String graph) {
+		try {
+			return connection.fetch(graph);
+		} catch (HttpException ex) {
+			if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+				throw new ResourceNotFoundException(graph);
 			}
-			
-			pros.removeProperties();
-		}		
-		m.removeAll(mappingResource, null, null);
-		if(removeRef) {
-			m.removeAll(m.createResource(crosswalkPID), MSCR.mappings, mappingResource);	
+			throw new JenaQueryException();
 		}
-		
-		
-		
-	}	
+	}
+
+	private static QuadDataAcc toQuadData(String graph, Model model) {
+		var graphNode = NodeFactory.createURI(graph);
+		var quads = new QuadDataAcc();
+		model.getGraph().find().forEachRemaining(triple -> quads.addQuad(new Quad(graphNode, triple)));
+		return quads;
+	}
 }
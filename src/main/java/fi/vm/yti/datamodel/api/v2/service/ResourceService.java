@@ -98,6 +98,7 @@ public class ResourceService {
         checkDataModelType(model.getResource(graphUri), dto);
 
         terminologyService.resolveConcept(dto.getSubject());
+        var oldModel = ModelFactory.createDefaultModel().add(model);
 
         String resourceUri;
         if(applicationProfile){
@@ -106,7 +107,7 @@ public class ResourceService {
             resourceUri = ResourceMapper.mapToResource(graphUri, model, (ResourceDTO) dto, resourceType, userProvider.getUser());
         }
 
-        coreRepository.put(graphUri, model);
+        coreRepository.putDiff(graphUri, oldModel, model);
         var indexClass = ResourceMapper.mapToIndexResource(model, resourceUri);
         openSearchIndexer.createResourceToIndex(indexClass);
         return new URI(resourceUri);
@@ -122,6 +123,7 @@ public class ResourceService {
         var model = coreRepository.fetch(graphUri);
         check(authorizationManager.hasRightToModel(prefix, model));
         checkDataModelType(model.getResource(graphUri), dto);
+        var oldModel = ModelFactory.createDefaultModel().add(model);
 
         if (dto instanceof ResourceDTO resourceDTO) {
             ResourceMapper.mapToUpdateResource(graphUri, model, identifier, resourceDTO, userProvider.getUser());
@@ -132,7 +134,7 @@ public class ResourceService {
         }
         terminologyService.resolveConcept(dto.getSubject());
 
-        coreRepository.put(graphUri, model);
+        coreRepository.putDiff(graphUri, oldModel, model);
         var indexResource = ResourceMapper.mapToIndexResource(model, graphUri + ModelConstants.RESOURCE_SEPARATOR + identifier);
         openSearchIndexer.updateResourceToIndex(indexResource);
     }
@@ -146,7 +148,7 @@ public class ResourceService {
         var model = coreRepository.fetch(modelURI);
         check(authorizationManager.hasRightToModel(prefix, model));
 
-        coreRepository.deleteResource(resourceUri);
+        coreRepository.deleteResource(modelURI, resourceUri, true);
         openSearchIndexer.deleteResourceFromIndex(resourceUri);
     }
 
@@ -170,10 +172,11 @@ public class ResourceService {
         }
         check(authorizationManager.hasRightToModel(prefix, model));
         check(authorizationManager.hasRightToModel(targetPrefix, targetModel));
+        var oldTargetModel = ModelFactory.createDefaultModel().add(targetModel);
 
         ResourceMapper.mapToCopyToLocalPropertyShape(graphUri, model, propertyShapeIdentifier, targetModel, targetGraph, newIdentifier, userProvider.getUser());
 
-        coreRepository.put(targetGraph, targetModel);
+        coreRepository.putDiff(targetGraph, oldTargetModel, targetModel);
         var indexResource = ResourceMapper.mapToIndexResource(targetModel, targetGraph + ModelConstants.RESOURCE_SEPARATOR + newIdentifier);
         openSearchIndexer.createResourceToIndex(indexResource);
         return new URI(targetResource);
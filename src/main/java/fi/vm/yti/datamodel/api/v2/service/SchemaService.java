@@ -1,15 +1,11 @@
 package fi.vm.yti.datamodel.api.v2.service;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -17,7 +13,6 @@ import java.util.Scanner;
 import java.util.UUID;
 import java.util.function.Consumer;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
@@ -32,7 +27,6 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
 import org.apache.jena.vocabulary.VOID;
-import org.coode.owlapi.turtle.TurtleOntologyFormat;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -50,6 +44,7 @@ import fi.vm.yti.datamodel.api.v2.dto.MSCR;
 import fi.vm.yti.datamodel.api.v2.dto.SchemaFormat;
 import fi.vm.yti.datamodel.api.v2.mapper.mscr.CSVMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.mscr.JSONSchemaMapper;
+import fi.vm.yti.datamodel.api.v2.mapper.mscr.OWLGraphRenderer;
 import fi.vm.yti.datamodel.api.v2.mapper.mscr.SKOSMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.mscr.XSDMapper;
 import fi.vm.yti.datamodel.api.v2.service.dtr.DTRClient;
@@ -166,28 +161,27 @@ public class SchemaService {
 	}
 	
 	public Model transformXSDToInternal(String schemaPID, String filePath) throws Exception {
-		ObjectNode jroot = xsdMapper.mapToInternalJson(filePath);
-		return transformJSONSchemaToInternal(schemaPID, jroot);
-		
+		return addXSDSchemaResource(schemaPID, xsdMapper.mapToInternalModel(schemaPID, filePath));
 	}
 
 	public Model transformXSDToInternal(String pid, byte[] fileInBytes) throws Exception {
-		File tempFile = null;
 		try {
-			tempFile = File.createTempFile("schema", "xsd");
-			FileUtils.writeByteArrayToFile(tempFile, fileInBytes);
-			Model m = transformXSDToInternal(pid, tempFile.getPath());
-			return m;
+			return addXSDSchemaResource(pid, xsdMapper.mapToInternalModel(pid, fileInBytes));
 		}catch(Exception ex) {
 			ex.printStackTrace();
 			throw new Exception("Could not transform schema file." + ex.getMessage());	
-		}	
-		finally {
-			if(tempFile != null) { tempFile.delete();}			
 		}
 		
 	}
 
+	private Model addXSDSchemaResource(String schemaPID, Model model) {
+		// the same schema level statements as in transformJSONSchemaToInternal
+		Resource modelResource = model.createResource(schemaPID);
+		modelResource.addProperty(DCTerms.language, "en");
+		addDefaultRootResourceForJSONSchema(modelResource, model);
+		return model;
+	}
+
 	public Model addOWL(String pid, String url, byte[] bytes) throws Exception {		
 		OWLOntologyManager manager =OWLManager.createOWLOntologyManager();
 		OWLOntology ont = null;
@@ -204,15 +198,7 @@ public class SchemaService {
 			throw new RuntimeException("Must provide either url or bytes input");
 		}
 		
-		 
-		TurtleOntologyFormat outputFormat = new TurtleOntologyFormat();
-		Path file = Files.createTempFile("prov", ".ttl");
-		try (OutputStream outputStream = Files.newOutputStream(file)) {
-			manager.saveOntology(ont, outputFormat,				
-					outputStream);
-		}
-		Model model = ModelFactory.createDefaultModel();
-		model.read(file.toUri().toString());
+		Model model = OWLGraphRenderer.mapToModel(ont);
 		Resource schema = model.createResource(pid);
 		addDefaultRootResourceForOWL(schema, model);
 		return model;		
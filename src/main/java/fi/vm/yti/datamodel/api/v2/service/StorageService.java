@@ -1,26 +1,75 @@
 package fi.vm.yti.datamodel.api.v2.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.function.Supplier;
 
 import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
 
 public interface StorageService {
 
-	public int storeSchemaFile(String schemaPID, String contentType, byte[] data, String filename);
-	public int storeCrosswalkFile(String schemaPID, String contentType, byte[] data, String filename);
+	public int storeSchemaFile(String schemaPID, String contentType, InputStream data, long size, String filename);
+	public int storeCrosswalkFile(String schemaPID, String contentType, InputStream data, long size, String filename);
+
+	public default int storeSchemaFile(String schemaPID, String contentType, byte[] data, String filename) {
+		return storeSchemaFile(schemaPID, contentType, new ByteArrayInputStream(data), data.length, filename);
+	}
+	public default int storeCrosswalkFile(String schemaPID, String contentType, byte[] data, String filename) {
+		return storeCrosswalkFile(schemaPID, contentType, new ByteArrayInputStream(data), data.length, filename);
+	}
 	
 	public StoredFile retrieveFile(String pid, long fileID, MSCRType type);
 	public StoredFileMetadata retrieveFileMetadata(String pid, long fileID, MSCRType type);
 	
+	/**
+	 * Copy the content of a file to the given stream without buffering the whole file
+	 *
+	 * @param fileID file id
+	 * @param out target stream, not closed
+	 * @throws IOException if writing to the stream fails
+	 */
+	public void writeFileContent(long fileID, OutputStream out) throws IOException;
+
+	/**
+	 * Copy a byte range of a file to the given stream
+	 *
+	 * @param fileID file id
+	 * @param offset first byte to copy
+	 * @param length number of bytes to copy
+	 * @param out target stream, not closed
+	 * @throws IOException if writing to the stream fails
+	 */
+	public void writeFileContent(long fileID, long offset, long length, OutputStream out) throws IOException;
+	
 	public List<StoredFile> retrieveAllSchemaFiles(String pid);
 	public List<StoredFile> retrieveAllCrosswalkFiles(String pid);
+
+	/**
+	 * The primary file is the first file stored for the content, e.g. the original schema description
+	 *
+	 * @return primary file or null if there are no files
+	 */
+	public StoredFile retrievePrimaryFile(String pid, MSCRType type);
 	
 	public List<StoredFileMetadata> retrieveAllSchemaFilesMetadata(String pid);
 	public List<StoredFileMetadata> retrieveAllCrosswalkFilesMetadata(String pid);
 	
-	public record StoredFile(String contentType, byte[] data, long fileID, MSCRType type, String filename, Timestamp timestamp) {}
-	public record StoredFileMetadata(String contentType, int dataSize, long fileID, MSCRType type, String filename, Timestamp timestamp) {}
+	/**
+	 * Handle to a stored file. The content is loaded from the storage only when {@link #data()} is called.
+	 */
+	public record StoredFile(String contentType, long fileID, MSCRType type, String filename, Timestamp timestamp, Supplier<byte[]> content) {
+		public byte[] data() {
+			return content.get();
+		}
+	}
+	/**
+	 * @param sha256 hex encoded SHA-256 digest of the content, usable as a strong entity tag
+	 */
+	public record StoredFileMetadata(String contentType, int dataSize, long fileID, MSCRType type, String filename, Timestamp timestamp, String sha256) {}
 
     public void removeFile(long fileID);
 	public void deleteAllCrosswalkFiles(String pid);
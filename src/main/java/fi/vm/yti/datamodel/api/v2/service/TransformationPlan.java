@@ -0,0 +1,15 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.util.List;
+
+import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
+
+/**
+ * Mappings of a crosswalk prepared for execution by a {@link DataTransformationService}. Plans are immutable and
+ * can be shared between threads and transformations.
+ */
+public interface TransformationPlan {
+
+	public List<MappingDTO> getMappings();
+
+}
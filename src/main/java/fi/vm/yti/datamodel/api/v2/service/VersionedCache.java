@@ -0,0 +1,61 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Values built from the content of a schema or crosswalk, cached with the modification time of the schema or
+ * crosswalk (see JenaService.getSchemaModified). Values are used by mapping functions for every transformed value,
+ * so the modification time is read again only when a value has not been checked for the check interval. The value
+ * is built again only when the modification time has changed, whichever instance wrote the content.
+ */
+class VersionedCache<V> {
+
+	private record Entry<V>(String pid, String version, V value, long checked) {}
+
+	private final Cache<String, Entry<V>> cache;
+	private final long checkIntervalNanos;
+	private final Function<String, String> versionReader;
+
+	/**
+	 * @param versionReader modification time by internal PID
+	 */
+	VersionedCache(long maximumSize, long checkIntervalSeconds, Function<String, String> versionReader) {
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+		this.checkIntervalNanos = TimeUnit.SECONDS.toNanos(checkIntervalSeconds);
+		this.versionReader = versionReader;
+	}
+
+	/**
+	 * @param key key used by the mapping functions, for example a PID
+	 * @param pidResolver internal PID of the key, null if it cannot be resolved
+	 * @param loader value built from the content with the given internal PID, null if there is no content
+	 * @return cached or new value, null if either function returns null
+	 */
+	V get(String key, Function<String, String> pidResolver, Function<String, V> loader) {
+		final long now = System.nanoTime();
+		Entry<V> cached = cache.getIfPresent(key);
+		if (cached != null && now - cached.checked() < checkIntervalNanos) {
+			return cached.value();
+		}
+		final String pid = cached != null ? cached.pid() : pidResolver.apply(key);
+		if (pid == null) {
+			return null;
+		}
+		// read before the content, a value is never older than the version it is cached with
+		final String version = versionReader.apply(pid);
+		if (cached != null && Objects.equals(cached.version(), version)) {
+			cache.put(key, new Entry<>(pid, version, cached.value(), now));
+			return cached.value();
+		}
+		V value = loader.apply(pid);
+		if (value != null) {
+			cache.put(key, new Entry<>(pid, version, value, now));
+		}
+		return value;
+	}
+}
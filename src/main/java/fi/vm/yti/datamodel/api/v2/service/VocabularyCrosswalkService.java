@@ -0,0 +1,161 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.vocabulary.SKOS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import fi.vm.yti.datamodel.api.v2.dto.MSCR;
+import fi.vm.yti.datamodel.api.v2.dto.MappingInfoDTO;
+import fi.vm.yti.datamodel.api.v2.dto.NodeInfo;
+import fi.vm.yti.datamodel.api.v2.endpoint.error.ResourceNotFoundException;
+import fi.vm.yti.datamodel.api.v2.mapper.MappingMapper;
+import fi.vm.yti.datamodel.api.v2.transformation.functions.SimpleMappingFunctions;
+import fi.vm.yti.datamodel.api.v2.transformation.functions.SimpleMappingFunctions.VocabularyItem;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Concept lookups for vocabulary crosswalks stored in MSCR, for example crosswalks created from SSSOM files.
+ * The mappings of a crosswalk are turned into one map from source concept URIs and labels to target concepts,
+ * which is cached by crosswalk PID and built again when the modification time of the crosswalk has changed.
+ */
+@Service
+public class VocabularyCrosswalkService {
+
+	private static final Logger logger = LoggerFactory.getLogger(VocabularyCrosswalkService.class);
+
+	private final JenaService jenaService;
+	private final PIDService pidService;
+	private final MappingMapper mappingMapper;
+	private final VersionedCache<Map<String, VocabularyItem>> lookupCache;
+	// crosswalk PIDs by source and target vocabulary, new crosswalks are found after the entry expires
+	private final Cache<String, String> crosswalkCache = CacheBuilder.newBuilder()
+			.maximumSize(500)
+			.expireAfterWrite(10, TimeUnit.MINUTES)
+			.build();
+
+	public VocabularyCrosswalkService(JenaService jenaService, PIDService pidService, MappingMapper mappingMapper,
+			@Value("${vocabulary.cache.versionCheckSeconds:5}") long versionCheckSeconds) {
+		this.jenaService = jenaService;
+		this.pidService = pidService;
+		this.mappingMapper = mappingMapper;
+		this.lookupCache = new VersionedCache<>(100, versionCheckSeconds, pid -> jenaService.getCrosswalkModified(pid));
+	}
+
+	@PostConstruct
+	public void registerResolver() {
+		SimpleMappingFunctions.setVocabularyCrosswalkResolver(this::getConcepts, this::findCrosswalk);
+	}
+
+	/**
+	 * @param crosswalkPID PID of a crosswalk between two vocabularies
+	 * @return target concepts by source concept URI and label, or null if the crosswalk does not exist
+	 */
+	public Map<String, VocabularyItem> getConcepts(String crosswalkPID) {
+		return lookupCache.get(crosswalkPID, this::resolve, pid -> {
+			Model content = getContent(pid);
+			if (content == null) {
+				return null;
+			}
+			Map<String, VocabularyItem> concepts = buildLookup(pid, content);
+			logger.info("Indexed {} concepts of vocabulary crosswalk {}", concepts.size(), pid);
+			return concepts;
+		});
+	}
+
+	private String resolve(String crosswalkPID) {
+		try {
+			return pidService.mapToInternal(crosswalkPID);
+		} catch (Exception e) {
+			logger.warn("Could not resolve crosswalk {}: {}", crosswalkPID, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return PID of the most recently modified crosswalk from the source to the target vocabulary or null
+	 */
+	public String findCrosswalk(String sourceVocabulary, String targetVocabulary) {
+		String key = sourceVocabulary + " " + targetVocabulary;
+		String cached = crosswalkCache.getIfPresent(key);
+		if (cached != null) {
+			return cached.isEmpty() ? null : cached;
+		}
+		String crosswalk = null;
+		try {
+			var query = new ParameterizedSparqlString("""
+					SELECT ?crosswalk WHERE {
+					  GRAPH ?crosswalk {
+					    ?crosswalk ?sourceSchema ?source ;
+					               ?targetSchema ?target .
+					    OPTIONAL { ?crosswalk <http://purl.org/dc/terms/modified> ?modified }
+					  }
+					} ORDER BY DESC(?modified) LIMIT 1""");
+			query.setIri("sourceSchema", MSCR.sourceSchema.getURI());
+			query.setIri("targetSchema", MSCR.targetSchema.getURI());
+			query.setIri("source", pidService.mapToInternal(sourceVocabulary));
+			query.setIri("target", pidService.mapToInternal(targetVocabulary));
+			String[] result = new String[1];
+			jenaService.selectWithQueryCrosswalks(query.asQuery(), solution -> result[0] = solution.getResource("crosswalk").getURI());
+			crosswalk = result[0];
+		} catch (Exception e) {
+			logger.warn("Could not find crosswalk from {} to {}: {}", sourceVocabulary, targetVocabulary, e.getMessage());
+		}
+		crosswalkCache.put(key, crosswalk != null ? crosswalk : "");
+		return crosswalk;
+	}
+
+	private Model getContent(String pid) {
+		try {
+			return jenaService.fetchCrosswalkContent(pid);
+		} catch (ResourceNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Target concept of each source concept. Exact matches take precedence over other mapping predicates.
+	 */
+	Map<String, VocabularyItem> buildLookup(String pid, Model content) {
+		Map<String, VocabularyItem> concepts = new HashMap<>();
+		Set<String> exactKeys = new HashSet<>();
+		for (RDFNode mapping : content.listObjectsOfProperty(content.getResource(pid), MSCR.mappings).toList()) {
+			if (!mapping.isURIResource()) {
+				continue;
+			}
+			MappingInfoDTO dto = mappingMapper.mapToMappingDTO(mapping.asResource().getURI(), content);
+			if (dto.getSource() == null || dto.getTarget() == null || dto.getTarget().isEmpty()) {
+				continue;
+			}
+			NodeInfo target = dto.getTarget().get(0);
+			VocabularyItem item = new VocabularyItem(target.getUri(), target.getLabel());
+			boolean exact = dto.getPredicate() == null || SKOS.exactMatch.getURI().equals(dto.getPredicate());
+			for (NodeInfo source : dto.getSource()) {
+				for (String key : new String[] { source.getUri(), source.getLabel() }) {
+					if (key == null) {
+						continue;
+					}
+					if (exact && exactKeys.add(key)) {
+						concepts.put(key, item);
+					} else {
+						concepts.putIfAbsent(key, item);
+					}
+				}
+			}
+		}
+		return Map.copyOf(concepts);
+	}
+}
@@ -0,0 +1,126 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.v2.endpoint.error.ResourceNotFoundException;
+import fi.vm.yti.datamodel.api.v2.transformation.functions.SimpleMappingFunctions;
+import fi.vm.yti.datamodel.api.v2.transformation.functions.VocabularyIndex;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Indexes SKOS vocabularies stored as schemas for the value mapping functions. Each concept is indexed by its
+ * preferred and alternative labels and matches to its preferred label. Indexes are cached by vocabulary PID and
+ * built again when the modification time of the schema has changed.
+ */
+@Service
+public class VocabularyIndexService {
+
+	private static final Logger logger = LoggerFactory.getLogger(VocabularyIndexService.class);
+
+	private final JenaService jenaService;
+	private final PIDService pidService;
+	private final VersionedCache<VocabularyIndex> indexCache;
+
+	public VocabularyIndexService(JenaService jenaService, PIDService pidService,
+			@Value("${vocabulary.cache.versionCheckSeconds:5}") long versionCheckSeconds) {
+		this.jenaService = jenaService;
+		this.pidService = pidService;
+		this.indexCache = new VersionedCache<>(50, versionCheckSeconds, pid -> jenaService.getSchemaModified(pid));
+	}
+
+	@PostConstruct
+	public void registerResolver() {
+		SimpleMappingFunctions.setVocabularyResolver(this::getIndex);
+	}
+
+	/**
+	 * @param vocabulary id of a vocabulary defined in SimpleMappingFunctions or PID of a SKOS schema
+	 * @return index or null if the vocabulary does not exist
+	 */
+	public VocabularyIndex getIndex(String vocabulary) {
+		VocabularyIndex builtIn = SimpleMappingFunctions.getBuiltInVocabularyIndex(vocabulary);
+		if (builtIn != null) {
+			return builtIn;
+		}
+		return indexCache.get(vocabulary, this::resolve, pid -> {
+			Model content = getContent(pid);
+			if (content == null) {
+				return null;
+			}
+			VocabularyIndex index = buildIndex(content);
+			logger.info("Indexed {} labels of vocabulary {}", index.size(), pid);
+			return index;
+		});
+	}
+
+	private String resolve(String vocabulary) {
+		try {
+			return pidService.mapToInternal(vocabulary);
+		} catch (Exception e) {
+			logger.warn("Could not resolve vocabulary {}: {}", vocabulary, e.getMessage());
+			return null;
+		}
+	}
+
+	private Model getContent(String pid) {
+		try {
+			return jenaService.fetchSchemaContent(pid);
+		} catch (ResourceNotFoundException e) {
+			return null;
+		}
+	}
+
+	static VocabularyIndex buildIndex(Model model) {
+		Map<String, Set<String>> entries = new HashMap<>();
+		model.listSubjectsWithProperty(RDF.type, SKOS.Concept).forEachRemaining(concept -> {
+			String value = preferredLabel(concept);
+			addLabels(entries, concept, SKOS.prefLabel, value);
+			addLabels(entries, concept, SKOS.altLabel, value);
+		});
+		return VocabularyIndex.of(entries);
+	}
+
+	private static void addLabels(Map<String, Set<String>> entries, Resource concept, Property property, String value) {
+		concept.listProperties(property).forEachRemaining(statement -> {
+			if (statement.getObject().isLiteral()) {
+				entries.computeIfAbsent(statement.getLiteral().getLexicalForm(), label -> new LinkedHashSet<>()).add(value);
+			}
+		});
+	}
+
+	/**
+	 * English preferred label, any preferred label or the concept URI
+	 */
+	private static String preferredLabel(Resource concept) {
+		String label = null;
+		var labels = concept.listProperties(SKOS.prefLabel);
+		while (labels.hasNext()) {
+			RDFNode node = labels.next().getObject();
+			if (node.isLiteral()) {
+				Literal literal = node.asLiteral();
+				if ("en".equals(literal.getLanguage())) {
+					return literal.getLexicalForm();
+				}
+				if (label == null) {
+					label = literal.getLexicalForm();
+				}
+			}
+		}
+		return label != null ? label : concept.getURI();
+	}
+}
@@ -0,0 +1,238 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+
+import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
+import fi.vm.yti.datamodel.api.v2.dto.MappingFilterDTO;
+import fi.vm.yti.datamodel.api.v2.dto.NodeInfo;
+import fi.vm.yti.datamodel.api.v2.dto.OneOfDTO;
+import fi.vm.yti.datamodel.api.v2.dto.ProcessingInfo;
+import fi.vm.yti.datamodel.api.v2.service.TransformationPlan;
+
+/**
+ * Mappings compiled for {@link FnoDataTransformationServiceImpl}. Source and target paths are split into their
+ * collection and item parts, JsonPaths are compiled and filter operators and processing functions are resolved
+ * once, so transforming a document only executes the plan.
+ */
+final class CompiledCrosswalkPlan implements TransformationPlan {
+
+	/**
+	 * JsonPath compiled ahead of time. Paths that do not compile are kept as strings and fail when read,
+	 * the same way as reading an invalid path directly.
+	 */
+	record CompiledPath(String path, JsonPath compiled) {
+
+		static CompiledPath of(String path) {
+			if (path == null) {
+				return null;
+			}
+			try {
+				return new CompiledPath(path, JsonPath.compile(path));
+			} catch (InvalidPathException | IllegalArgumentException e) {
+				return new CompiledPath(path, null);
+			}
+		}
+
+		Object read(DocumentContext doc) {
+			return compiled != null ? doc.read(compiled) : doc.read(path);
+		}
+	}
+
+	/**
+	 * Source node. Collection sources ($.a[*].b) are read by first reading the collection and then the item path
+	 * from each item, nested collections ($.a[*].b[*].c) repeat the split for the item path.
+	 */
+	record Source(NodeInfo node, String label, Function<Object, Object> processing, CompiledPath path,
+			CompiledPath collectionPath, CompiledPath itemPath, boolean nested,
+			CompiledPath nestedCollectionPath, CompiledPath nestedItemPath,
+			String collectionKey, String bracketKey) {
+
+		boolean isCollection() {
+			return collectionPath != null;
+		}
+	}
+
+	/**
+	 * Target node. Collection targets ($.a[*].b) are written with the wildcard replaced by the item index.
+	 */
+	record Target(NodeInfo node, String path, Function<Object, Object> processing, boolean collection,
+			boolean hasCollection, String collectionPrefix, List<String> parts) {
+
+		String path(int index) {
+			return String.join(String.valueOf(index), parts);
+		}
+	}
+
+	record Filter(MappingFilterDTO filter, CompiledPath path, Predicate<Object> predicate) {
+	}
+
+	record Mapping(MappingDTO mapping, List<Source> sources, List<Target> targets, Filter filter,
+			Function<Object, Object> processing) {
+	}
+
+	record OneOf(Filter filter, List<Mapping> mappings) {
+	}
+
+	/**
+	 * Either a single mapping or a list of alternatives, of which the first one producing output is used
+	 */
+	record Step(Mapping mapping, List<OneOf> oneOf) {
+	}
+
+	private final List<MappingDTO> mappings;
+	private final List<Step> steps;
+	private final Set<String> collectionPrefixes;
+
+	private CompiledCrosswalkPlan(List<MappingDTO> mappings, List<Step> steps, Set<String> collectionPrefixes) {
+		this.mappings = mappings;
+		this.steps = steps;
+		this.collectionPrefixes = collectionPrefixes;
+	}
+
+	/**
+	 * @param mappings mappings of the crosswalk
+	 * @param processingResolver resolves a processing step to a function applied to values
+	 */
+	static CompiledCrosswalkPlan compile(List<MappingDTO> mappings, Function<ProcessingInfo, Function<Object, Object>> processingResolver) {
+		Set<String> prefixes = new LinkedHashSet<>();
+		List<Step> steps = new ArrayList<>();
+		for (MappingDTO mapping : mappings) {
+			if (mapping.getOneOf() != null) {
+				List<OneOf> oneOf = new ArrayList<>();
+				for (OneOfDTO alternative : mapping.getOneOf()) {
+					List<Mapping> compiled = alternative.getMappings().stream()
+							.map(m -> compileMapping(m, processingResolver, prefixes))
+							.toList();
+					oneOf.add(new OneOf(compileFilter(alternative.getFilter()), compiled));
+				}
+				steps.add(new Step(null, Collections.unmodifiableList(oneOf)));
+			} else {
+				steps.add(new Step(compileMapping(mapping, processingResolver, prefixes), null));
+			}
+		}
+		return new CompiledCrosswalkPlan(List.copyOf(mappings), Collections.unmodifiableList(steps), Collections.unmodifiableSet(prefixes));
+	}
+
+	@Override
+	public List<MappingDTO> getMappings() {
+		return mappings;
+	}
+
+	List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Path prefixes (up to and including the bracket) of all collection targets
+	 */
+	Set<String> getCollectionPrefixes() {
+		return collectionPrefixes;
+	}
+
+	private static Mapping compileMapping(MappingDTO mapping, Function<ProcessingInfo, Function<Object, Object>> processingResolver, Set<String> prefixes) {
+		List<Source> sources = mapping.getSource().stream()
+				.map(source -> compileSource(source, processingResolver))
+				.toList();
+		List<Target> targets = mapping.getTarget().stream()
+				.map(target -> compileTarget(target, processingResolver))
+				.toList();
+		targets.stream()
+				.filter(Target::collection)
+				.forEach(target -> prefixes.add(target.collectionPrefix()));
+		return new Mapping(mapping, sources, targets, compileFilter(mapping.getFilter()), resolve(mapping.getProcessing(), processingResolver));
+	}
+
+	private static Source compileSource(NodeInfo source, Function<ProcessingInfo, Function<Object, Object>> processingResolver) {
+		String path = source.getId();
+		int index = path.indexOf("[*]");
+		CompiledPath collectionPath = null;
+		CompiledPath itemPath = null;
+		boolean nested = false;
+		CompiledPath nestedCollectionPath = null;
+		CompiledPath nestedItemPath = null;
+		if (index > 0 && index != path.length() - 3) {
+			collectionPath = CompiledPath.of(path.substring(0, index));
+			String restPath = "$." + path.substring(index + 4);
+			itemPath = CompiledPath.of(restPath);
+			nested = restPath.indexOf("*") > 0;
+			int nestedIndex = restPath.indexOf("[*]");
+			if (nested && nestedIndex >= 0 && nestedIndex + 4 <= restPath.length()) {
+				nestedCollectionPath = CompiledPath.of(restPath.substring(0, nestedIndex));
+				nestedItemPath = CompiledPath.of("$." + restPath.substring(nestedIndex + 4));
+			}
+		}
+		String collectionKey = path.indexOf("[*") > 0 && path.indexOf("]") >= 0 ? path.substring(0, path.indexOf("]")) : null;
+		String bracketKey = path.indexOf("]") > 0 ? path.substring(0, path.indexOf("]")) : null;
+		return new Source(source, source.getLabel(), resolve(source.getProcessing(), processingResolver), CompiledPath.of(path),
+				collectionPath, itemPath, nested, nestedCollectionPath, nestedItemPath, collectionKey, bracketKey);
+	}
+
+	private static Target compileTarget(NodeInfo target, Function<ProcessingInfo, Function<Object, Object>> processingResolver) {
+		String path = target.getId();
+		boolean collection = path.contains("[*]");
+		String prefix = collection ? path.substring(0, path.indexOf("[*") + 1) : null;
+		return new Target(target, path, resolve(target.getProcessing(), processingResolver), collection,
+				path.indexOf("[*") > 0, prefix, List.of(path.split("\\*", -1)));
+	}
+
+	private static Function<Object, Object> resolve(ProcessingInfo processing, Function<ProcessingInfo, Function<Object, Object>> processingResolver) {
+		return processing != null ? processingResolver.apply(processing) : null;
+	}
+
+	private static Filter compileFilter(MappingFilterDTO filter) {
+		if (filter == null) {
+			return null;
+		}
+		return new Filter(filter, CompiledPath.of(filter.getPath()), compileOperator(filter));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Predicate<Object> compileOperator(MappingFilterDTO filter) {
+		String operator = filter.getOperator();
+		Object value = filter.getValue();
+		if (operator == null) {
+			return result -> {
+				throw new RuntimeException("Unknown operator " + operator);
+			};
+		}
+		switch (operator) {
+		case "=":
+			return result -> result.equals(value);
+		case "!=":
+			return result -> !result.equals(value);
+		case "in":
+			return result -> ((List<Object>) value).indexOf(result) >= 0;
+		case "startsWith":
+			return result -> result.toString().startsWith(value.toString());
+		case "isURI":
+			return result -> isWellFormedUriString(result.toString());
+		case "contains":
+			return result -> result.toString().indexOf(value.toString()) >= 0;
+		case "!contains":
+			return result -> !(result.toString().indexOf(value.toString()) >= 0);
+		default:
+			return result -> {
+				throw new RuntimeException("Unknown operator " + operator);
+			};
+		}
+	}
+
+	private static boolean isWellFormedUriString(final String uriString) {
+		try {
+			new java.net.URI(uriString);
+			return true;
+		} catch (final java.net.URISyntaxException ignored) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+/**
+ * Stored form of a file. Content is addressed by the SHA-256 digest of the uncompressed bytes and may be gzip
+ * compressed. The encoded content is kept in memory for small files and spooled to a temporary file otherwise.
+ */
+final class ContentBlob implements Closeable {
+
+	static final String IDENTITY = "identity";
+	static final String GZIP = "gzip";
+
+	private static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+	private final String sha256;
+	private final long size;
+	private final String encoding;
+	private final DeferredFileOutputStream buffer;
+
+	private ContentBlob(String sha256, long size, String encoding, DeferredFileOutputStream buffer) {
+		this.sha256 = sha256;
+		this.size = size;
+		this.encoding = encoding;
+		this.buffer = buffer;
+	}
+
+	static ContentBlob encode(InputStream data, boolean compress) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		String encoding = compress ? GZIP : IDENTITY;
+		DeferredFileOutputStream buffer = new DeferredFileOutputStream(MEMORY_THRESHOLD, "mscr-file-", ".tmp", null);
+		try {
+			long size;
+			try (InputStream in = new DigestInputStream(data, digest);
+					OutputStream out = GZIP.equals(encoding) ? new GZIPOutputStream(buffer, 8192) : buffer) {
+				size = in.transferTo(out);
+			}
+			return new ContentBlob(HexFormat.of().formatHex(digest.digest()), size, encoding, buffer);
+		} catch (IOException | RuntimeException e) {
+			deleteTempFile(buffer);
+			throw e;
+		}
+	}
+
+	static InputStream decode(InputStream data, String encoding) throws IOException {
+		return GZIP.equals(encoding) ? new GZIPInputStream(data, 8192) : data;
+	}
+
+	/**
+	 * Text based formats compress well, binary formats such as PDF are usually compressed already
+	 */
+	static boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		String type = contentType.toLowerCase(Locale.ROOT);
+		int params = type.indexOf(';');
+		if (params >= 0) {
+			type = type.substring(0, params);
+		}
+		type = type.trim();
+		return type.startsWith("text/")
+				|| type.endsWith("/xml") || type.endsWith("+xml")
+				|| type.endsWith("/json") || type.endsWith("+json")
+				|| type.endsWith("/x-turtle") || type.endsWith("/n-triples")
+				|| type.endsWith("/x-yaml") || type.endsWith("/yaml");
+	}
+
+	String sha256() {
+		return sha256;
+	}
+
+	long size() {
+		return size;
+	}
+
+	String encoding() {
+		return encoding;
+	}
+
+	long encodedSize() {
+		return buffer.getByteCount();
+	}
+
+	InputStream openEncoded() throws IOException {
+		return buffer.isInMemory()
+				? new ByteArrayInputStream(buffer.getData())
+				: Files.newInputStream(buffer.getFile().toPath());
+	}
+
+	@Override
+	public void close() {
+		deleteTempFile(buffer);
+	}
+
+	private static void deleteTempFile(DeferredFileOutputStream buffer) {
+		if (!buffer.isInMemory() && buffer.getFile() != null) {
+			buffer.getFile().delete();
+		}
+	}
+}
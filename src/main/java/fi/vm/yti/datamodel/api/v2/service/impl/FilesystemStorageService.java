@@ -0,0 +1,157 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps file content on a local or shared file system and only the metadata in Postgres. Content is stored
+ * uncompressed under its SHA-256 digest in a sharded directory layout (ab/cd/abcd...), so ranges can be read
+ * directly from the file. Content stored in the database before switching backends stays readable.
+ */
+@Service
+@ConditionalOnProperty(name = "fileStorage", havingValue = "filesystem")
+public class FilesystemStorageService extends PostgresStorageService {
+
+	private static final Logger logger = LoggerFactory.getLogger(FilesystemStorageService.class);
+	private static final String STORAGE = "filesystem";
+	private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+	private final Path root;
+
+	public FilesystemStorageService(@Value("${fileStoragePath}") String root) throws IOException {
+		this.root = Path.of(root).toAbsolutePath();
+		Files.createDirectories(this.root);
+		logger.info("Storing files in {}", this.root);
+	}
+
+	private record BlobLocation(String sha256, String storage, long size) {
+	}
+
+	@Override
+	protected ContentBlob encode(InputStream data, String contentType) throws IOException {
+		return ContentBlob.encode(data, false);
+	}
+
+	/**
+	 * Write the file before inserting the row. storeBlob found no row, so a removal of the same content has already
+	 * deleted the file in its transaction.
+	 */
+	@Override
+	protected void insertBlob(ContentBlob blob) {
+		Path target = blobPath(blob.sha256());
+		try {
+			if (!Files.exists(target)) {
+				Files.createDirectories(target.getParent());
+				// write to a temporary file in the same directory so the content appears atomically
+				Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+				try (InputStream in = blob.openEncoded()) {
+					Files.copy(in, tmp);
+					Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(tmp);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		jdbcTemplate.update(
+				"insert into mscr_blobs(sha256, encoding, size, storage) values(?, ?, ?, ?) on conflict (sha256) do nothing",
+				blob.sha256(), blob.encoding(), blob.size(), STORAGE);
+	}
+
+	@Override
+	public void writeFileContent(long fileID, OutputStream out) throws IOException {
+		BlobLocation blob = findBlob(fileID);
+		if (blob == null || !STORAGE.equals(blob.storage())) {
+			super.writeFileContent(fileID, out);
+			return;
+		}
+		transfer(blob.sha256(), 0, blob.size(), out);
+	}
+
+	@Override
+	public void writeFileContent(long fileID, long offset, long length, OutputStream out) throws IOException {
+		BlobLocation blob = findBlob(fileID);
+		if (blob == null || !STORAGE.equals(blob.storage())) {
+			super.writeFileContent(fileID, offset, length, out);
+			return;
+		}
+		transfer(blob.sha256(), offset, length, out);
+	}
+
+	@Override
+	protected byte[] retrieveContent(long fileID) {
+		BlobLocation blob = findBlob(fileID);
+		if (blob == null || !STORAGE.equals(blob.storage())) {
+			return super.retrieveContent(fileID);
+		}
+		try {
+			return Files.readAllBytes(blobPath(blob.sha256()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Files are deleted while the rows are locked, an upload of the same content waits and writes the file again
+	 */
+	@Override
+	protected void blobsRemoved(List<String> hashes) {
+		for (String sha256 : hashes) {
+			try {
+				Files.deleteIfExists(blobPath(sha256));
+			} catch (IOException e) {
+				logger.warn("Could not delete file {}: {}", sha256, e.getMessage());
+			}
+		}
+	}
+
+	private BlobLocation findBlob(long fileID) {
+		List<BlobLocation> blobs = jdbcTemplate.query(
+				"select b.sha256, b.storage, b.size from mscr_files f join mscr_blobs b on b.sha256 = f.sha256 where f.id = ?",
+				(rs, rowNum) -> new BlobLocation(rs.getString(1), rs.getString(2), rs.getLong(3)),
+				fileID);
+		return blobs.isEmpty() ? null : blobs.get(0);
+	}
+
+	/**
+	 * Write the range of the file with FileChannel.transferTo. The servlet response is a stream and not a socket
+	 * channel, so the content is copied through the small buffer of the channel adapter, never the whole file.
+	 */
+	private void transfer(String sha256, long offset, long length, OutputStream out) throws IOException {
+		try (FileChannel channel = FileChannel.open(blobPath(sha256), StandardOpenOption.READ)) {
+			long end = Math.min(channel.size(), offset + length);
+			// the channel wraps the response stream, closing it would close the response
+			WritableByteChannel target = Channels.newChannel(out);
+			long position = offset;
+			while (position < end) {
+				position += channel.transferTo(position, end - position, target);
+			}
+		}
+	}
+
+	private Path blobPath(String sha256) {
+		if (!SHA256.matcher(sha256).matches()) {
+			throw new IllegalArgumentException("Invalid content digest: " + sha256);
+		}
+		return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+	}
+}
@@ -1,22 +1,31 @@
 package fi.vm.yti.datamodel.api.v2.service.impl;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
-import java.net.URISyntaxException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
@@ -29,6 +38,8 @@ import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema.Builder;
 import com.github.underscore.U;
 import com.github.underscore.U.JsonToXmlMode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
@@ -41,11 +52,15 @@ import be.ugent.idlab.knows.functions.agent.Agent;
 import be.ugent.idlab.knows.functions.agent.AgentFactory;
 import be.ugent.idlab.knows.functions.agent.Arguments;
 import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
-import fi.vm.yti.datamodel.api.v2.dto.MappingFilterDTO;
-import fi.vm.yti.datamodel.api.v2.dto.NodeInfo;
-import fi.vm.yti.datamodel.api.v2.dto.OneOfDTO;
 import fi.vm.yti.datamodel.api.v2.dto.ProcessingInfo;
 import fi.vm.yti.datamodel.api.v2.service.DataTransformationService;
+import fi.vm.yti.datamodel.api.v2.service.TransformationPlan;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.Filter;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.Mapping;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.OneOf;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.Source;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.Step;
+import fi.vm.yti.datamodel.api.v2.service.impl.CompiledCrosswalkPlan.Target;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
@@ -53,8 +68,18 @@ import net.minidev.json.JSONObject;
 @Service
 public class FnoDataTransformationServiceImpl implements DataTransformationService {
 
+	private record CachedPlan(String modified, TransformationPlan plan) {}
+
+	private static final Configuration ALWAYS_RETURN_LIST = Configuration.builder()
+    		.options(Option.ALWAYS_RETURN_LIST).build();
+
 	//private final CrosswalkMapper mapper;
 	private Agent agent;
+	private FunctionRegistry functionRegistry = new FunctionRegistry(ModelFactory.createDefaultModel());
+	// compiled plans by crosswalk PID with the modification time of the crosswalk they were compiled for
+	private final Cache<String, CachedPlan> planCache = CacheBuilder.newBuilder()
+			.maximumSize(200)
+			.build();
 	
 	
 	public FnoDataTransformationServiceImpl(ApplicationContext context) {
@@ -64,6 +89,7 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 			FileUtils.copyInputStreamToFile(input, tempFile);
 			this.agent = AgentFactory.createFromFnO(tempFile.getAbsolutePath());
       			tempFile.delete();
+			this.functionRegistry = new FunctionRegistry(RDFDataMgr.loadModel("fno/functions.ttl"));
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -90,9 +116,9 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 	
 	private Object doProcessing(ProcessingInfo pi, Object value) {
 		final Arguments arguments = new Arguments();		
-		arguments.add("http://uri.suomi.fi/datamodel/ns/mscr#inputObject", value);
+		arguments.add(FunctionRegistry.INPUT_OBJECT, value);
 		if(pi.getParams() != null) {			
-			arguments.add("http://uri.suomi.fi/datamodel/ns/mscr#paramsMap", pi.getParams());	
+			arguments.add(FunctionRegistry.PARAMS_MAP, pi.getParams());	
 		}
 		
 		Object newValue = value;
@@ -106,105 +132,62 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 	}
 
 	
-	private Map<String, Object> collectDataForSingleMapping(List<NodeInfo> sources, DocumentContext doc) {
+	private Map<String, Object> collectDataForSingleMapping(List<Source> sources, DocumentContext doc) {
 		Map<String, Object> paramMap = new HashMap<String, Object>();
 		for(int i = 0; i < sources.size(); i++)  {
+			Source source = sources.get(i);
 			try {
-				String path = sources.get(i).getId();
-				int pindex = 0;
-				if(path.indexOf("[*]") > 0 && path.indexOf("[*]") != path.length() - 3) { // first level
-					
-					String subPath = path.substring(pindex, path.indexOf("[*]"));
-					String restPath = "$." + path.substring(path.indexOf("[*]") + 4);
-					//System.out.println(subPath);
-					//System.out.println(restPath);
-					Object subObject = doc.read(subPath);
+				if(source.isCollection()) { // first level
+					Object subObject = source.collectionPath().read(doc);
 					
 					if(subObject instanceof JSONArray) {
 						JSONArray values = new JSONArray();
-						String paramKey = sources.get(i).getLabel();
+						String paramKey = source.label();
 						for(Object obj : (JSONArray)subObject) {
 							DocumentContext doc2 = JsonPath.parse(obj);
-							if(restPath.indexOf("*") > 0) {
-								String subPath2 = restPath.substring(0, restPath.indexOf("[*]"));
-								String restPath2 = "$." + restPath.substring(restPath.indexOf("[*]") + 4);
-								//System.out.println(subPath2);
-								//System.out.println(restPath2);
+							if(source.nested()) {
+								if(source.nestedCollectionPath() == null) {
+									throw new IllegalArgumentException("Unsupported source path " + source.node().getId());
+								}
 								Object subObject2 = "##missing##";
 								try {
-									subObject2 = doc2.read(subPath2);
+									subObject2 = source.nestedCollectionPath().read(doc2);
 								}catch(PathNotFoundException ex) {
 									JSONArray values2 = new JSONArray();
 									values2.add("##missing##");
 									values.add(values2);
 								}								
 
-								
-								if(subObject2 instanceof JSONArray) {
-									System.out.println("JSONArray");
-									System.out.println(subObject2);
-									paramKey = "[*]." + paramKey;
-									JSONArray values2 = new JSONArray();
-									for(Object obj2 : (JSONArray)subObject2) {
-										DocumentContext doc3 = JsonPath.parse(obj2);
-										Object value = "##missing##";
-										try {
-											value = doc3.read(restPath2);
-										}catch(PathNotFoundException ex) {
-											System.out.println("ex");
-										}
-			
-										NodeInfo source = sources.get(i);
-										if(source.getProcessing() != null && value != null) {	
-											value = doProcessing(source.getProcessing(), value);
-										}
-										if(value != null) {
-											values2.add(value);	
-										}
-																				
-										
-										
-									}
-									values.add(values2);
-									
-								}
-								else {
-									//System.out.println(subObject2);
-									paramKey = "[*]." + paramKey;
-									JSONArray values2 = new JSONArray();
-									DocumentContext doc3 = JsonPath.parse(subObject2);
+								paramKey = "[*]." + paramKey;
+								JSONArray values2 = new JSONArray();
+								Iterable<?> items = subObject2 instanceof JSONArray ? (JSONArray)subObject2 : Collections.singletonList(subObject2);
+								for(Object obj2 : items) {
+									DocumentContext doc3 = JsonPath.parse(obj2);
 									Object value = "##missing##";
 									try {
-										value = doc3.read(restPath2);
+										value = source.nestedItemPath().read(doc3);
 									}catch(PathNotFoundException ex) {
-										System.out.println("ex");
+										// keep the missing marker
 									}
-		
-									NodeInfo source = sources.get(i);
-									if(source.getProcessing() != null && value != null) {	
-										value = doProcessing(source.getProcessing(), value);
+									if(source.processing() != null && value != null) {	
+										value = source.processing().apply(value);
 									}
 									if(value != null) {
 										values2.add(value);	
 									}
-										
-									values.add(values2);
 								}
+								values.add(values2);
 							}
 							else {
-							
-							
-								
 								Object value = "##missing##";
 								try {
-									value = doc2.read(restPath);
+									value = source.itemPath().read(doc2);
 								}catch(PathNotFoundException ex) {
 									
 								}
 	
-								NodeInfo source = sources.get(i);
-								if(source.getProcessing() != null && value != null) {	
-									value = doProcessing(source.getProcessing(), value);
+								if(source.processing() != null && value != null) {	
+									value = source.processing().apply(value);
 								}
 								if(value != null) {
 									values.add(value);	
@@ -216,88 +199,54 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 					}
 					else {
 						// single object
-						Configuration configuration = Configuration.builder()
-					    		.options(Option.ALWAYS_RETURN_LIST).build();
-						
-						DocumentContext doc2 = JsonPath.parse(subObject, configuration);
+						DocumentContext doc2 = JsonPath.parse(subObject, ALWAYS_RETURN_LIST);
 						Object value = "##missing##";
 						try {
-							value = doc2.read(restPath);
+							value = source.itemPath().read(doc2);
 						}catch(PathNotFoundException ex) {
 							
 						}
 
-						NodeInfo source = sources.get(i);
-						if(source.getProcessing() != null && value != null) {	
-							value = doProcessing(source.getProcessing(), value);
+						if(source.processing() != null && value != null) {	
+							value = source.processing().apply(value);
 						}
 						if(value != null) {
-							if(paramMap.containsKey(sources.get(i).getLabel()) ) {
-								if(!(paramMap.get(sources.get(i).getLabel()) instanceof List)) {
-									List<Object> params = new ArrayList<Object>();
-									params.add(paramMap.get(sources.get(i).getLabel()));
-									paramMap.put(sources.get(i).getLabel(), params);
-								}
-								
-								((List<Object>)paramMap.get(sources.get(i).getLabel())).add(value);
-								
-							}
-							else {
-								paramMap.put(sources.get(i).getLabel(), value);	
-							}
-														
+							addParam(paramMap, source.label(), value);
 						}
-
-						
-
-						
 					}
-
-					
-					
 				}
 				else {
-					Object value = doc.read(sources.get(i).getId());
-					
-					NodeInfo source = sources.get(i);
+					Object value = source.path().read(doc);
 
-
-					if(source.getProcessing() != null && value != null) {	
-						value = doProcessing(source.getProcessing(), value);
+					if(source.processing() != null && value != null) {	
+						value = source.processing().apply(value);
 					}
 					if(value != null) {
-						if(paramMap.containsKey(sources.get(i).getLabel()) ) {
-							if(!(paramMap.get(sources.get(i).getLabel()) instanceof List)) {
+						if(paramMap.containsKey(source.label()) ) {
+							if(!(paramMap.get(source.label()) instanceof List)) {
 								List<Object> params = new ArrayList<Object>();
-								params.add(paramMap.get(sources.get(i).getLabel()));
-								paramMap.put(sources.get(i).getLabel(), params);
+								params.add(paramMap.get(source.label()));
+								paramMap.put(source.label(), params);
 							}
 							if(sources.size() == 1) {
 								((List<Object>)paramMap.get("value")).add(value);
 							}
 							else {
-								((List<Object>)paramMap.get(sources.get(i).getLabel())).add(value);	
+								((List<Object>)paramMap.get(source.label())).add(value);	
 							}
-							
-							
 						}
-	
 						else {
 							if(sources.size() == 1) {
 								paramMap.put("value", value);
 							}
 							else {
-								paramMap.put(sources.get(i).getLabel(), value);	
+								paramMap.put(source.label(), value);	
 							}
-								
 						}
 					}
-					
-					
 				}
 			}catch(PathNotFoundException pnf) {
-				System.out.println("Path not found: "+ sources.get(i).getId());
-				
+				// source is optional
 			}
 		}
 		if(paramMap.isEmpty()) {
@@ -307,8 +256,25 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 		
 	}
 
+	private void addParam(Map<String, Object> paramMap, String label, Object value) {
+		if(paramMap.containsKey(label) ) {
+			if(!(paramMap.get(label) instanceof List)) {
+				List<Object> params = new ArrayList<Object>();
+				params.add(paramMap.get(label));
+				paramMap.put(label, params);
+			}
+			((List<Object>)paramMap.get(label)).add(value);
+		}
+		else {
+			paramMap.put(label, value);	
+		}
+	}
+
 	private String generateCSV(List<MappingDTO> mappings,  String json) throws Exception {
-		System.out.println(json);
+		return generateCSV(mappings, json, true);
+	}
+
+	private String generateCSV(List<MappingDTO> mappings,  String json, boolean header) throws Exception {
 		JsonNode jsonTree = new ObjectMapper().readTree(json);
 		
 		Builder csvSchemaBuilder = CsvSchema.builder();
@@ -319,7 +285,7 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 				
 			});		
 		});
-		CsvSchema csvSchema = csvSchemaBuilder.build().withHeader();		
+		CsvSchema csvSchema = header ? csvSchemaBuilder.build().withHeader() : csvSchemaBuilder.build().withoutHeader();
 		CsvMapper csvMapper = new CsvMapper();
 		
 		return csvMapper.writerFor(JsonNode.class)
@@ -329,19 +295,12 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 	}
 	
 	private String generateJSON(Map<String, Object> columnsMap) {
-		String json = "{}";
-		//if(keySample.startsWith("$.[") || keySample.startsWith("$[")) {
-		//	json = "[]";
-		//}
-		Configuration configuration = Configuration.builder()
-	    		.options(Option.CREATE_MISSING_PROPERTIES_ON_DEFINITE_PATH).build();
+		// paths are written in the order given by sortColumnMapKeys
+		JsonTargetBuilder builder = new JsonTargetBuilder();
 		for (Entry<String, Object> entry : columnsMap.entrySet()) {
-		  JsonPath compiledPath = JsonPath.compile(entry.getKey());
-		  Object parsedJsonPath =
-		      compiledPath.set(configuration.jsonProvider().parse(json), entry.getValue(), configuration);
-		  json = JsonPath.parse(parsedJsonPath).jsonString();
+			builder.set(entry.getKey(), entry.getValue());
 		}
-		return json;		
+		return builder.toJson();
 	}
 	
 	private String generateXML(String json) {
@@ -349,6 +308,14 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 		return temp;
 	}
 	
+	private String stripXmlDeclaration(String xml) {
+		if(xml.startsWith("<?xml")) {
+			int end = xml.indexOf("?>");
+			return xml.substring(end + 2).stripLeading();
+		}
+		return xml;
+	}
+	
 	private String generateTargetDocument(List<MappingDTO> mappings, Map<String, Object> columnsMap, String format) throws Exception {
 		switch (format) {
 		case "csv": {		
@@ -371,6 +338,28 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 	
 	@Override
 	public String transform(String sourceDocument, String sourceFormat, List<MappingDTO> mappings, String targetFormat, Map<String, String> namespaces, String rootElement) throws Exception {
+		return transform(sourceDocument, sourceFormat, compile(mappings), targetFormat, namespaces, rootElement);
+	}
+
+	@Override
+	public TransformationPlan compile(List<MappingDTO> mappings) {
+		return CompiledCrosswalkPlan.compile(mappings, pi -> functionRegistry.resolve(pi, this::doProcessing));
+	}
+
+	@Override
+	public TransformationPlan getPlan(String crosswalkPID, String modified, Supplier<List<MappingDTO>> mappings) {
+		CachedPlan cached = planCache.getIfPresent(crosswalkPID);
+		if(cached != null && Objects.equals(cached.modified(), modified)) {
+			return cached.plan();
+		}
+		TransformationPlan plan = compile(mappings.get());
+		planCache.put(crosswalkPID, new CachedPlan(modified, plan));
+		return plan;
+	}
+
+	@Override
+	public String transform(String sourceDocument, String sourceFormat, TransformationPlan plan, String targetFormat, Map<String, String> namespaces, String rootElement) throws Exception {
+		CompiledCrosswalkPlan compiledPlan = toCompiledPlan(plan);
 
 		String jsonStr = null;		
 		switch (sourceFormat) {
@@ -394,12 +383,61 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 		
 		//System.out.println(jsonStr);
 		DocumentContext source = JsonPath.parse(jsonStr);		
-		Map<String, Object> columnsMap = generateColumnsMap2(mappings, source, rootElement, namespaces);
-		String output = generateTargetDocument(mappings, columnsMap, targetFormat);
+		Map<String, Object> columnsMap = generateColumnsMap2(compiledPlan, source, rootElement, namespaces);
+		String output = generateTargetDocument(compiledPlan.getMappings(), columnsMap, targetFormat);
 
 		return output;
 	}
 	
+	@Override
+	public long transformRecords(InputStream source, String sourceFormat, TransformationPlan plan, String targetFormat, Map<String, String> namespaces, String rootElement, String recordElement, OutputStream output) throws Exception {
+		if(!List.of("csv", "json", "xml").contains(targetFormat)) {
+			throw new IllegalArgumentException("Unexpected value: " + targetFormat);
+		}
+		CompiledCrosswalkPlan compiledPlan = toCompiledPlan(plan);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		long count = 0;
+		try (SourceRecordReader records = SourceRecordReader.open(source, sourceFormat, recordElement)) {
+			if("xml".equals(targetFormat)) {
+				writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n");
+			}
+			Object record;
+			while ((record = records.next()) != null) {
+				String json;
+				try {
+					Map<String, Object> columnsMap = generateColumnsMap2(compiledPlan, JsonPath.parse(record), rootElement, namespaces);
+					json = generateJSON(columnsMap);
+				} catch (Exception e) {
+					throw new IllegalArgumentException("Could not transform record " + (count + 1) + ": " + e.getMessage(), e);
+				}
+				switch (targetFormat) {
+				case "csv":
+					writer.write(generateCSV(compiledPlan.getMappings(), json, count == 0));
+					break;
+				case "json":
+					writer.write(json);
+					writer.write('\n');
+					break;
+				default:
+					writer.write(stripXmlDeclaration(generateXML(json)));
+					writer.write('\n');
+				}
+				count++;
+				// hand each record to the client as soon as it is ready
+				writer.flush();
+			}
+			if("xml".equals(targetFormat)) {
+				writer.write("</records>\n");
+			}
+		}
+		writer.flush();
+		return count;
+	}
+
+	private CompiledCrosswalkPlan toCompiledPlan(TransformationPlan plan) {
+		return plan instanceof CompiledCrosswalkPlan p ? p : (CompiledCrosswalkPlan) compile(plan.getMappings());
+	}
+
 	private Object removeParamKeyForSingleOutput(Map<String, Object> values) {
 		Object newValue = null;
 		if(values != null && values.keySet().size() == 1 ) { // TODO why only size == 1?
@@ -420,77 +458,22 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 		
 	}
 	
-	private boolean isWellFormedUriString(final String uriString) {
-        try {
-            new java.net.URI(uriString);
-            return true;
-        } catch (final URISyntaxException ignored) {
-            return false;
-        }
-    }	
-	private boolean isFilteredResult(Object result, MappingFilterDTO filter) {
+	private boolean isFilteredResult(Object result, Filter filter) {
 		if(result != null && filter != null) {
-			if(filter.getOperator().equals("=")) {
-				return result.equals(filter.getValue());
-			}
-			else if(filter.getOperator().equals("!=")) {
-				return !result.equals(filter.getValue());
-			}	
-			else if(filter.getOperator().equals("in")) {
-				return ((List<Object>)filter.getValue()).indexOf(result) >=0;
-			}	
-			else if(filter.getOperator().equals("startsWith")) {
-				return result.toString().startsWith(filter.getValue().toString());
-			}	
-			else if(filter.getOperator().equals("isURI")) {
-				return isWellFormedUriString(result.toString());
-			}			
-			else if(filter.getOperator().equals("contains")) {
-				return result.toString().indexOf(filter.getValue().toString()) >= 0;
-			}						
-			else if(filter.getOperator().equals("!contains")) {
-				return !(result.toString().indexOf(filter.getValue().toString()) >= 0);
-			}			
-			else {
-				throw new RuntimeException("Unknown operator "+ filter.getOperator());
-			}			
+			return filter.predicate().test(result);
 		}
 		return true;		
 	}	
-	private boolean isIncluded(Object value, MappingDTO mapping) {
-		if(value != null && mapping.getFilter() != null) {
-			MappingFilterDTO filter = mapping.getFilter();
+	private boolean isIncluded(Object value, Filter filter) {
+		if(value != null && filter != null) {
 			DocumentContext doc = JsonPath.parse(value);
 			Object result = null;
 			try {
-				result = doc.read(filter.getPath());
+				result = filter.path().read(doc);
 			}catch(PathNotFoundException ex) {
 				result = "null";
 			}
-			if(filter.getOperator().equals("=")) {
-				return result.equals(filter.getValue());
-			}
-			else if(filter.getOperator().equals("!=")) {
-				return !result.equals(filter.getValue());
-			}	
-			else if(filter.getOperator().equals("in")) {
-				return ((List<Object>)filter.getValue()).indexOf(result) >=0;
-			}	
-			else if(filter.getOperator().equals("startsWith")) {
-				return result.toString().startsWith(filter.getValue().toString());
-			}	
-			else if(filter.getOperator().equals("isURI")) {
-				return isWellFormedUriString(result.toString());
-			}			
-			else if(filter.getOperator().equals("contains")) {
-				return result.toString().indexOf(filter.getValue().toString()) >= 0;
-			}						
-			else if(filter.getOperator().equals("!contains")) {
-				return !(result.toString().indexOf(filter.getValue().toString()) >= 0);
-			}			
-			else {
-				throw new RuntimeException("Unknown operator "+ filter.getOperator());
-			}			
+			return filter.predicate().test(result);
 		}
 		return true;		
 	}
@@ -549,53 +532,34 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 		}		
 	}
 	
-	private boolean handleMapping(Map<String, Object> c, MappingDTO mapping, Set<String> addedCollections, DocumentContext doc) {
-		int initialC = c.keySet().size();
+	private boolean handleMapping(TargetColumns c, Mapping mapping, Set<String> addedCollections, DocumentContext doc) {
+		int initialC = c.size();
 		Map<String, Object> values = null;
 		// get the value using source path 
-		List<NodeInfo> sources = mapping.getSource();
-		for(NodeInfo source : sources ) {
-			String sourcePath = source.getId();
-			if(sourcePath.indexOf("[*") > 0) {
-				addedCollections.add(sourcePath.substring(0, sourcePath.indexOf("]") ));
-			}
-			/*
-			else {
-				for(NodeInfo target: mapping.getTarget()) {
-					String targetPath = target.getId();
-					if(targetPath.indexOf("[*") > 0) {
-						addedCollections.add(sourcePath);		
-					}
-					
-				}					
+		for(Source source : mapping.sources()) {
+			if(source.collectionKey() != null) {
+				addedCollections.add(source.collectionKey());
 			}
-			*/
 		}
-		values = collectDataForSingleMapping(sources, doc);
+		values = collectDataForSingleMapping(mapping.sources(), doc);
 		// this is done in order to make most of the functions simpler
 		Object values2 = removeParamKeyForSingleOutput(values);
-		//System.out.print("original value");
-		//System.out.println(values2);
 
 		// processing step takes as an input either single object or and array, depending on the sources 
-		//System.out.print("after processing");
-		//System.out.println(values2);
-		
 		if(values2 instanceof JSONArray) {
 			JSONArray values2Array = (JSONArray)values2;
 			int valueIndex = 0;
 			for(Object value : values2Array) {
 				// check if value should be filtered of not
-				//System.out.println(value);
-				if(isIncluded(value, mapping)) {
-					if(mapping.getProcessing() != null && value != null) {				
-						value = doProcessing(mapping.getProcessing(), value);	
+				if(isIncluded(value, mapping.filter())) {
+					if(mapping.processing() != null && value != null) {				
+						value = mapping.processing().apply(value);	
 					}						
 					addTargetNodes(c, mapping, value, valueIndex, addedCollections);
 					valueIndex++;
 				}
 				else {
-					if(!mapping.getFilter().isDistinctValues()) {
+					if(!mapping.filter().filter().isDistinctValues()) {
 						valueIndex++;	
 					}
 					
@@ -604,35 +568,35 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 			}
 		}
 		else {
-			if(isIncluded(values2, mapping)) {
-				if(mapping.getProcessing() != null && values2 != null) {				
-					values2 = doProcessing(mapping.getProcessing(), values2);	
+			if(isIncluded(values2, mapping.filter())) {
+				if(mapping.processing() != null && values2 != null) {				
+					values2 = mapping.processing().apply(values2);	
 				}
 				
 				addTargetNodes(c, mapping, values2, 0, addedCollections);
 			}
 		}
-		return c.keySet().size() > initialC;
+		return c.size() > initialC;
 	}
  	
-	private Map<String, Object> generateColumnsMap2(List<MappingDTO> mappings, DocumentContext doc,
+	private Map<String, Object> generateColumnsMap2(CompiledCrosswalkPlan plan, DocumentContext doc,
 			String rootElement, Map<String, String> namespaces) {
-		Map<String, Object> c = new LinkedHashMap<String, Object>();
+		TargetColumns c = new TargetColumns(plan.getCollectionPrefixes());
 		Set<String> addedCollections = new HashSet<String>();
-		for(MappingDTO mapping : mappings) {
-			if(mapping.getOneOf() != null) {
+		for(Step step : plan.getSteps()) {
+			if(step.oneOf() != null) {
 				boolean pickMe = false;
 				
-				for(OneOfDTO oneOf : mapping.getOneOf()) {
+				for(OneOf oneOf : step.oneOf()) {
 					boolean isFiltered = true;
-					if(oneOf.getFilter() != null) {
-						Object r = doc.read(oneOf.getFilter().getPath());
+					if(oneOf.filter() != null) {
+						Object r = oneOf.filter().path().read(doc);
 						if(r != null) {
 							if(r instanceof JSONArray) {
 								// if none match set isFilter to false
 								boolean matchFound = false;
 								for(Object _obj : (JSONArray)r) {
-									if(isFilteredResult(_obj, oneOf.getFilter())) {
+									if(isFilteredResult(_obj, oneOf.filter())) {
 										matchFound = true;
 									}
 								}
@@ -641,19 +605,17 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 								}
 							}
 							else {
-								if(!isFilteredResult(r, oneOf.getFilter())) {
+								if(!isFilteredResult(r, oneOf.filter())) {
 									isFiltered = false;
 								}
 							}
 						}
 					}
-					List<MappingDTO> _mappings = oneOf.getMappings();
-					
 					
 					boolean hasResults2 = false;
 					if(isFiltered) {
-						for(int i = 0; i < _mappings.size(); i++) {						
-							hasResults2 = handleMapping(c, _mappings.get(i), addedCollections, doc);
+						for(Mapping _mapping : oneOf.mappings()) {						
+							hasResults2 = handleMapping(c, _mapping, addedCollections, doc);
 							if(hasResults2) {
 								pickMe = true;
 							}
@@ -663,103 +625,108 @@ public class FnoDataTransformationServiceImpl implements DataTransformationServi
 						break;
 					}					
 				}
-
-				
-
 			}
 			else {
-				handleMapping(c, mapping, addedCollections, doc);
+				handleMapping(c, step.mapping(), addedCollections, doc);
 			}
 			
 		}
 		
-		addNamespaces(c, rootElement, namespaces);		
-		return sortColumnMapKeys(c);
+		addNamespaces(c.values, rootElement, namespaces);		
+		return sortColumnMapKeys(c.values);
 
 	}
 	
-	private int getPrevIndex(Map<String, Object> c, String path, int index) {
-		String targetPrefix = path.substring(0, path.indexOf("[*") + 1);
-		int oldIndexNumber = -1;
-		if(targetPrefix != null ) {
-			for(String cKey : c.keySet()) {
-				if(cKey.indexOf(targetPrefix) == 0) {
-					String oldIndex = cKey.substring(cKey.indexOf("[")+1, cKey.indexOf("]"));
-					oldIndexNumber = Integer.parseInt(oldIndex);
-					
-					
-				}
-			}		
-			
-		}		
-		return oldIndexNumber;
-	}
-	
-	private void addTargetNodes(Map<String, Object> c, MappingDTO mapping, Object value, int valueIndex, Set<String> addedCollections) {
-		List<NodeInfo> targets = mapping.getTarget();
+	private void addTargetNodes(TargetColumns c, Mapping mapping, Object value, int valueIndex, Set<String> addedCollections) {
 		int prevIndex = 0;
 		boolean prevFound = false;
-		for(int i = 0; i < targets.size(); i++) {
+		Boolean missing = null;
+		for(Target target : mapping.targets()) {
 			Object newValue = value;
-			NodeInfo target = targets.get(i);
-			String targetPath = target.getId();
-			if(target.getProcessing() != null && value != null ) {
-				newValue = doProcessing(target.getProcessing(), value);
+			if(target.processing() != null && value != null ) {
+				newValue = target.processing().apply(value);
 			}
 			if(newValue != null) {
-				if(value.toString().equals("[\"##missing##\"]") || value.toString().equals("##missing##"))  {
+				if(missing == null) {
+					String valueString = value.toString();
+					missing = valueString.equals("[\"##missing##\"]") || valueString.equals("##missing##");
+				}
+				if(missing)  {
 					continue;
 				}
 				
-				if(targetPath.contains("[*]")) {
+				if(target.collection()) {
 					// check if collection path exists in the c and add index accordingly 
 					if(!prevFound) {
-						prevIndex = getPrevIndex(c, targetPath, valueIndex);	
+						prevIndex = c.getPrevIndex(target.collectionPrefix());	
 						// add one if the source collection key has not yet been added 
 						boolean addedIndex = false;
-						for(NodeInfo source : mapping.getSource()) {
-							String sourcePath = source.getId();
-							if(sourcePath.indexOf("]") > 0) {
-								if(addedCollections.contains(sourcePath.substring(0, sourcePath.indexOf(("]"))))) {
+						for(Source source : mapping.sources()) {
+							if(source.bracketKey() != null) {
+								if(addedCollections.contains(source.bracketKey())) {
 									addedIndex = true;
 								}								
 							}
-							else {
-								/*
-								if(addedCollections.contains(sourcePath)) {
-									addedIndex = true;
-								}*/
-								//for(NodeInfo target: mapping.getTarget()) {
-								//	String targetPath = target.getId();
-									if(targetPath.indexOf("[*") > 0) {
-										addedCollections.add(sourcePath);		
-									}
-									
-								//}								
-								
+							else if(target.hasCollection()) {
+								addedCollections.add(source.node().getId());		
 							}
 						}
 						if(!addedIndex) {
 							prevIndex = prevIndex + 1;
 						}
 						else {
-							
 							prevIndex = valueIndex;
 						}
 						prevFound = true;
 						
 					}
-					c.put(targetPath.replace("*", ""+ prevIndex), newValue);					
+					c.put(target.path(prevIndex), newValue);					
 				}
 				else {
-					c.put(targetPath, newValue);	
+					c.put(target.path(), newValue);	
 				}			
 				
 			}
 			
 		}
-			
-		
+	}
+
+	/**
+	 * Columns map of the target document. Keeps track of the last key added under each collection prefix,
+	 * so the previous index of a collection is found without scanning all keys.
+	 */
+	private static final class TargetColumns {
+
+		private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+		private final Set<String> prefixes;
+		private final Map<String, String> lastKeys = new HashMap<String, String>();
+
+		TargetColumns(Set<String> prefixes) {
+			this.prefixes = prefixes;
+		}
+
+		void put(String key, Object value) {
+			if(!values.containsKey(key)) {
+				for(String prefix : prefixes) {
+					if(key.startsWith(prefix)) {
+						lastKeys.put(prefix, key);
+					}
+				}
+			}
+			values.put(key, value);
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		int getPrevIndex(String prefix) {
+			String key = lastKeys.get(prefix);
+			if(key == null) {
+				return -1;
+			}
+			return Integer.parseInt(key.substring(key.indexOf("[")+1, key.indexOf("]")));
+		}
 	}
 
 }
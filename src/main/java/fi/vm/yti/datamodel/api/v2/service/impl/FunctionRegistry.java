@@ -0,0 +1,170 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFList;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.vm.yti.datamodel.api.v2.dto.ProcessingInfo;
+
+/**
+ * Java bindings of the FnO processing functions. Functions whose implementation is a static method taking the
+ * input value and optionally the params map are bound to a method handle when the registry is created, so
+ * applying them is a direct call. Other functions, and calls whose arguments do not fit the method signature,
+ * are executed with the fallback (the FnO agent).
+ */
+class FunctionRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(FunctionRegistry.class);
+
+	private static final String FNO = "https://w3id.org/function/ontology#";
+	private static final String FNOI = "https://w3id.org/function/vocabulary/implementation#";
+	private static final String FNOM = "https://w3id.org/function/vocabulary/mapping#";
+	private static final String MSCR = "http://uri.suomi.fi/datamodel/ns/mscr#";
+
+	private static final Resource FNO_MAPPING = ResourceFactory.createResource(FNO + "Mapping");
+	private static final Property FNO_FUNCTION = ResourceFactory.createProperty(FNO + "function");
+	private static final Property FNO_IMPLEMENTATION = ResourceFactory.createProperty(FNO + "implementation");
+	private static final Property FNO_METHOD_MAPPING = ResourceFactory.createProperty(FNO + "methodMapping");
+	private static final Property FNO_EXPECTS = ResourceFactory.createProperty(FNO + "expects");
+	private static final Property FNO_PREDICATE = ResourceFactory.createProperty(FNO + "predicate");
+	private static final Property FNOI_CLASS_NAME = ResourceFactory.createProperty(FNOI + "class-name");
+	private static final Property FNOM_METHOD_NAME = ResourceFactory.createProperty(FNOM + "method-name");
+
+	/**
+	 * Argument predicates given to the functions, see {@link FnoDataTransformationServiceImpl}
+	 */
+	static final String INPUT_OBJECT = MSCR + "inputObject";
+	static final String PARAMS_MAP = MSCR + "paramsMap";
+
+	/**
+	 * Method handle of type (Object[])Object and the source of each argument
+	 */
+	private record Binding(MethodHandle handle, boolean[] params) {
+	}
+
+	// bindings by function IRI
+	private final Map<String, Binding> bindings = new HashMap<>();
+
+	/**
+	 * @param descriptions FnO descriptions of the functions and their Java implementations
+	 */
+	FunctionRegistry(Model descriptions) {
+		descriptions.listResourcesWithProperty(RDF.type, FNO_MAPPING).forEachRemaining(mapping -> {
+			Resource function = mapping.getPropertyResourceValue(FNO_FUNCTION);
+			if (function == null || function.getURI() == null) {
+				return;
+			}
+			try {
+				Binding binding = bind(function, mapping);
+				if (binding != null) {
+					bindings.put(function.getURI(), binding);
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				logger.warn("No direct binding for function {}: {}", function.getURI(), e.getMessage());
+			}
+		});
+		logger.info("Bound {} processing functions directly", bindings.size());
+	}
+
+	private Binding bind(Resource function, Resource mapping) throws ReflectiveOperationException {
+		Resource implementation = mapping.getPropertyResourceValue(FNO_IMPLEMENTATION);
+		Resource methodMapping = mapping.getPropertyResourceValue(FNO_METHOD_MAPPING);
+		Resource expects = function.getPropertyResourceValue(FNO_EXPECTS);
+		if (implementation == null || methodMapping == null || expects == null) {
+			return null;
+		}
+		Statement className = implementation.getProperty(FNOI_CLASS_NAME);
+		Statement methodName = methodMapping.getProperty(FNOM_METHOD_NAME);
+		if (className == null || methodName == null) {
+			return null;
+		}
+
+		// only the input value and the params map are given as arguments, functions expecting other
+		// parameters are left to the agent
+		List<RDFNode> parameters = expects.as(RDFList.class).asJavaList();
+		boolean[] params = new boolean[parameters.size()];
+		for (int i = 0; i < parameters.size(); i++) {
+			Resource predicate = parameters.get(i).asResource().getPropertyResourceValue(FNO_PREDICATE);
+			if (predicate == null) {
+				return null;
+			}
+			if (PARAMS_MAP.equals(predicate.getURI())) {
+				params[i] = true;
+			} else if (!INPUT_OBJECT.equals(predicate.getURI())) {
+				return null;
+			}
+		}
+
+		Class<?> cls = Class.forName(className.getString());
+		List<Method> candidates = new ArrayList<>();
+		for (Method method : cls.getMethods()) {
+			if (method.getName().equals(methodName.getString())
+					&& Modifier.isStatic(method.getModifiers())
+					&& method.getParameterCount() == params.length) {
+				candidates.add(method);
+			}
+		}
+		if (candidates.size() != 1) {
+			// overloads are resolved by the agent
+			return null;
+		}
+		MethodHandle handle = MethodHandles.publicLookup().unreflect(candidates.get(0))
+				.asType(MethodType.genericMethodType(params.length))
+				.asSpreader(Object[].class, params.length);
+		return new Binding(handle, params);
+	}
+
+	boolean isBound(String functionId) {
+		return bindings.containsKey(functionId);
+	}
+
+	/**
+	 * Resolve the processing step to a function applied to values
+	 *
+	 * @param fallback executes the processing step with the FnO agent
+	 */
+	Function<Object, Object> resolve(ProcessingInfo pi, BiFunction<ProcessingInfo, Object, Object> fallback) {
+		Binding binding = bindings.get(pi.getId());
+		if (binding == null) {
+			return value -> fallback.apply(pi, value);
+		}
+		MethodHandle handle = binding.handle();
+		boolean[] params = binding.params();
+		Object paramsMap = pi.getParams();
+		return value -> {
+			Object[] args = new Object[params.length];
+			for (int i = 0; i < params.length; i++) {
+				args[i] = params[i] ? paramsMap : value;
+			}
+			try {
+				return (Object) handle.invokeExact(args);
+			} catch (ClassCastException | NullPointerException e) {
+				// value does not fit the method signature, let the agent convert the arguments
+				return fallback.apply(pi, value);
+			} catch (Throwable e) {
+				// failing functions leave the value unchanged, the same way as when executed by the agent
+				logger.warn("Processing function {} failed: {}", pi.getId(), e.toString());
+				return value;
+			}
+		};
+	}
+}
@@ -0,0 +1,40 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+
+/**
+ * Builds a target JSON document from JsonPath writes. All writes are applied to one mutable tree, which is
+ * serialized once when the document is complete. Missing properties on definite paths are created the same way
+ * as when setting each path on a freshly parsed document.
+ */
+class JsonTargetBuilder {
+
+	private static final Configuration CONFIGURATION = Configuration.builder()
+			.options(Option.CREATE_MISSING_PROPERTIES_ON_DEFINITE_PATH).build();
+
+	private final JsonProvider provider = CONFIGURATION.jsonProvider();
+	private Object document = provider.parse("{}");
+
+	/**
+	 * Set the value at the given path. Objects and arrays are copied into the tree, so later writes below the
+	 * path do not change the given value or other places where the same value was written.
+	 */
+	public JsonTargetBuilder set(String path, Object value) {
+		document = JsonPath.compile(path).set(document, copy(value), CONFIGURATION);
+		return this;
+	}
+
+	public String toJson() {
+		return provider.toJson(document);
+	}
+
+	private Object copy(Object value) {
+		if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+			return value;
+		}
+		return provider.parse(provider.toJson(value));
+	}
+}
@@ -1,5 +1,9 @@
 package fi.vm.yti.datamodel.api.v2.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -9,50 +13,141 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.common.io.ByteStreams;
+
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
 import fi.vm.yti.datamodel.api.v2.dto.ModelType;
 import fi.vm.yti.datamodel.api.v2.service.StorageService;
 
 @Service
+@ConditionalOnProperty(name = "fileStorage", havingValue = "postgres", matchIfMissing = true)
 public class PostgresStorageService implements StorageService {
 
 	private static final Logger logger = LoggerFactory.getLogger(PostgresStorageService.class);
 
 	@Autowired
-	private JdbcTemplate jdbcTemplate;
+	protected JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	protected TransactionTemplate transactionTemplate;
 
 	@Override
-	public int storeSchemaFile(String schemaPID, String contentType, byte[] data, String filename) {
-		return storeFile(schemaPID, contentType, data, MSCRType.SCHEMA, filename);
+	public int storeSchemaFile(String schemaPID, String contentType, InputStream data, long size, String filename) {
+		return storeFile(schemaPID, contentType, data, size, MSCRType.SCHEMA, filename);
 	}
 
 	@Override
-	public int storeCrosswalkFile(String crosswalkPID, String contentType, byte[] data, String filename) {
-		return storeFile(crosswalkPID, contentType, data, MSCRType.CROSSWALK, filename);
+	public int storeCrosswalkFile(String crosswalkPID, String contentType, InputStream data, long size, String filename) {
+		return storeFile(crosswalkPID, contentType, data, size, MSCRType.CROSSWALK, filename);
+	}
+
+	/**
+	 * Content is stored once per SHA-256 digest, so uploading the same file again or copying it to a new revision
+	 * only adds a file row referencing the existing blob. The blob row is locked by storeBlob until the file row
+	 * referencing it has been inserted, removeUnreferencedBlobs takes the same lock.
+	 */
+	private int storeFile(String pid, String contentType, InputStream data, long size, MSCRType type, String filename) {
+		try (ContentBlob blob = encode(data, contentType)) {
+			return transactionTemplate.execute(status -> {
+				storeBlob(blob);
+				return insertFile(pid, contentType, type, filename, blob.sha256());
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
-	private int storeFile(String pid, String contentType, byte[] data, MSCRType type, String filename) {
+	protected ContentBlob encode(InputStream data, String contentType) throws IOException {
+		return ContentBlob.encode(data, ContentBlob.isCompressible(contentType));
+	}
+
+	/**
+	 * Store the blob unless it is already stored and lock its row. Called in the transaction of storeFile.
+	 */
+	protected void storeBlob(ContentBlob blob) {
+		if (lockBlob(blob.sha256())) {
+			logger.debug("Reusing stored content {}", blob.sha256());
+			return;
+		}
+		// a blob inserted by a concurrent upload can be removed before it is locked here, then it is inserted again
+		for (int attempt = 0; attempt < 3; attempt++) {
+			insertBlob(blob);
+			if (lockBlob(blob.sha256())) {
+				return;
+			}
+		}
+		throw new ConcurrencyFailureException("Content " + blob.sha256() + " was removed while it was stored");
+	}
+
+	/**
+	 * Insert the blob, does nothing if it has been inserted by a concurrent upload. The content is written to a
+	 * large object in chunks, so it is never held in memory as a whole.
+	 */
+	protected void insertBlob(ContentBlob blob) {
+		jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+			LargeObjectManager largeObjects = con.unwrap(PGConnection.class).getLargeObjectAPI();
+			long oid = largeObjects.createLO(LargeObjectManager.READWRITE);
+			try (InputStream in = blob.openEncoded();
+					LargeObject lo = largeObjects.open(oid, LargeObjectManager.WRITE);
+					OutputStream out = lo.getOutputStream()) {
+				in.transferTo(out);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			try (PreparedStatement ps = con.prepareStatement(
+					"insert into mscr_blobs(sha256, encoding, size, data_oid) values(?, ?, ?, ?) on conflict (sha256) do nothing")) {
+				ps.setString(1, blob.sha256());
+				ps.setString(2, blob.encoding());
+				ps.setLong(3, blob.size());
+				ps.setLong(4, oid);
+				if (ps.executeUpdate() == 0) {
+					largeObjects.delete(oid);
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Lock the row of a stored blob until the end of the transaction. Waits for a concurrent removal of the blob,
+	 * in which case the blob no longer exists.
+	 *
+	 * @return true if the blob exists
+	 */
+	protected boolean lockBlob(String sha256) {
+		return !jdbcTemplate.queryForList("select sha256 from mscr_blobs where sha256 = ? for update", String.class, sha256).isEmpty();
+	}
+
+	private int insertFile(String pid, String contentType, MSCRType type, String filename, String sha256) {
 		KeyHolder keyHolder = new GeneratedKeyHolder();
 
 		jdbcTemplate.update(con -> {
 			PreparedStatement ps = con.prepareStatement(
-					"insert into mscr_files(pid, content_type, data, type, filename) values(?, ?, ?, ?, ?)",
+					"insert into mscr_files(pid, content_type, sha256, type, filename) values(?, ?, ?, ?, ?)",
 					Statement.RETURN_GENERATED_KEYS);
 			ps.setString(1, pid);
 			ps.setString(2, contentType);
-			ps.setBytes(3, data);
+			ps.setString(3, sha256);
 			ps.setString(4, type.name());
 			ps.setString(5, filename);
 			return ps;
@@ -62,30 +157,66 @@ public class PostgresStorageService implements StorageService {
 	}
 
 	@Override
-	public StoredFile retrieveFile(String pid, long fileID, MSCRType type) {
-		return jdbcTemplate.query(new PreparedStatementCreator() {
+	public void writeFileContent(long fileID, OutputStream out) throws IOException {
+		readContent(fileID, 0, in -> in.transferTo(out));
+	}
 
-			@Override
-			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-				PreparedStatement ps = con
-						.prepareStatement("select content_type, data, filename, timestamp from mscr_files where pid = ? and id = ? and type = ?");
-				ps.setString(1, pid);
-				ps.setLong(2, fileID);
-				ps.setString(3, type.name());
-				return ps;
-			}
-		}, new ResultSetExtractor<StoredFile>() {
+	@Override
+	public void writeFileContent(long fileID, long offset, long length, OutputStream out) throws IOException {
+		readContent(fileID, offset, in -> ByteStreams.limit(in, length).transferTo(out));
+	}
 
-			@Override
-			public StoredFile extractData(ResultSet rs) throws SQLException, DataAccessException {
-				rs.next();
-				String contentType = rs.getString(1);
-				byte[] data = rs.getBytes(2);
-				String filename = rs.getString(3);
-				Timestamp timestamp = rs.getTimestamp(4);
-				return new StoredFile(contentType, data, fileID, type, filename, timestamp);
-			}
-		});
+	private interface ContentReader<T> {
+		T read(InputStream in) throws IOException;
+	}
+
+	/**
+	 * Read the content of a file from its large object. Uncompressed content is read from the offset, compressed
+	 * content has to be decoded from the start. Large objects can only be read in a transaction.
+	 *
+	 * @return result of the reader, null if the file does not exist
+	 */
+	private <T> T readContent(long fileID, long offset, ContentReader<T> reader) throws IOException {
+		try {
+			return transactionTemplate.execute(status -> jdbcTemplate.execute((ConnectionCallback<T>) con -> {
+				String encoding;
+				long oid;
+				try (PreparedStatement ps = con.prepareStatement(
+						"select b.encoding, b.data_oid from mscr_files f join mscr_blobs b on b.sha256 = f.sha256 where f.id = ?")) {
+					ps.setLong(1, fileID);
+					try (ResultSet rs = ps.executeQuery()) {
+						if (!rs.next()) {
+							return null;
+						}
+						encoding = rs.getString(1);
+						oid = rs.getLong(2);
+					}
+				}
+				try (LargeObject lo = con.unwrap(PGConnection.class).getLargeObjectAPI().open(oid, LargeObjectManager.READ)) {
+					if (ContentBlob.IDENTITY.equals(encoding)) {
+						lo.seek64(offset, LargeObject.SEEK_SET);
+						return reader.read(lo.getInputStream());
+					}
+					try (InputStream in = ContentBlob.decode(lo.getInputStream(), encoding)) {
+						in.skipNBytes(offset);
+						return reader.read(in);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Override
+	public StoredFile retrieveFile(String pid, long fileID, MSCRType type) {
+		List<StoredFile> files = jdbcTemplate.query(
+				"select content_type, id, filename, timestamp from mscr_files where pid = ? and id = ? and type = ?",
+				(rs, rowNum) -> mapToStoredFile(rs, type),
+				pid, fileID, type.name());
+		return files.isEmpty() ? null : files.get(0);
 	}
 
 	@Override
@@ -99,33 +230,35 @@ public class PostgresStorageService implements StorageService {
 	}
 
 	private List<StoredFile> retrieveAllFiles(String pid, MSCRType type) {
-		return jdbcTemplate.query(new PreparedStatementCreator() {
+		return jdbcTemplate.query(
+				"select content_type, id, filename, timestamp from mscr_files where pid = ? and type = ? order by id",
+				(rs, rowNum) -> mapToStoredFile(rs, type),
+				pid, type.name());
+	}
 
-			@Override
-			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-				PreparedStatement ps = con
-						.prepareStatement("select content_type, data, id, filename, timestamp from mscr_files where pid = ? and type = ?");
-				ps.setString(1, pid);
-				ps.setString(2, type.name());
-				return ps;
-			}
-		}, new ResultSetExtractor<List<StoredFile>>() {
+	@Override
+	public StoredFile retrievePrimaryFile(String pid, MSCRType type) {
+		List<StoredFile> files = jdbcTemplate.query(
+				"select content_type, id, filename, timestamp from mscr_files where pid = ? and type = ? order by id limit 1",
+				(rs, rowNum) -> mapToStoredFile(rs, type),
+				pid, type.name());
+		return files.isEmpty() ? null : files.get(0);
+	}
 
-			@Override
-			public List<StoredFile> extractData(ResultSet rs) throws SQLException, DataAccessException {
-				List<StoredFile> files = new ArrayList<StoredFile>();
-				while (rs.next()) {
-					String contentType = rs.getString(1);
-					byte[] data = rs.getBytes(2);
-					long fileID = rs.getLong(3);
-					String filename = rs.getString(4);
-					Timestamp timestamp = rs.getTimestamp(5);
+	private StoredFile mapToStoredFile(ResultSet rs, MSCRType type) throws SQLException {
+		String contentType = rs.getString(1);
+		long fileID = rs.getLong(2);
+		String filename = rs.getString(3);
+		Timestamp timestamp = rs.getTimestamp(4);
+		return new StoredFile(contentType, fileID, type, filename, timestamp, () -> retrieveContent(fileID));
+	}
 
-					files.add(new StoredFile(contentType, data, fileID, type, filename, timestamp));
-				}
-				return files;
-			}
-		});
+	protected byte[] retrieveContent(long fileID) {
+		try {
+			return readContent(fileID, 0, InputStream::readAllBytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	@Override
@@ -144,7 +277,7 @@ public class PostgresStorageService implements StorageService {
 			@Override
 			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
 				PreparedStatement ps = con
-						.prepareStatement("select content_type, length(data) as size, id, filename, timestamp from mscr_files where pid = ? and type = ?");
+						.prepareStatement("select f.content_type, b.size, f.id, f.filename, f.timestamp, f.sha256 from mscr_files f join mscr_blobs b on b.sha256 = f.sha256 where f.pid = ? and f.type = ? order by f.id");
 				ps.setString(1, pid);
 				ps.setString(2, type.name());
 				return ps;
@@ -160,8 +293,9 @@ public class PostgresStorageService implements StorageService {
 					long fileID = rs.getLong(3);
 					String filename = rs.getString(4);
 					Timestamp timestamp = rs.getTimestamp(5);
+					String sha256 = rs.getString(6);
 
-					files.add(new StoredFileMetadata(contentType, size, fileID, type, filename, timestamp));
+					files.add(new StoredFileMetadata(contentType, size, fileID, type, filename, timestamp, sha256));
 				}
 				return files;
 			}
@@ -170,27 +304,66 @@ public class PostgresStorageService implements StorageService {
 	
 	@Override
 	public void removeFile(long fileID) throws DataAccessException {
-		jdbcTemplate.update(con -> {
-			PreparedStatement ps = con.prepareStatement("delete from mscr_files where id = ?");
-			ps.setLong(1, fileID);
-			return ps;
-		});
+		List<String> hashes = jdbcTemplate.queryForList("delete from mscr_files where id = ? returning sha256", String.class, fileID);
+		removeUnreferencedBlobs(hashes);
 	}
 
 	@Override
 	public void deleteAllCrosswalkFiles(String pid) {
-		List<StoredFileMetadata> md = retrieveAllCrosswalkFilesMetadata(pid);
-		md.forEach(m -> {
-			removeFile(m.fileID());
-		});
+		deleteAllFiles(pid, MSCRType.CROSSWALK);
 	}
 
 	@Override
 	public void deleteAllSchemaFiles(String pid) {
-		List<StoredFileMetadata> md = retrieveAllSchemaFilesMetadata(pid);
-		md.forEach(m -> {
-			removeFile(m.fileID());
-		});		
+		deleteAllFiles(pid, MSCRType.SCHEMA);
+	}
+
+	private void deleteAllFiles(String pid, MSCRType type) {
+		List<String> hashes = jdbcTemplate.queryForList("delete from mscr_files where pid = ? and type = ? returning sha256",
+				String.class, pid, type.name());
+		logger.debug("Deleted {} {} files of {}", hashes.size(), type, pid);
+		removeUnreferencedBlobs(hashes);
+	}
+
+	/**
+	 * Blobs are shared between files, remove the ones no longer referenced by any file. The rows are locked first
+	 * like in storeBlob, so an upload reusing a blob either finishes before the check for references or finds the
+	 * blob removed and stores it again.
+	 */
+	protected void removeUnreferencedBlobs(List<String> hashes) {
+		if (hashes.isEmpty()) {
+			return;
+		}
+		Object[] distinct = hashes.stream().distinct().sorted().toArray();
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				// locked in the same order by every removal
+				jdbcTemplate.query(con -> {
+					PreparedStatement ps = con.prepareStatement("select sha256 from mscr_blobs where sha256 = any(?) order by sha256 for update");
+					ps.setArray(1, con.createArrayOf("text", distinct));
+					return ps;
+				}, (rs, rowNum) -> rs.getString(1));
+				List<String> deleted = jdbcTemplate.query(con -> {
+					PreparedStatement ps = con.prepareStatement(
+							"delete from mscr_blobs b where b.sha256 = any(?) and not exists (select 1 from mscr_files f where f.sha256 = b.sha256) "
+							// large objects are not removed with the rows referencing them
+							+ "returning b.sha256, lo_unlink(b.data_oid)");
+					ps.setArray(1, con.createArrayOf("text", distinct));
+					return ps;
+				}, (rs, rowNum) -> rs.getString(1));
+				logger.debug("Deleted {} unreferenced blobs", deleted.size());
+				blobsRemoved(deleted);
+			});
+		} catch (DataIntegrityViolationException e) {
+			// referenced again by a concurrent upload
+			logger.debug("Could not delete blobs: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Called in the transaction that removed the blobs, while their rows are still locked
+	 */
+	protected void blobsRemoved(List<String> hashes) {
 	}
 
 	@Override
@@ -200,7 +373,7 @@ public class PostgresStorageService implements StorageService {
 			@Override
 			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
 				PreparedStatement ps = con
-						.prepareStatement("select content_type, length(data) as size, id, filename, timestamp from mscr_files where pid = ? and id = ? and type = ?");
+						.prepareStatement("select f.content_type, b.size, f.id, f.filename, f.timestamp, f.sha256 from mscr_files f join mscr_blobs b on b.sha256 = f.sha256 where f.pid = ? and f.id = ? and f.type = ?");
 				ps.setString(1, pid);
 				ps.setLong(2, fileID);
 				ps.setString(3, type.name());
@@ -217,8 +390,9 @@ public class PostgresStorageService implements StorageService {
 					long fileID = rs.getLong(3);
 					String filename = rs.getString(4);
 					Timestamp timestamp = rs.getTimestamp(5);
+					String sha256 = rs.getString(6);
 
-					files.add(new StoredFileMetadata(contentType, size, fileID, type, filename, timestamp));
+					files.add(new StoredFileMetadata(contentType, size, fileID, type, filename, timestamp, sha256));
 				}
 				return files;
 			}
@@ -0,0 +1,254 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.github.underscore.U;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import com.opencsv.CSVReader;
+
+import net.minidev.json.JSONObject;
+
+/**
+ * Reads the records of a source document one at a time, so only one record is held in memory. Records are
+ * returned in the same intermediate JSON form as whole documents: CSV rows become objects keyed by the header,
+ * XML records are converted with their ancestor elements so the source paths of the mappings stay the same.
+ */
+abstract class SourceRecordReader implements Closeable {
+
+	private static final JsonProvider JSON = Configuration.defaultConfiguration().jsonProvider();
+
+	/**
+	 * @return next record or null if there are no more records
+	 */
+	abstract Object next() throws IOException;
+
+	/**
+	 * @param source source document
+	 * @param format csv (a record per row), ndjson (a record per line), xml (a record per recordElement) or
+	 * json (the whole document as one record)
+	 * @param recordElement name of the repeated element in xml sources
+	 */
+	static SourceRecordReader open(InputStream source, String format, String recordElement) throws IOException {
+		switch (format) {
+		case "csv":
+			return new CsvRecords(source);
+		case "ndjson":
+			return new JsonLineRecords(source);
+		case "json":
+			return new SingleJsonRecord(source);
+		case "xml":
+			if (recordElement == null || recordElement.isBlank()) {
+				throw new IllegalArgumentException("Record element is required for xml sources");
+			}
+			return new XmlRecords(source, recordElement);
+		default:
+			throw new IllegalArgumentException("Unexpected value: " + format);
+		}
+	}
+
+	private static final class CsvRecords extends SourceRecordReader {
+
+		private final CSVReader reader;
+		private final String[] columns;
+
+		CsvRecords(InputStream source) throws IOException {
+			this.reader = new CSVReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+			try {
+				this.columns = reader.readNext();
+			} catch (com.opencsv.exceptions.CsvValidationException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		Object next() throws IOException {
+			if (columns == null) {
+				return null;
+			}
+			String[] row;
+			try {
+				row = reader.readNext();
+			} catch (com.opencsv.exceptions.CsvValidationException e) {
+				throw new IOException(e);
+			}
+			if (row == null) {
+				return null;
+			}
+			JSONObject obj = new JSONObject();
+			for (int i = 0; i < columns.length && i < row.length; i++) {
+				obj.appendField(columns[i], row[i]);
+			}
+			return obj;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	private static final class JsonLineRecords extends SourceRecordReader {
+
+		private final BufferedReader reader;
+
+		JsonLineRecords(InputStream source) {
+			this.reader = new BufferedReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		Object next() throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank()) {
+					return JSON.parse(line);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	private static final class SingleJsonRecord extends SourceRecordReader {
+
+		private final InputStream source;
+		private boolean read;
+
+		SingleJsonRecord(InputStream source) {
+			this.source = source;
+		}
+
+		@Override
+		Object next() throws IOException {
+			if (read) {
+				return null;
+			}
+			read = true;
+			return JSON.parse(source, StandardCharsets.UTF_8.name());
+		}
+
+		@Override
+		public void close() throws IOException {
+			source.close();
+		}
+	}
+
+	private static final class XmlRecords extends SourceRecordReader {
+
+		private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+		private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+		private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+		private final InputStream source;
+		private final XMLEventReader reader;
+		private final String recordElement;
+		// elements enclosing the current position, outside of records
+		private final Deque<StartElement> ancestors = new ArrayDeque<>();
+
+		XmlRecords(InputStream source, String recordElement) throws IOException {
+			this.source = source;
+			this.recordElement = recordElement;
+			try {
+				this.reader = INPUT_FACTORY.createXMLEventReader(source);
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		private static XMLInputFactory createInputFactory() {
+			XMLInputFactory factory = XMLInputFactory.newFactory();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			return factory;
+		}
+
+		@Override
+		Object next() throws IOException {
+			try {
+				while (reader.hasNext()) {
+					XMLEvent event = reader.nextEvent();
+					if (event.isStartElement()) {
+						StartElement start = event.asStartElement();
+						if (isRecord(start)) {
+							return JSON.parse(U.xmlToJson(readRecord(start)));
+						}
+						ancestors.push(start);
+					} else if (event.isEndElement() && !ancestors.isEmpty()) {
+						ancestors.pop();
+					}
+				}
+				return null;
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		private boolean isRecord(StartElement start) {
+			String localName = start.getName().getLocalPart();
+			String prefix = start.getName().getPrefix();
+			return recordElement.equals(localName)
+					|| (prefix != null && !prefix.isEmpty() && recordElement.equals(prefix + ":" + localName));
+		}
+
+		/**
+		 * Copy the record and its ancestors (without their other content) into a document of its own
+		 */
+		private String readRecord(StartElement record) throws XMLStreamException {
+			StringWriter out = new StringWriter();
+			XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(out);
+			Iterator<StartElement> outermostFirst = ancestors.descendingIterator();
+			while (outermostFirst.hasNext()) {
+				writer.add(outermostFirst.next());
+			}
+			writer.add(record);
+			int depth = 1;
+			while (depth > 0 && reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (event.isStartElement()) {
+					depth++;
+				} else if (event.isEndElement()) {
+					depth--;
+				}
+				writer.add(event);
+			}
+			for (StartElement ancestor : ancestors) {
+				writer.add(EVENT_FACTORY.createEndElement(ancestor.getName(), ancestor.getNamespaces()));
+			}
+			writer.close();
+			return out.toString();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			} finally {
+				source.close();
+			}
+		}
+	}
+}
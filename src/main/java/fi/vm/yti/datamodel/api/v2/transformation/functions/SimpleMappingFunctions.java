@@ -7,11 +7,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,7 +26,6 @@ import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
 
-import info.debatty.java.stringsimilarity.Levenshtein;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import static java.util.stream.Collectors.joining;
@@ -32,6 +34,10 @@ public class SimpleMappingFunctions {
 
 	
 	public static Map<String, Set<String>> vocabularies = new HashMap();
+	private static final Map<String, VocabularyIndex> builtInIndexes = new ConcurrentHashMap<>();
+	private static volatile Function<String, VocabularyIndex> vocabularyResolver = SimpleMappingFunctions::getBuiltInVocabularyIndex;
+	private static volatile Function<String, Map<String, VocabularyItem>> vocabularyCrosswalkResolver = pid -> null;
+	private static volatile BiFunction<String, String, String> vocabularyCrosswalkFinder = (source, target) -> null;
 	
 	static {
 		vocabularies.put(
@@ -518,36 +524,87 @@ public class SimpleMappingFunctions {
 		
 	}
 	
+	/**
+	 * Map the input to entries of the target vocabulary by Levenshtein distance. With the maxDistance parameter each
+	 * word of the input, and the whole input, is looked up from the index of the vocabulary and entries within
+	 * maxDistance edits match. Otherwise each word is compared with every entry of a vocabulary defined in this
+	 * class and entries further than threshold edits match. Returns "Other" if nothing matches.
+	 */
 	public static Object similarityBasedValueMapping(Object node, Map<String, Object> params) {
-		Double threshold = (Double)params.get("threshold");
 		String vocabulary = (String)params.get("targetVocabulary");
-		Levenshtein l = new Levenshtein();
 		String _default = "Other";
-		final Set<String> matches = new HashSet<String>();
-		String[] tokens = (node.toString()).split(" ");
-		for(int i = 0; i < tokens.length; i++) {
-			String token = tokens[i];
-			vocabularies.get(vocabulary).forEach(target -> {
-				double ratio = l.distance(token.toLowerCase(), target.toLowerCase());
-				if(ratio > threshold) {
-					matches.add(target.toString());
-				}
-						
-			});	
+		String input = node.toString();
+		final Set<String> matches = new LinkedHashSet<String>();
+		if(params.get("maxDistance") != null) {
+			int maxDistance = ((Number)params.get("maxDistance")).intValue();
+			VocabularyIndex index = vocabularyResolver.apply(vocabulary);
+			if(index == null) {
+				throw new IllegalArgumentException("Unknown vocabulary " + vocabulary);
+			}
+			matches.addAll(index.search(input, maxDistance));
+			for(String token : input.split(" ")) {
+				matches.addAll(index.search(token, maxDistance));
+			}
 		}
-		List<String> r = matches.stream().collect(Collectors.toList());
+		else {
+			double threshold = ((Number)params.get("threshold")).doubleValue();
+			Set<String> entries = vocabularies.get(vocabulary);
+			if(entries == null) {
+				throw new IllegalArgumentException("Unknown vocabulary " + vocabulary + ", use maxDistance for stored vocabularies");
+			}
+			for(String token : input.split(" ")) {
+				String key = token.toLowerCase();
+				entries.forEach(target -> {
+					if(VocabularyIndex.distance(key, target.toLowerCase()) > threshold) {
+						matches.add(target);
+					}
+				});
+			}
+		}
+		List<String> r = new ArrayList<String>(matches);
 		if(r.isEmpty()) {
 			r.add(_default);
 		}
 		return r.toArray(new String[0]);
 	}
-	
+
+	/**
+	 * Index of a vocabulary defined in this class. Entries ("Broader#Label") are matched by their label.
+	 */
+	public static VocabularyIndex getBuiltInVocabularyIndex(String vocabulary) {
+		Set<String> entries = vocabularies.get(vocabulary);
+		if(entries == null) {
+			return null;
+		}
+		return builtInIndexes.computeIfAbsent(vocabulary, id -> VocabularyIndex.of(entries.stream()
+				.collect(Collectors.groupingBy(entry -> entry.substring(entry.lastIndexOf("#") + 1), Collectors.toList()))));
+	}
+
+	/**
+	 * Set the lookup used for vocabularies by their id, for example to index vocabularies stored as schemas
+	 */
+	public static void setVocabularyResolver(Function<String, VocabularyIndex> resolver) {
+		vocabularyResolver = resolver;
+	}
+	
+	/**
+	 * Map a source concept (URI or label) to a target concept. The concepts are mapped with the stored crosswalk
+	 * given as the crosswalk parameter, with a stored crosswalk between the source and target vocabularies, or
+	 * with the vocabularies defined in this class.
+	 */
 	public static Object mapVocabularies(Object node, Map<String, Object> params) {
 		String targetVocabulary = (String)params.get("targetVocabulary");
 		String sourceVocabulary = (String)params.get("sourceVocabulary");
-		Map<String, VocabularyItem> crosswalk = getCrosswalk(sourceVocabulary, targetVocabulary);
-		if(crosswalk.containsKey(node.toString())) {
-			VocabularyItem i = crosswalk.get(node.toString());
+		String crosswalkPID = (String)params.get("crosswalk");
+		if(crosswalkPID == null && sourceVocabulary != null && targetVocabulary != null) {
+			crosswalkPID = vocabularyCrosswalkFinder.apply(sourceVocabulary, targetVocabulary);
+		}
+		Map<String, VocabularyItem> crosswalk = crosswalkPID != null ? vocabularyCrosswalkResolver.apply(crosswalkPID) : null;
+		if(crosswalk == null) {
+			crosswalk = getCrosswalk(sourceVocabulary, targetVocabulary);
+		}
+		VocabularyItem i = crosswalk.get(node.toString());
+		if(i != null) {
 			return Map.of(
 					"uri", i.uri,
 					"label", i.label
@@ -556,29 +613,41 @@ public class SimpleMappingFunctions {
 		return null;
 	}	
 	
-	record VocabularyItem(String uri, String label) {};
+	public record VocabularyItem(String uri, String label) {};
+
+	private static final Map<String, VocabularyItem> TYPES = Map.of(
+			"Collection", new VocabularyItem("http://purl.org/dc/dcmitype/Collection", "Collection"),
+			"Dataset", new VocabularyItem("http://purl.org/dc/dcmitype/Dataset", "Dataset"),
+			"Event", new VocabularyItem("http://purl.org/dc/dcmitype/Event", "Event"),
+			"Image", new VocabularyItem("http://purl.org/dc/dcmitype/Image", "Image")				
+			);
+	
+	private static final Map<String, VocabularyItem> LANGS = Map.of(
+			"en", new VocabularyItem("http://purl.org/lang/en", "English"),
+			"fi", new VocabularyItem("http://purl.org/lang/fi", "Finnish"),
+			"sv", new VocabularyItem("http://purl.org/lang/sv", "Swedish")
+			);
+
 	private static Map<String, VocabularyItem> getCrosswalk(String sourceVocabulary, String targetVocabulary) {
-		var types = Map.of(
-				"Collection", new VocabularyItem("http://purl.org/dc/dcmitype/Collection", "Collection"),
-				"Dataset", new VocabularyItem("http://purl.org/dc/dcmitype/Dataset", "Dataset"),
-				"Event", new VocabularyItem("http://purl.org/dc/dcmitype/Event", "Event"),
-				"Image", new VocabularyItem("http://purl.org/dc/dcmitype/Image", "Image")				
-				);
-		
-		var langs = Map.of(
-				"en", new VocabularyItem("http://purl.org/lang/en", "English"),
-				"fi", new VocabularyItem("http://purl.org/lang/fi", "Finnish"),
-				"sv", new VocabularyItem("http://purl.org/lang/sv", "Swedish")
-				);
-		
-		if(sourceVocabulary.equals("typesvoc")) {
-			return types;
+		if("typesvoc".equals(sourceVocabulary)) {
+			return TYPES;
 		}
 		else {
-			return langs;
+			return LANGS;
 		}
 	}
 
+	/**
+	 * Set the lookups used for stored vocabulary crosswalks
+	 *
+	 * @param resolver target concepts by source concept of a crosswalk, null if the crosswalk does not exist
+	 * @param finder PID of a crosswalk between the source and target vocabularies, null if there is none
+	 */
+	public static void setVocabularyCrosswalkResolver(Function<String, Map<String, VocabularyItem>> resolver, BiFunction<String, String, String> finder) {
+		vocabularyCrosswalkResolver = resolver;
+		vocabularyCrosswalkFinder = finder;
+	}
+
 	public static String formatDate(String input, Map<String, Object> params) {
 		var inputFormat = params.get("inputFormat");
 		var outputFormat = params.get("outputFormat");
@@ -0,0 +1,150 @@
+package fi.vm.yti.datamodel.api.v2.transformation.functions;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BK-tree of vocabulary labels for approximate lookups by Levenshtein distance. Labels are compared in lower case
+ * and each label maps to the vocabulary values (for example preferred labels of concepts) returned on a match.
+ * A search only visits the subtrees that can contain labels within the maximum distance, so lookups do not compare
+ * the query against every label. Indexes are immutable once built and can be shared between threads.
+ */
+public final class VocabularyIndex {
+
+	private static final class Node {
+		private final String label;
+		private final Set<String> values = new LinkedHashSet<>();
+		// children by their distance to this node
+		private Map<Integer, Node> children;
+
+		private Node(String label) {
+			this.label = label;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	private VocabularyIndex() {
+	}
+
+	/**
+	 * @param entries vocabulary values by label
+	 */
+	public static VocabularyIndex of(Map<String, ? extends Iterable<String>> entries) {
+		VocabularyIndex index = new VocabularyIndex();
+		entries.forEach((label, values) -> values.forEach(value -> index.add(label, value)));
+		return index;
+	}
+
+	/**
+	 * Index of values matched by themselves
+	 */
+	public static VocabularyIndex of(Iterable<String> values) {
+		VocabularyIndex index = new VocabularyIndex();
+		values.forEach(value -> index.add(value, value));
+		return index;
+	}
+
+	private void add(String label, String value) {
+		String key = label.toLowerCase();
+		if (root == null) {
+			root = new Node(key);
+			root.values.add(value);
+			size++;
+			return;
+		}
+		Node node = root;
+		while (true) {
+			int distance = distance(key, node.label);
+			if (distance == 0) {
+				node.values.add(value);
+				return;
+			}
+			if (node.children == null) {
+				node.children = new HashMap<>();
+			}
+			Node child = node.children.get(distance);
+			if (child == null) {
+				child = new Node(key);
+				child.values.add(value);
+				node.children.put(distance, child);
+				size++;
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * @return number of distinct labels
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Values of the labels within maxDistance edits of the query
+	 */
+	public Set<String> search(String query, int maxDistance) {
+		if (root == null || maxDistance < 0) {
+			return Collections.emptySet();
+		}
+		String key = query.toLowerCase();
+		Set<String> matches = new LinkedHashSet<>();
+		Deque<Node> nodes = new ArrayDeque<>();
+		nodes.push(root);
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			int distance = distance(key, node.label);
+			if (distance <= maxDistance) {
+				matches.addAll(node.values);
+			}
+			if (node.children != null) {
+				// triangle inequality: matches below a child at distance d are at least |distance - d| away
+				for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+					if (Math.abs(child.getKey() - distance) <= maxDistance) {
+						nodes.push(child.getValue());
+					}
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Levenshtein distance computed with two rows
+	 */
+	static int distance(String a, String b) {
+		if (a.equals(b)) {
+			return 0;
+		}
+		if (a.length() < b.length()) {
+			String tmp = a;
+			a = b;
+			b = tmp;
+		}
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			char ca = a.charAt(i - 1);
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = ca == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+			}
+			int[] tmp = previous;
+			previous = current;
+			current = tmp;
+		}
+		return previous[b.length()];
+	}
+}
@@ -0,0 +1,26 @@
+-- Schema and crosswalk files processed in the background. The uploaded content is kept in input until the job
+-- has finished, so that queued and interrupted jobs can be run again after a restart.
+CREATE TABLE IF NOT EXISTS ingestion_jobs (
+	id uuid PRIMARY KEY,
+	type VARCHAR(15) NOT NULL,
+	operation VARCHAR(15) NOT NULL,
+	pid text NOT NULL,
+	format VARCHAR(15) NOT NULL,
+	content_url text,
+	content_type text,
+	input bytea,
+	owner uuid,
+	status VARCHAR(15) NOT NULL,
+	progress integer NOT NULL DEFAULT 0,
+	step text,
+	message text,
+	attempts integer NOT NULL DEFAULT 0,
+	created timestamp with time zone NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	started timestamp with time zone,
+	heartbeat timestamp with time zone,
+	finished timestamp with time zone
+);
+
+ALTER TABLE ingestion_jobs ALTER COLUMN input SET STORAGE EXTERNAL;
+
+CREATE INDEX IF NOT EXISTS ingestion_jobs_status_idx ON ingestion_jobs (status, created);
@@ -0,0 +1,5 @@
+-- Entries are claimed by the worker that sends them, so that instances sharing the database do not send the same
+-- entries. Only the oldest entry of a document can be claimed, together with the later entries of the document.
+ALTER TABLE index_outbox ADD COLUMN IF NOT EXISTS claimed_until timestamp with time zone;
+
+CREATE INDEX IF NOT EXISTS index_outbox_doc_idx ON index_outbox (index_name, doc_id, id);
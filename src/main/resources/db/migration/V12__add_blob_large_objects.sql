@@ -0,0 +1,5 @@
+-- Content stored in the database is kept in large objects, which are read in chunks and from an offset
+-- instead of as a whole. Large objects are unlinked when their blob row is removed.
+ALTER TABLE mscr_blobs ADD COLUMN data_oid oid;
+UPDATE mscr_blobs SET data_oid = lo_from_bytea(0, data) WHERE data IS NOT NULL;
+ALTER TABLE mscr_blobs DROP COLUMN data;
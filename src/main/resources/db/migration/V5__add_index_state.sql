@@ -0,0 +1,4 @@
+CREATE TABLE IF NOT EXISTS index_state (
+	index_name text PRIMARY KEY,
+	high_water_mark timestamp with time zone NOT NULL
+);
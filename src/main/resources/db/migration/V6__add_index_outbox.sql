@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS index_outbox (
+	id bigserial PRIMARY KEY,
+	index_name text NOT NULL,
+	doc_id text NOT NULL,
+	operation VARCHAR(10) NOT NULL,
+	document text,
+	created timestamp with time zone NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	attempts integer NOT NULL DEFAULT 0,
+	next_attempt timestamp with time zone NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS index_outbox_next_attempt_idx ON index_outbox (next_attempt, id);
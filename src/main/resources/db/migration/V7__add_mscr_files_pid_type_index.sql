@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS mscr_files_pid_type_idx ON mscr_files (pid, type);
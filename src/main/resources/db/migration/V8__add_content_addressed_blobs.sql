@@ -0,0 +1,22 @@
+-- File content is stored once per SHA-256 digest of the uncompressed content.
+-- encoding tells how data is stored (identity or gzip), size is the uncompressed size.
+CREATE TABLE IF NOT EXISTS mscr_blobs (
+	sha256 text PRIMARY KEY,
+	encoding VARCHAR(15) NOT NULL,
+	size bigint NOT NULL,
+	data bytea NOT NULL
+);
+
+ALTER TABLE mscr_blobs ALTER COLUMN data SET STORAGE EXTERNAL;
+
+INSERT INTO mscr_blobs (sha256, encoding, size, data)
+SELECT DISTINCT ON (digest) digest, 'identity', length(data), data
+FROM (SELECT encode(sha256(data), 'hex') AS digest, data FROM mscr_files) existing
+ON CONFLICT (sha256) DO NOTHING;
+
+ALTER TABLE mscr_files ADD COLUMN sha256 text REFERENCES mscr_blobs (sha256);
+UPDATE mscr_files SET sha256 = encode(sha256(data), 'hex');
+ALTER TABLE mscr_files ALTER COLUMN sha256 SET NOT NULL;
+ALTER TABLE mscr_files DROP COLUMN data;
+
+CREATE INDEX IF NOT EXISTS mscr_files_sha256_idx ON mscr_files (sha256);
@@ -0,0 +1,3 @@
+-- Blob content is either stored in the data column or on the file system (see fileStorage property)
+ALTER TABLE mscr_blobs ADD COLUMN storage VARCHAR(15) NOT NULL DEFAULT 'database';
+ALTER TABLE mscr_blobs ALTER COLUMN data DROP NOT NULL;
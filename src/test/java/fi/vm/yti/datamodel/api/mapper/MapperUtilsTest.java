@@ -0,0 +1,42 @@
+package fi.vm.yti.datamodel.api.mapper;
+
+import fi.vm.yti.datamodel.api.v2.dto.MSCR;
+import fi.vm.yti.datamodel.api.v2.mapper.MapperUtils;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapperUtilsTest {
+
+    @Test
+    void mapToRevisionsByAggregationKey() {
+        var m = ModelFactory.createDefaultModel();
+        addRevision(m, "urn:schema:2", "urn:key:1", "2023-02-01T00:00:00Z");
+        addRevision(m, "urn:schema:1", "urn:key:1", "2023-01-01T00:00:00Z");
+        addRevision(m, "urn:schema:3", "urn:key:2", "2023-03-01T00:00:00Z");
+
+        var revisions = MapperUtils.mapToRevisionsByAggregationKey(m);
+
+        assertEquals(2, revisions.size());
+        var key1 = revisions.get("urn:key:1");
+        assertEquals(2, key1.size());
+        assertEquals("urn:schema:1", key1.get(0).getPid());
+        assertEquals("urn:schema:2", key1.get(1).getPid());
+        assertEquals(1, revisions.get("urn:key:2").size());
+    }
+
+    private static void addRevision(Model m, String pid, String aggregationKey, String created) {
+        m.createResource(pid)
+                .addProperty(RDFS.label, m.createLiteral("label", "en"))
+                .addProperty(DCTerms.created, ResourceFactory.createTypedLiteral(created, XSDDatatype.XSDdateTime))
+                .addProperty(MSCR.versionLabel, "1")
+                .addProperty(MSCR.state, "PUBLISHED")
+                .addProperty(MSCR.aggregationKey, ResourceFactory.createResource(aggregationKey));
+    }
+}
@@ -0,0 +1,123 @@
+package fi.vm.yti.datamodel.api.v2.endpoint;
+
+import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
+import fi.vm.yti.datamodel.api.v2.service.StorageService;
+import fi.vm.yti.datamodel.api.v2.service.StorageService.StoredFileMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class BaseMSCRControllerTest {
+
+    private static final String SHA256 = "a".repeat(64);
+
+    private final BaseMSCRController controller = new BaseMSCRController() {};
+
+    private final StorageService storageService = mock(StorageService.class);
+
+    private final List<StoredFileMetadata> files = List.of(
+            new StoredFileMetadata("text/csv", 10, 7L, MSCRType.SCHEMA, "test.csv", new Timestamp(0), SHA256));
+
+    private ResponseEntity<StreamingResponseBody> download(String range, String ifRange) {
+        var headers = new HttpHeaders();
+        if (range != null) {
+            headers.set(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            headers.set(HttpHeaders.IF_RANGE, ifRange);
+        }
+        return controller.handleFileDownload(storageService, files, "mscr:schema:test", "CSV", headers);
+    }
+
+    private void writeBody(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        response.getBody().writeTo(new ByteArrayOutputStream());
+    }
+
+    @Test
+    void shouldReturnWholeFile() throws Exception {
+        var response = download(null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(10, response.getHeaders().getContentLength());
+        assertEquals("\"" + SHA256 + "\"", response.getHeaders().getETag());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        writeBody(response);
+        verify(storageService).writeFileContent(eq(7L), any(OutputStream.class));
+    }
+
+    @Test
+    void shouldReturnRange() throws Exception {
+        var response = download("bytes=2-5", null);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 2-5/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getHeaders().getContentLength());
+        writeBody(response);
+        verify(storageService).writeFileContent(eq(7L), eq(2L), eq(4L), any(OutputStream.class));
+    }
+
+    @Test
+    void shouldLimitRangeToFileSize() throws Exception {
+        var response = download("bytes=6-", null);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 6-9/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        writeBody(response);
+        verify(storageService).writeFileContent(eq(7L), eq(6L), eq(4L), any(OutputStream.class));
+    }
+
+    @Test
+    void shouldReturnRangeWhenIfRangeMatches() {
+        var response = download("bytes=2-5", "\"" + SHA256 + "\"");
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 2-5/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldReturnWholeFileWhenIfRangeDoesNotMatch() {
+        var response = download("bytes=2-5", "\"" + "b".repeat(64) + "\"");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(10, response.getHeaders().getContentLength());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldReturnWholeFileForMultipleRanges() {
+        var response = download("bytes=0-1,4-5", null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldRejectUnsatisfiableRange() {
+        var response = download("bytes=20-30", null);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void shouldRejectInvalidRange() {
+        var response = download("bytes=5-2", null);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+}
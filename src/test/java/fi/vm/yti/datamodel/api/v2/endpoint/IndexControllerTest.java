@@ -59,4 +59,15 @@ class IndexControllerTest {
 
         verify(openSearchIndexer).reindex(eq("models_v2"));
     }
+
+    @Test
+    void shouldCallDeltaReindex() throws Exception {
+        mvc.perform(post("/v2/index/reindex")
+                    .param("index", "schemas_v2")
+                    .param("delta", "true"))
+            .andExpect(status().isOk());
+
+        verify(openSearchIndexer).reindexDelta(eq("schemas_v2"));
+        verify(openSearchIndexer, never()).reindex(any());
+    }
 }
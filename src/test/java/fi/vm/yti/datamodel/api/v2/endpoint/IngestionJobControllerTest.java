@@ -0,0 +1,79 @@
+package fi.vm.yti.datamodel.api.v2.endpoint;
+
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobDTO;
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobStatus;
+import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService;
+import fi.vm.yti.datamodel.api.v2.validator.ExceptionHandlerAdvice;
+import fi.vm.yti.security.AuthenticatedUserProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = {
+        "spring.cloud.config.import-check.enabled=false"
+})
+@WebMvcTest(controllers = IngestionJobController.class)
+@ActiveProfiles("junit")
+class IngestionJobControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private IngestionJobService ingestionJobService;
+
+    @MockBean
+    private AuthenticatedUserProvider userProvider;
+
+    @Autowired
+    private IngestionJobController ingestionJobController;
+
+    @BeforeEach
+    public void setup() {
+        this.mvc = MockMvcBuilders
+                .standaloneSetup(this.ingestionJobController)
+                .setControllerAdvice(new ExceptionHandlerAdvice())
+                .build();
+
+        when(userProvider.getUser()).thenReturn(EndpointUtils.mockUser);
+    }
+
+    @Test
+    void shouldGetJob() throws Exception {
+        var job = new IngestionJobDTO();
+        job.setId(UUID.randomUUID());
+        job.setType(MSCRType.SCHEMA);
+        job.setPid("mscr:schema:test");
+        job.setStatus(IngestionJobStatus.RUNNING);
+        job.setProgress(70);
+        job.setOwner(EndpointUtils.mockUser.getId());
+        when(ingestionJobService.getJob(job.getId())).thenReturn(job);
+
+        mvc.perform(get("/v2/jobs/" + job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.pid").value("mscr:schema:test"))
+            .andExpect(jsonPath("$.status").value("RUNNING"))
+            .andExpect(jsonPath("$.progress").value(70))
+            .andExpect(jsonPath("$.owner").doesNotExist());
+    }
+
+    @Test
+    void shouldReturnNotFoundForMissingJob() throws Exception {
+        mvc.perform(get("/v2/jobs/" + UUID.randomUUID()))
+            .andExpect(status().isNotFound());
+    }
+}
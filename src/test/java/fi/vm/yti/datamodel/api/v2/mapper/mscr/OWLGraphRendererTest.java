@@ -0,0 +1,51 @@
+package fi.vm.yti.datamodel.api.v2.mapper.mscr;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+class OWLGraphRendererTest {
+
+	private OWLOntology loadOntology(OWLOntologyManager manager, String path) throws Exception {
+		try (InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
+			return manager.loadOntologyFromOntologyDocument(is);
+		}
+	}
+
+	@Test
+	void testMapToModelMatchesTurtle() throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLOntology ont = loadOntology(manager, "shacl/openalex-ontology.ttl");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manager.saveOntology(ont, new TurtleDocumentFormat(), out);
+		Model expected = ModelFactory.createDefaultModel();
+		expected.read(new ByteArrayInputStream(out.toByteArray()), null, "TTL");
+
+		Model model = OWLGraphRenderer.mapToModel(ont);
+		assertTrue(model.isIsomorphicWith(expected));
+		assertEquals(expected.getNsPrefixMap(), model.getNsPrefixMap());
+	}
+
+	@Test
+	void testMapToModelClasses() throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLOntology ont = loadOntology(manager, "shacl/openalex-ontology.ttl");
+
+		Model model = OWLGraphRenderer.mapToModel(ont);
+		assertEquals(ont.classesInSignature().count(), model.listSubjectsWithProperty(RDF.type, OWL.Class).toList().size());
+		assertTrue(model.contains(model.createResource("https://semopenalex.org/ontology/Work"), RDF.type, OWL.Class));
+	}
+}
@@ -10,12 +10,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -40,6 +46,7 @@ import javax.xml.xquery.XQResultSequence;
 import com.saxonica.xqj.SaxonXQDataSource;
 */
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.shacl.parser.ShapesParser.ParserResult;
 import org.apache.jena.sparql.function.library.e;
 import org.junit.jupiter.api.Test;
@@ -111,6 +118,9 @@ public class XSDMapperTest {
 	
 	@Autowired
 	private XSDMapper mapper;
+
+	@Autowired
+	private JSONSchemaMapper jsonSchemaMapper;
 	
 	ObjectMapper m = new ObjectMapper();
 	
@@ -235,6 +245,45 @@ public class XSDMapperTest {
 		assertEquals("http://datacite.org/schema/kernel-4", r2.get("namespace").asText());
 	}
 	
+	@Test
+	void testMapBytesToInternalJson() throws Exception {
+		String filePath = "src/test/resources/xmlschema/math/plain.xsd";
+		ObjectNode fromBytes = mapper.mapToInternalJson(Files.readAllBytes(Path.of(filePath)));
+		assertEquals(mapper.mapToInternalJson(filePath), fromBytes);
+	}
+
+	@Test
+	void testConcurrentMapToInternalJson() throws Exception {
+		String filePath = "src/test/resources/xmlschema/datacite/4.4/metadata.xsd";
+		ObjectNode expected = mapper.mapToInternalJson(filePath);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<ObjectNode>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> mapper.mapToInternalJson(filePath)));
+			}
+			for (Future<ObjectNode> result : results) {
+				assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testMapToInternalModel() throws Exception {
+		String pid = "urn:test:" + UUID.randomUUID();
+		for (String filePath : List.of(
+				"src/test/resources/xmlschema/datacite/4.4/metadata.xsd",
+				"src/test/resources/xmlschema/math/plain.xsd",
+				"src/test/resources/xmlschema/circular-references1.xsd")) {
+			Model expected = ModelFactory.createDefaultModel();
+			jsonSchemaMapper.handleObject("root", mapper.mapToInternalJson(filePath), pid, expected, new HashMap<>());
+			Model model = mapper.mapToInternalModel(pid, filePath);
+			assertTrue(expected.isIsomorphicWith(model), filePath);
+		}
+	}
+
 	@Test
 	void testCircularReferences1() throws Exception {
 
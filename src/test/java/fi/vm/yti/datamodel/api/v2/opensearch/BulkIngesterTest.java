@@ -0,0 +1,77 @@
+package fi.vm.yti.datamodel.api.v2.opensearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.BulkResponse;
+
+import fi.vm.yti.datamodel.api.v2.opensearch.index.BulkIngester;
+import fi.vm.yti.datamodel.api.v2.opensearch.index.IndexResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BulkIngesterTest {
+
+    private final OpenSearchClient client = mock(OpenSearchClient.class);
+    private final BulkIngester bulkIngester = new BulkIngester(client, new SimpleMeterRegistry(), 2, 2, 1024 * 1024, 2, 1);
+
+    @AfterEach
+    void tearDown() {
+        bulkIngester.shutdown();
+    }
+
+    @Test
+    void shouldFlushByDocumentCount() throws Exception {
+        when(client.bulk(any(BulkRequest.class))).thenReturn(okResponse());
+
+        var failed = bulkIngester.ingest("resources_v2", documents(5));
+
+        assertEquals(0, failed);
+        verify(client, times(3)).bulk(any(BulkRequest.class));
+    }
+
+    @Test
+    void shouldRetryOnTransportError() throws Exception {
+        when(client.bulk(any(BulkRequest.class)))
+                .thenThrow(new IOException("connection reset"))
+                .thenReturn(okResponse());
+
+        var failed = bulkIngester.ingest("resources_v2", documents(1));
+
+        assertEquals(0, failed);
+        verify(client, times(2)).bulk(any(BulkRequest.class));
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxRetries() throws Exception {
+        when(client.bulk(any(BulkRequest.class))).thenThrow(new IOException("connection refused"));
+
+        var failed = bulkIngester.ingest("resources_v2", documents(2));
+
+        assertEquals(2, failed);
+        verify(client, times(3)).bulk(any(BulkRequest.class));
+    }
+
+    private static BulkResponse okResponse() {
+        return BulkResponse.of(b -> b.errors(false).took(1).items(List.of()));
+    }
+
+    private static List<IndexResource> documents(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            var doc = new IndexResource();
+            doc.setId("http://uri.suomi.fi/datamodel/ns/test/resource-" + i);
+            return doc;
+        }).toList();
+    }
+}
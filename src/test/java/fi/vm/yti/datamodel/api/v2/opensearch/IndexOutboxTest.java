@@ -0,0 +1,182 @@
+package fi.vm.yti.datamodel.api.v2.opensearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.opensearch.client.opensearch.core.bulk.OperationType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.v2.opensearch.index.IndexOutbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IndexOutboxTest {
+
+    private static final String INDEX = "resources_v2";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final OpenSearchClient client = mock(OpenSearchClient.class);
+    private final IndexOutbox indexOutbox = new IndexOutbox(jdbcTemplate, client, new SimpleMeterRegistry(), 500, 3);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private record Row(long id, String docId, IndexOutbox.Operation operation, String document, int attempts) {
+    }
+
+    /**
+     * Return the rows from the first claim and nothing after that
+     */
+    @SuppressWarnings("unchecked")
+    private void claim(Row... rows) throws Exception {
+        when(jdbcTemplate.query(startsWith("with heads"), any(RowMapper.class), any(), any())).thenAnswer(invocation -> {
+            var rowMapper = (RowMapper<Object>) invocation.getArgument(1);
+            var entries = new ArrayList<>();
+            for (var row : rows) {
+                var rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(row.id());
+                when(rs.getString(2)).thenReturn(INDEX);
+                when(rs.getString(3)).thenReturn(row.docId());
+                when(rs.getString(4)).thenReturn(row.operation().name());
+                when(rs.getString(5)).thenReturn(row.document());
+                when(rs.getInt(6)).thenReturn(row.attempts());
+                entries.add(rowMapper.mapRow(rs, entries.size()));
+            }
+            return entries;
+        }).thenReturn(new ArrayList<>());
+    }
+
+    private BulkRequest sentRequest() throws Exception {
+        var request = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client).bulk(request.capture());
+        return request.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> batchArgs(String sql) {
+        ArgumentCaptor<List<Object[]>> args = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(sql), args.capture());
+        return args.getValue();
+    }
+
+    private List<Object> removedIds() {
+        return batchArgs("delete from index_outbox").stream().map(args -> args[0]).toList();
+    }
+
+    private static BulkResponse response(int... statuses) {
+        var items = new ArrayList<BulkResponseItem>();
+        for (var status : statuses) {
+            items.add(BulkResponseItem.of(i -> {
+                i.operationType(OperationType.Index).index(INDEX).status(status);
+                if (status >= 300) {
+                    i.error(e -> e.type("error").reason("status " + status));
+                }
+                return i;
+            }));
+        }
+        return BulkResponse.of(b -> b.errors(items.stream().anyMatch(item -> item.error() != null)).took(1).items(items));
+    }
+
+    @Test
+    void shouldSendIndexAfterDelete() throws Exception {
+        claim(new Row(1, "a", IndexOutbox.Operation.DELETE, null, 0),
+                new Row(2, "a", IndexOutbox.Operation.INDEX, "{\"label\":\"a\"}", 0));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(response(201));
+
+        indexOutbox.drain();
+
+        var operations = sentRequest().operations();
+        assertEquals(1, operations.size());
+        assertTrue(operations.get(0).isIndex());
+        assertEquals("a", operations.get(0).index().id());
+        assertEquals(mapper.readTree("{\"label\":\"a\"}"), operations.get(0).index().document());
+        assertEquals(List.of(1L, 2L), removedIds());
+    }
+
+    @Test
+    void shouldMergeUpdates() throws Exception {
+        claim(new Row(1, "a", IndexOutbox.Operation.INDEX, "{\"label\":{\"fi\":\"a\"},\"status\":\"DRAFT\"}", 0),
+                new Row(2, "b", IndexOutbox.Operation.UPDATE, "{\"status\":\"VALID\"}", 0),
+                new Row(3, "a", IndexOutbox.Operation.UPDATE, "{\"label\":{\"en\":\"b\"}}", 0),
+                new Row(4, "b", IndexOutbox.Operation.UPDATE, "{\"label\":{\"en\":\"c\"}}", 0),
+                new Row(5, "a", IndexOutbox.Operation.UPDATE, "{\"status\":\"VALID\"}", 0));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(response(200, 200));
+
+        indexOutbox.drain();
+
+        List<BulkOperation> operations = sentRequest().operations();
+        assertEquals(2, operations.size());
+        // the index operation includes the later updates of the same document
+        assertTrue(operations.get(0).isIndex());
+        assertEquals(mapper.readTree("{\"label\":{\"fi\":\"a\",\"en\":\"b\"},\"status\":\"VALID\"}"), operations.get(0).index().document());
+        assertTrue(operations.get(1).isUpdate());
+        assertEquals("b", operations.get(1).update().id());
+        assertEquals(mapper.readTree("{\"status\":\"VALID\",\"label\":{\"en\":\"c\"}}"), operations.get(1).update().document());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), removedIds());
+    }
+
+    @Test
+    void shouldRetryThrottledAndFailedOperations() throws Exception {
+        claim(new Row(1, "a", IndexOutbox.Operation.INDEX, "{\"label\":\"a\"}", 0),
+                new Row(2, "b", IndexOutbox.Operation.INDEX, "{\"label\":\"b\"}", 1),
+                new Row(3, "c", IndexOutbox.Operation.INDEX, "{\"label\":\"c\"}", 0),
+                new Row(4, "d", IndexOutbox.Operation.DELETE, null, 0));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(response(429, 503, 400, 404));
+        var start = Instant.now();
+
+        indexOutbox.drain();
+
+        // rejected documents and deletes of missing documents are not retried
+        assertEquals(List.of(3L, 4L), removedIds());
+        var retried = batchArgs("update index_outbox");
+        assertEquals(List.of(1L, 2L), retried.stream().map(args -> args[1]).toList());
+        // backoff doubles with each attempt
+        var first = ((Timestamp) retried.get(0)[0]).toInstant();
+        var second = ((Timestamp) retried.get(1)[0]).toInstant();
+        assertTrue(!first.isBefore(start.plusSeconds(1)) && first.isBefore(start.plusSeconds(2)));
+        assertTrue(!second.isBefore(start.plusSeconds(2)) && second.isBefore(start.plusSeconds(3)));
+    }
+
+    @Test
+    void shouldRetryBatchOnTransportError() throws Exception {
+        claim(new Row(1, "a", IndexOutbox.Operation.INDEX, "{\"label\":\"a\"}", 0),
+                new Row(2, "a", IndexOutbox.Operation.UPDATE, "{\"label\":\"b\"}", 0));
+        when(client.bulk(any(BulkRequest.class))).thenThrow(new IOException("connection refused"));
+
+        indexOutbox.drain();
+
+        assertEquals(List.of(), removedIds());
+        assertEquals(List.of(1L, 2L), batchArgs("update index_outbox").stream().map(args -> args[1]).toList());
+    }
+
+    @Test
+    void shouldDropOperationAfterMaxAttempts() throws Exception {
+        claim(new Row(1, "a", IndexOutbox.Operation.INDEX, "{\"label\":\"a\"}", 2),
+                new Row(2, "b", IndexOutbox.Operation.INDEX, "{\"label\":\"b\"}", 1));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(response(503, 503));
+
+        indexOutbox.drain();
+
+        assertEquals(List.of(1L), removedIds());
+        assertEquals(List.of(2L), batchArgs("update index_outbox").stream().map(args -> args[1]).toList());
+    }
+}
@@ -1,16 +1,27 @@
 package fi.vm.yti.datamodel.api.v2.opensearch;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.jena.query.Query;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.vocabulary.DCTerms;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.mapping.TypeMapping;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
@@ -24,6 +35,10 @@ import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.v2.mapper.CrosswalkMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.ModelMapper;
 import fi.vm.yti.datamodel.api.v2.mapper.SchemaMapper;
+import fi.vm.yti.datamodel.api.v2.opensearch.index.BulkIngester;
+import fi.vm.yti.datamodel.api.v2.opensearch.index.IndexModel;
+import fi.vm.yti.datamodel.api.v2.opensearch.index.IndexOutbox;
+import fi.vm.yti.datamodel.api.v2.opensearch.index.IndexStateStore;
 import fi.vm.yti.datamodel.api.v2.opensearch.index.OpenSearchIndexer;
 import fi.vm.yti.datamodel.api.v2.repository.CoreRepository;
 import fi.vm.yti.datamodel.api.v2.repository.ImportsRepository;
@@ -63,6 +78,15 @@ class OpenSearchIndexerTest {
     @MockBean
     OpenSearchClient client;
 
+    @MockBean
+    IndexStateStore indexStateStore;
+
+    @MockBean
+    BulkIngester bulkIngester;
+
+    @MockBean
+    IndexOutbox indexOutbox;
+
     @Autowired
     OpenSearchIndexer openSearchIndexer;
 
@@ -92,4 +116,86 @@ class OpenSearchIndexerTest {
 
         verify(coreRepository).queryConstruct(any(Query.class));
     }
+
+    @Test
+    void reindexSwapsAliasTest() throws Exception {
+        var model = mock(Model.class);
+        var subjects = mock(ResIterator.class);
+        when(authorizationManager.hasRightToDropDatabase()).thenReturn(true);
+        when(coreRepository.queryConstruct(any(Query.class))).thenReturn(model);
+        when(model.listSubjects()).thenReturn(subjects);
+        when(openSearchConnector.createVersionedIndex(anyString(), any(TypeMapping.class))).thenReturn("models_v2_1");
+
+        openSearchIndexer.reindex(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL);
+
+        verify(openSearchConnector).createVersionedIndex(eq(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL), any(TypeMapping.class));
+        verify(openSearchConnector).activateIndex(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL, "models_v2_1");
+    }
+
+    @Test
+    void deltaReindexRemovesDeletedTest() throws Exception {
+        var model = mock(Model.class);
+        var subjects = mock(ResIterator.class);
+        when(authorizationManager.hasRightToDropDatabase()).thenReturn(true);
+        when(indexStateStore.getHighWaterMark(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL)).thenReturn(Instant.now());
+        when(coreRepository.queryConstruct(any(Query.class))).thenReturn(model);
+        when(model.listSubjects()).thenReturn(subjects);
+        when(openSearchConnector.getIndexedIds(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL))
+                .thenReturn(new HashSet<>(Set.of("deleted")));
+
+        openSearchIndexer.reindexDelta(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL);
+
+        verify(coreRepository).queryConstruct(any(Query.class));
+        verify(openSearchConnector).removeAllFromIndex(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL, Set.of("deleted"));
+        verify(indexStateStore).setHighWaterMark(eq(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL), any(Instant.class));
+    }
+
+    @Test
+    void indexWritesGoThroughOutboxTest() {
+        var indexModel = new IndexModel();
+        indexModel.setId("http://uri.suomi.fi/datamodel/ns/test");
+
+        openSearchIndexer.createModelToIndex(indexModel);
+        openSearchIndexer.deleteModelFromIndex("http://uri.suomi.fi/datamodel/ns/test");
+
+        verify(indexOutbox).enqueue(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL, "http://uri.suomi.fi/datamodel/ns/test", IndexOutbox.Operation.INDEX, indexModel);
+        verify(indexOutbox).enqueue(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL, "http://uri.suomi.fi/datamodel/ns/test", IndexOutbox.Operation.DELETE, null);
+        verify(openSearchConnector, never()).putToIndex(anyString(), anyString(), any());
+    }
+
+    private void mockFailingModelDocument() {
+        var model = ModelFactory.createDefaultModel();
+        model.createResource("http://uri.suomi.fi/datamodel/ns/test").addProperty(DCTerms.title, "test");
+        var indexModel = new IndexModel();
+        indexModel.setId("http://uri.suomi.fi/datamodel/ns/test");
+        when(authorizationManager.hasRightToDropDatabase()).thenReturn(true);
+        when(coreRepository.queryConstruct(any(Query.class))).thenReturn(model);
+        when(modelMapper.mapToIndexModel(anyString(), any(Model.class))).thenReturn(indexModel);
+        when(bulkIngester.ingest(anyString(), anyList())).thenReturn(1);
+    }
+
+    @Test
+    void deltaReindexKeepsHighWaterMarkOnFailureTest() throws Exception {
+        mockFailingModelDocument();
+        when(indexStateStore.getHighWaterMark(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL)).thenReturn(Instant.now());
+        when(openSearchConnector.getIndexedIds(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL)).thenReturn(new HashSet<>());
+
+        openSearchIndexer.reindexDelta(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL);
+
+        verify(bulkIngester).ingest(eq(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL), anyList());
+        verify(indexStateStore, never()).setHighWaterMark(anyString(), any(Instant.class));
+    }
+
+    @Test
+    void reindexKeepsAliasOnFailureTest() throws Exception {
+        mockFailingModelDocument();
+        when(openSearchConnector.createVersionedIndex(anyString(), any(TypeMapping.class))).thenReturn("models_v2_1");
+
+        openSearchIndexer.reindex(OpenSearchIndexer.OPEN_SEARCH_INDEX_MODEL);
+
+        verify(bulkIngester).ingest(eq("models_v2_1"), anyList());
+        verify(openSearchConnector).discardIndex("models_v2_1");
+        verify(openSearchConnector, never()).activateIndex(anyString(), anyString());
+        verify(indexStateStore, never()).setHighWaterMark(anyString(), any(Instant.class));
+    }
 }
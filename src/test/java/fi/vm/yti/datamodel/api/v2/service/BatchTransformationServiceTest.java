@@ -0,0 +1,45 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BatchTransformationServiceTest {
+
+	@Test
+	void testResultsAreWrittenInInputOrder() throws Exception {
+		DataTransformationService dataTransformationService = mock(DataTransformationService.class);
+		when(dataTransformationService.transform(anyString(), anyString(), any(TransformationPlan.class), anyString(), any(), any()))
+				.thenAnswer(invocation -> {
+					String document = invocation.getArgument(0);
+					if (document.equals("bad")) {
+						throw new IllegalArgumentException("invalid document");
+					}
+					// later documents finish first
+					Thread.sleep(50 - Integer.parseInt(document) * 10L);
+					return "out" + document;
+				});
+		BatchTransformationService service = new BatchTransformationService(dataTransformationService, 4, 2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			int failed = service.transform(List.of("1", "2", "bad", "3", "4").iterator(), "json",
+					mock(TransformationPlan.class), "json", null, null, out);
+			assertEquals(1, failed);
+		} finally {
+			service.shutdown();
+		}
+		assertEquals("{\"index\":0,\"output\":\"out1\"}\n"
+				+ "{\"index\":1,\"output\":\"out2\"}\n"
+				+ "{\"index\":2,\"error\":\"invalid document\"}\n"
+				+ "{\"index\":3,\"output\":\"out3\"}\n"
+				+ "{\"index\":4,\"output\":\"out4\"}\n", out.toString(StandardCharsets.UTF_8));
+	}
+}
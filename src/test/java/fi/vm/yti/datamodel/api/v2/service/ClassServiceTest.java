@@ -109,7 +109,7 @@ class ClassServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).createResourceToIndex(any(IndexResource.class));
     }
 
@@ -131,7 +131,7 @@ class ClassServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).createResourceToIndex(any(IndexResource.class));
     }
     @Test
@@ -151,7 +151,7 @@ class ClassServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).updateResourceToIndex(any(IndexResource.class));
     }
 
@@ -172,7 +172,7 @@ class ClassServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).updateResourceToIndex(any(IndexResource.class));
     }
 
@@ -185,7 +185,7 @@ class ClassServiceTest {
 
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
-        verify(coreRepository).deleteResource(anyString());
+        verify(coreRepository).deleteResource(anyString(), anyString(), eq(true));
         verify(openSearchIndexer).deleteResourceFromIndex(anyString());
     }
 
@@ -220,7 +220,7 @@ class ClassServiceTest {
 
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
     }
 
     @Test
@@ -234,7 +234,7 @@ class ClassServiceTest {
 
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
     }
 
     @Test
@@ -250,7 +250,7 @@ class ClassServiceTest {
         verify(coreRepository).resourceExistsInGraph(anyString(), anyString());
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
     }
 
     private static ClassDTO createClassDTO(boolean update){
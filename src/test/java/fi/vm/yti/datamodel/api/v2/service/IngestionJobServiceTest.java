@@ -0,0 +1,50 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import fi.vm.yti.datamodel.api.v2.dto.IngestionJobStatus;
+import fi.vm.yti.datamodel.api.v2.dto.MSCRType;
+import fi.vm.yti.datamodel.api.v2.service.IngestionJobService.Job;
+
+class IngestionJobServiceTest {
+
+	private final Job job = new Job(UUID.randomUUID(), MSCRType.SCHEMA, IngestionJobService.Operation.CREATE,
+			"mscr:schema:test", "CSV", null, "text/csv", 2);
+
+	@Test
+	void testProgressOfReplacedRunStopsTheRun() {
+		JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+		IngestionJobService service = new IngestionJobService(jdbcTemplate, 1, 120, 3, 7);
+
+		when(jdbcTemplate.update(startsWith("update ingestion_jobs set progress"), (Object[]) any())).thenReturn(1);
+		service.updateProgress(job, 50, "Storing content");
+		verify(jdbcTemplate).update(anyString(), eq(50), eq("Storing content"), eq(job.id()), eq(2));
+
+		// the job has been claimed again by another run
+		when(jdbcTemplate.update(startsWith("update ingestion_jobs set progress"), (Object[]) any())).thenReturn(0);
+		assertThrows(IllegalStateException.class, () -> service.updateProgress(job, 70, "Storing file"));
+	}
+
+	@Test
+	void testResultIsStoredForTheClaimedAttempt() {
+		JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+		IngestionJobService service = new IngestionJobService(jdbcTemplate, 1, 120, 3, 7);
+
+		service.finish(job, IngestionJobStatus.SUCCEEDED, null);
+
+		verify(jdbcTemplate).update(startsWith("update ingestion_jobs set status"),
+				eq(IngestionJobStatus.SUCCEEDED.name()), eq(100), eq(null), eq(job.id()), eq(2));
+	}
+}
@@ -0,0 +1,112 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+import org.topbraid.shacl.vocabulary.SH;
+
+import fi.vm.yti.datamodel.api.v2.dto.MSCR;
+
+class JenaServiceTest {
+
+	private Model copyContent(String sourcePID, String targetPID, Model content) {
+		Dataset dataset = DatasetFactory.createTxnMem();
+		dataset.addNamedModel(sourcePID + ":content", content);
+		UpdateAction.execute(JenaService.contentCopyRequest(sourcePID, targetPID), dataset);
+		// the source is not changed
+		assertTrue(dataset.getNamedModel(sourcePID + ":content").isIsomorphicWith(content));
+		return dataset.getNamedModel(targetPID + ":content");
+	}
+
+	@Test
+	void testCopySchemaContent() {
+		String sourcePID = "mscr:schema:source";
+		String targetPID = "mscr:schema:target";
+		Model content = ModelFactory.createDefaultModel();
+		Resource root = content.createResource(sourcePID + "#root/Root")
+				.addProperty(RDF.type, SH.NodeShape)
+				.addProperty(RDFS.label, "Root")
+				.addProperty(SH.property, content.createResource(sourcePID + "#root/Root/name"));
+		content.createResource(sourcePID)
+				.addProperty(DCTerms.isPartOf, root)
+				.addProperty(DCTerms.identifier, content.createTypedLiteral(sourcePID + "#root/Root", XSDDatatype.XSDstring))
+				.addProperty(DCTerms.source, content.createResource(sourcePID + "-other"))
+				.addProperty(RDFS.comment, sourcePID + "#root", "en");
+
+		Model copy = copyContent(sourcePID, targetPID, content);
+
+		Model expected = ModelFactory.createDefaultModel();
+		Resource expectedRoot = expected.createResource(targetPID + "#root/Root")
+				.addProperty(RDF.type, SH.NodeShape)
+				.addProperty(RDFS.label, "Root")
+				.addProperty(SH.property, expected.createResource(targetPID + "#root/Root/name"));
+		expected.createResource(targetPID)
+				.addProperty(DCTerms.isPartOf, expectedRoot)
+				.addProperty(DCTerms.identifier, expected.createTypedLiteral(targetPID + "#root/Root", XSDDatatype.XSDstring))
+				// only the PID and the resources under it are changed
+				.addProperty(DCTerms.source, expected.createResource(sourcePID + "-other"))
+				.addProperty(RDFS.comment, sourcePID + "#root", "en");
+		assertTrue(copy.isIsomorphicWith(expected));
+	}
+
+	@Test
+	void testCopyCrosswalkContent() {
+		String sourcePID = "mscr:crosswalk:source";
+		String targetPID = "mscr:crosswalk:target";
+		Model content = ModelFactory.createDefaultModel();
+		Resource mapping = content.createResource(sourcePID + "@mapping:1")
+				.addProperty(RDF.type, MSCR.MAPPING)
+				.addProperty(DCTerms.identifier, sourcePID + "@mapping:1")
+				.addProperty(MSCR.source, content.createResource()
+						.addProperty(DCTerms.identifier, "mscr:schema:a#root/Root/name"));
+		content.createResource(sourcePID).addProperty(MSCR.mappings, mapping);
+
+		Model copy = copyContent(sourcePID, targetPID, content);
+
+		Resource copiedMapping = copy.getResource(targetPID + "@mapping:1");
+		assertTrue(copy.contains(copy.getResource(targetPID), MSCR.mappings, copiedMapping));
+		assertTrue(copy.contains(copiedMapping, RDF.type, MSCR.MAPPING));
+		assertTrue(copy.contains(copiedMapping, DCTerms.identifier, targetPID + "@mapping:1"));
+		// references to the schemas are kept and blank nodes stay connected
+		var source = copiedMapping.getPropertyResourceValue(MSCR.source);
+		assertNotNull(source);
+		assertTrue(copy.contains(source, DCTerms.identifier, "mscr:schema:a#root/Root/name"));
+		assertFalse(copy.listSubjects().filterKeep(r -> r.isURIResource() && r.getURI().startsWith(sourcePID)).hasNext());
+		assertEquals(content.size(), copy.size());
+	}
+
+	private String updateModified(String pid, String previous) {
+		Dataset dataset = DatasetFactory.createTxnMem();
+		Model metadata = ModelFactory.createDefaultModel();
+		metadata.createResource(pid).addProperty(DCTerms.modified, metadata.createTypedLiteral(previous, XSDDatatype.XSDdateTime));
+		dataset.addNamedModel(pid, metadata);
+		UpdateAction.execute(JenaService.modifiedUpdateRequest(pid), dataset);
+		var values = dataset.getNamedModel(pid).listObjectsOfProperty(DCTerms.modified).toList();
+		assertEquals(1, values.size());
+		return values.get(0).asLiteral().getLexicalForm();
+	}
+
+	@Test
+	void testUpdateModified() {
+		String pid = "mscr:crosswalk:test";
+		assertTrue(updateModified(pid, "2020-01-01T10:00:00Z").compareTo("2020-01-01T10:00:00Z") > 0);
+		// two writes within the same millisecond still give different values
+		assertEquals("2999-01-01T10:00:00.001Z", updateModified(pid, "2999-01-01T10:00:00Z"));
+	}
+
+	@Test
+	void testCopyContentInvalidPID() {
+		assertThrows(IllegalArgumentException.class,
+				() -> JenaService.contentCopyRequest("mscr:schema:source", "mscr:schema:target> } ; DROP ALL ; #"));
+	}
+}
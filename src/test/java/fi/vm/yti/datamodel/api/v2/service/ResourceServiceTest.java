@@ -108,7 +108,7 @@ class ResourceServiceTest {
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).createResourceToIndex(any(IndexResource.class));
     }
 
@@ -131,7 +131,7 @@ class ResourceServiceTest {
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).createResourceToIndex(any(IndexResource.class));
     }
 
@@ -151,7 +151,7 @@ class ResourceServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).updateResourceToIndex(any(IndexResource.class));
     }
 
@@ -171,7 +171,7 @@ class ResourceServiceTest {
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
         verify(terminologyService).resolveConcept(anyString());
-        verify(coreRepository).put(anyString(), any(Model.class));
+        verify(coreRepository).putDiff(anyString(), any(Model.class), any(Model.class));
         verify(openSearchIndexer).updateResourceToIndex(any(IndexResource.class));
     }
 
@@ -187,7 +187,7 @@ class ResourceServiceTest {
 
         verify(coreRepository).fetch(anyString());
         verify(authorizationManager).hasRightToModel(anyString(), any(Model.class));
-        verify(coreRepository).deleteResource(anyString());
+        verify(coreRepository).deleteResource(anyString(), anyString(), eq(true));
         verify(openSearchIndexer).deleteResourceFromIndex(anyString());
     }
 
@@ -0,0 +1,100 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import fi.vm.yti.datamodel.api.v2.mapper.MappingMapper;
+import fi.vm.yti.datamodel.api.v2.mapper.mscr.JSONSchemaMapper;
+import fi.vm.yti.datamodel.api.v2.mapper.mscr.XSDMapper;
+import fi.vm.yti.datamodel.api.v2.service.dtr.DTRClient;
+import fi.vm.yti.datamodel.api.v2.transformation.functions.SimpleMappingFunctions.VocabularyItem;
+
+@ExtendWith(SpringExtension.class)
+@Import({
+	SchemaService.class,
+	CrosswalkService.class,
+	JSONSchemaMapper.class,
+	XSDMapper.class,
+	DTRClient.class,
+	MappingMapper.class,
+})
+class VocabularyCrosswalkServiceTest {
+
+	@Autowired
+	private CrosswalkService crosswalkService;
+
+	@Autowired
+	private SchemaService schemaService;
+
+	@Autowired
+	private MappingMapper mappingMapper;
+
+	private byte[] getBytesFromPath(String path) throws Exception {
+		InputStream input = getClass().getClassLoader().getResourceAsStream(path);
+		return input.readAllBytes();
+	}
+
+	@Test
+	void testLookupFromSSSOMCrosswalk() throws Exception {
+		String crosswalkPID = "hdl:crosswalk:test1";
+		String sourcePID = "hdl:schema:1";
+		String targetPID = "hdl:schema:2";
+		Model sourceModel = schemaService.transformEnumSkos(sourcePID, getBytesFromPath("enum/cf-small1.csv"));
+		Model targetModel = schemaService.transformEnumSkos(targetPID, getBytesFromPath("enum/gcmd-small1.csv"));
+		Model m = crosswalkService.transformSSSOMToInternal(crosswalkPID, getBytesFromPath("sssom/cf-to-gcmd-small1-mappings.csv"),
+				sourcePID, sourceModel, targetPID, targetModel);
+
+		Map<String, VocabularyItem> concepts = new VocabularyCrosswalkService(null, null, mappingMapper, 0).buildLookup(crosswalkPID, m);
+
+		VocabularyItem vorticity = concepts.get("atmosphere_absolute_vorticity");
+		assertNotNull(vorticity);
+		assertEquals("Earth Science > Atmosphere > Atmospheric Winds > Vorticity", vorticity.label());
+		assertEquals(vorticity, concepts.get(sourcePID + "/atmosphere_absolute_vorticity"));
+		// one of the three exact matches is used
+		assertNotNull(concepts.get("angstrom_exponent_of_ambient_aerosol_in_air"));
+		assertNull(concepts.get("unknown"));
+	}
+
+	@Test
+	void testLookupIsBuiltOnce() throws Exception {
+		String crosswalkPID = "hdl:crosswalk:test1";
+		String sourcePID = "hdl:schema:1";
+		String targetPID = "hdl:schema:2";
+		Model sourceModel = schemaService.transformEnumSkos(sourcePID, getBytesFromPath("enum/cf-small1.csv"));
+		Model targetModel = schemaService.transformEnumSkos(targetPID, getBytesFromPath("enum/gcmd-small1.csv"));
+		Model m = crosswalkService.transformSSSOMToInternal(crosswalkPID, getBytesFromPath("sssom/cf-to-gcmd-small1-mappings.csv"),
+				sourcePID, sourceModel, targetPID, targetModel);
+
+		JenaService jenaService = mock(JenaService.class);
+		PIDService pidService = mock(PIDService.class);
+		when(pidService.mapToInternal(crosswalkPID)).thenReturn(crosswalkPID);
+		when(jenaService.getCrosswalkModified(crosswalkPID)).thenReturn("2024-01-01T10:00:00Z");
+		// a new copy of the content on every call, as returned by JenaService
+		when(jenaService.fetchCrosswalkContent(crosswalkPID)).thenAnswer(invocation -> ModelFactory.createDefaultModel().add(m));
+		VocabularyCrosswalkService service = new VocabularyCrosswalkService(jenaService, pidService, mappingMapper, 0);
+
+		Map<String, VocabularyItem> concepts = service.getConcepts(crosswalkPID);
+		assertNotNull(concepts.get("atmosphere_absolute_vorticity"));
+		assertSame(concepts, service.getConcepts(crosswalkPID));
+		verify(jenaService, times(1)).fetchCrosswalkContent(crosswalkPID);
+
+		// a mapping has been changed, possibly through another instance
+		when(jenaService.getCrosswalkModified(crosswalkPID)).thenReturn("2024-01-01T10:00:01Z");
+		assertNotSame(concepts, service.getConcepts(crosswalkPID));
+		verify(jenaService, times(2)).fetchCrosswalkContent(crosswalkPID);
+	}
+}
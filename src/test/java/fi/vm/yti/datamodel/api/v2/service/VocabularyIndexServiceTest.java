@@ -0,0 +1,69 @@
+package fi.vm.yti.datamodel.api.v2.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.Test;
+
+import fi.vm.yti.datamodel.api.v2.transformation.functions.VocabularyIndex;
+
+class VocabularyIndexServiceTest {
+
+	private static final String PID = "mscr:schema:vocabulary";
+
+	private Model vocabulary() {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource(PID + "/robotics")
+				.addProperty(RDF.type, SKOS.Concept)
+				.addProperty(SKOS.prefLabel, "Robotics", "en")
+				.addProperty(SKOS.altLabel, "Robots", "en");
+		return model;
+	}
+
+	@Test
+	void testIndexIsBuiltOnce() throws Exception {
+		JenaService jenaService = mock(JenaService.class);
+		PIDService pidService = mock(PIDService.class);
+		when(pidService.mapToInternal(PID)).thenReturn(PID);
+		when(jenaService.getSchemaModified(PID)).thenReturn("2024-01-01T10:00:00Z");
+		// a new copy of the content on every call, as returned by JenaService
+		when(jenaService.fetchSchemaContent(PID)).thenAnswer(invocation -> vocabulary());
+		VocabularyIndexService service = new VocabularyIndexService(jenaService, pidService, 0);
+
+		VocabularyIndex index = service.getIndex(PID);
+		assertEquals(Set.of("Robotics"), index.search("robot", 1));
+		assertSame(index, service.getIndex(PID));
+		verify(jenaService, times(1)).fetchSchemaContent(PID);
+
+		// the schema has been written, possibly by another instance
+		when(jenaService.getSchemaModified(PID)).thenReturn("2024-01-01T10:00:01Z");
+		assertNotSame(index, service.getIndex(PID));
+		verify(jenaService, times(2)).fetchSchemaContent(PID);
+	}
+
+	@Test
+	void testVersionIsCheckedAfterInterval() throws Exception {
+		JenaService jenaService = mock(JenaService.class);
+		PIDService pidService = mock(PIDService.class);
+		when(pidService.mapToInternal(PID)).thenReturn(PID);
+		when(jenaService.getSchemaModified(PID)).thenReturn("2024-01-01T10:00:00Z");
+		when(jenaService.fetchSchemaContent(PID)).thenAnswer(invocation -> vocabulary());
+		VocabularyIndexService service = new VocabularyIndexService(jenaService, pidService, 60);
+
+		VocabularyIndex index = service.getIndex(PID);
+		assertSame(index, service.getIndex(PID));
+		verify(jenaService, times(1)).getSchemaModified(PID);
+		verify(pidService, times(1)).mapToInternal(PID);
+	}
+}
@@ -0,0 +1,73 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
+import fi.vm.yti.datamodel.api.v2.dto.MappingFilterDTO;
+import fi.vm.yti.datamodel.api.v2.dto.NodeInfo;
+import fi.vm.yti.datamodel.api.v2.dto.ProcessingInfo;
+
+class CompiledCrosswalkPlanTest {
+
+	@Test
+	void testCompileMapping() {
+		MappingDTO mapping = new MappingDTO();
+		mapping.setSource(List.of(
+				new NodeInfo("$.root.items[*].name", "name", null),
+				new NodeInfo("$.root.id", "id", new ProcessingInfo("http://example.org/fn", null))));
+		mapping.setTarget(List.of(new NodeInfo("$.out.entries[*].label", "label", null)));
+		MappingFilterDTO filter = new MappingFilterDTO();
+		filter.setPath("$.type");
+		filter.setOperator("in");
+		filter.setValue(List.of("a", "b"));
+		mapping.setFilter(filter);
+
+		CompiledCrosswalkPlan plan = CompiledCrosswalkPlan.compile(List.of(mapping), pi -> value -> pi.getId() + ":" + value);
+
+		assertEquals(1, plan.getSteps().size());
+		var compiled = plan.getSteps().get(0).mapping();
+
+		var collectionSource = compiled.sources().get(0);
+		assertTrue(collectionSource.isCollection());
+		assertEquals("$.root.items", collectionSource.collectionPath().path());
+		assertEquals("$.name", collectionSource.itemPath().path());
+		assertFalse(collectionSource.nested());
+		assertEquals("$.root.items", collectionSource.collectionKey());
+
+		var simpleSource = compiled.sources().get(1);
+		assertFalse(simpleSource.isCollection());
+		assertNull(simpleSource.bracketKey());
+		assertEquals("http://example.org/fn:1", simpleSource.processing().apply(1));
+
+		var target = compiled.targets().get(0);
+		assertTrue(target.collection());
+		assertEquals("$.out.entries[", target.collectionPrefix());
+		assertEquals("$.out.entries[3].label", target.path(3));
+		assertEquals(Set.of("$.out.entries["), plan.getCollectionPrefixes());
+
+		assertTrue(compiled.filter().predicate().test("b"));
+		assertFalse(compiled.filter().predicate().test("c"));
+	}
+
+	@Test
+	void testNestedCollectionSource() {
+		MappingDTO mapping = new MappingDTO();
+		mapping.setSource(List.of(new NodeInfo("$.a[*].b[*].c", "c", null)));
+		mapping.setTarget(List.of(new NodeInfo("$.c", "c", null)));
+
+		var source = CompiledCrosswalkPlan.compile(List.of(mapping), pi -> value -> value)
+				.getSteps().get(0).mapping().sources().get(0);
+
+		assertTrue(source.nested());
+		assertEquals("$.b", source.nestedCollectionPath().path());
+		assertEquals("$.c", source.nestedItemPath().path());
+	}
+}
@@ -0,0 +1,53 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ContentBlobTest {
+
+	@Test
+	void testTextContentIsCompressed() throws Exception {
+		byte[] data = "<xs:element name=\"test\"/>\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+		try (ContentBlob blob = ContentBlob.encode(new ByteArrayInputStream(data), ContentBlob.isCompressible("application/xml"))) {
+			assertEquals(ContentBlob.GZIP, blob.encoding());
+			assertEquals(data.length, blob.size());
+			assertTrue(blob.encodedSize() < data.length);
+			assertArrayEquals(data, ContentBlob.decode(blob.openEncoded(), blob.encoding()).readAllBytes());
+		}
+	}
+
+	@Test
+	void testBinaryContentIsStoredAsIs() throws Exception {
+		byte[] data = new byte[] {0x25, 0x50, 0x44, 0x46, 0x2d};
+		try (ContentBlob blob = ContentBlob.encode(new ByteArrayInputStream(data), ContentBlob.isCompressible("application/pdf"))) {
+			assertEquals(ContentBlob.IDENTITY, blob.encoding());
+			assertArrayEquals(data, blob.openEncoded().readAllBytes());
+		}
+	}
+
+	@Test
+	void testSameContentHasSameDigest() throws Exception {
+		byte[] data = "{\"type\": \"object\"}".getBytes(StandardCharsets.UTF_8);
+		try (ContentBlob json = ContentBlob.encode(new ByteArrayInputStream(data), ContentBlob.isCompressible("application/schema+json"));
+				ContentBlob text = ContentBlob.encode(new ByteArrayInputStream(data), ContentBlob.isCompressible("application/octet-stream"))) {
+			assertEquals(json.sha256(), text.sha256());
+			assertEquals("ff419ebbeba438f66900abe77818ce940702bdfe70fa173cb94beecee8d3f112", json.sha256());
+		}
+	}
+
+	@Test
+	void testCompressibleContentTypes() {
+		assertTrue(ContentBlob.isCompressible("text/csv"));
+		assertTrue(ContentBlob.isCompressible("application/schema+json"));
+		assertTrue(ContentBlob.isCompressible("application/xml; charset=UTF-8"));
+		assertFalse(ContentBlob.isCompressible("application/pdf"));
+		assertFalse(ContentBlob.isCompressible(null));
+	}
+}
@@ -0,0 +1,150 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class FilesystemStorageServiceTest {
+
+	private static final byte[] CONTENT = "id,temperature\n1,20\n3,32\n".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path root;
+
+	private JdbcTemplate jdbcTemplate;
+	private FilesystemStorageService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		jdbcTemplate = mock(JdbcTemplate.class);
+		service = new FilesystemStorageService(root.toString());
+		service.jdbcTemplate = jdbcTemplate;
+		service.transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+	}
+
+	private ContentBlob blob() throws Exception {
+		return ContentBlob.encode(new ByteArrayInputStream(CONTENT), false);
+	}
+
+	private Path blobPath(String sha256) {
+		return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+	}
+
+	@Test
+	void testNewContentIsWrittenUnderDigest() throws Exception {
+		try (ContentBlob blob = blob()) {
+			// the row is found after it has been inserted
+			when(jdbcTemplate.queryForList(startsWith("select sha256 from mscr_blobs"), eq(String.class), eq(blob.sha256())))
+					.thenReturn(List.of(), List.of(blob.sha256()));
+
+			service.storeBlob(blob);
+
+			assertArrayEquals(CONTENT, Files.readAllBytes(blobPath(blob.sha256())));
+			verify(jdbcTemplate).update(startsWith("insert into mscr_blobs"), eq(blob.sha256()), eq(ContentBlob.IDENTITY), eq((long) CONTENT.length), eq("filesystem"));
+		}
+	}
+
+	@Test
+	void testStoredContentIsLockedBeforeReuse() throws Exception {
+		try (ContentBlob blob = blob()) {
+			when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(blob.sha256()))).thenReturn(List.of(blob.sha256()));
+
+			service.storeBlob(blob);
+
+			verify(jdbcTemplate).queryForList("select sha256 from mscr_blobs where sha256 = ? for update", String.class, blob.sha256());
+			verify(jdbcTemplate, never()).update(startsWith("insert into mscr_blobs"), any(), any(), any(), any());
+			assertFalse(Files.exists(blobPath(blob.sha256())));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testRangeIsReadFromFile() throws Exception {
+		String sha256;
+		try (ContentBlob blob = blob()) {
+			sha256 = blob.sha256();
+			when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(sha256))).thenReturn(List.of(), List.of(sha256));
+			service.storeBlob(blob);
+		}
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getString(1)).thenReturn(sha256);
+		when(rs.getString(2)).thenReturn("filesystem");
+		when(rs.getLong(3)).thenReturn((long) CONTENT.length);
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(7L)))
+				.thenAnswer(invocation -> List.of(((RowMapper<Object>) invocation.getArgument(1)).mapRow(rs, 0)));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		service.writeFileContent(7L, 15, 4, out);
+		assertEquals("1,20", out.toString(StandardCharsets.UTF_8));
+
+		out.reset();
+		// the range is limited to the end of the file
+		service.writeFileContent(7L, 20, 100, out);
+		assertEquals("3,32\n", out.toString(StandardCharsets.UTF_8));
+
+		out.reset();
+		service.writeFileContent(7L, out);
+		assertArrayEquals(CONTENT, out.toByteArray());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testFilesOfRemovedBlobsAreDeletedAfterLocking() throws Exception {
+		Path removed = blobPath("a".repeat(64));
+		Path referenced = blobPath("b".repeat(64));
+		for (Path path : List.of(removed, referenced)) {
+			Files.createDirectories(path.getParent());
+			Files.write(path, CONTENT);
+		}
+		List<String> statements = new ArrayList<>();
+		when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(RowMapper.class))).thenAnswer(invocation -> {
+			Connection con = mock(Connection.class);
+			when(con.prepareStatement(anyString())).thenAnswer(prepare -> {
+				statements.add(prepare.getArgument(0));
+				return mock(PreparedStatement.class);
+			});
+			((PreparedStatementCreator) invocation.getArgument(0)).createPreparedStatement(con);
+			// the other blob is still referenced by a file
+			return statements.get(statements.size() - 1).startsWith("delete") ? List.of("a".repeat(64)) : List.of("a".repeat(64), "b".repeat(64));
+		});
+		when(jdbcTemplate.queryForList(anyString(), eq(String.class), anyLong())).thenReturn(List.of("a".repeat(64), "b".repeat(64)));
+
+		service.removeFile(1L);
+
+		assertEquals(2, statements.size());
+		assertTrue(statements.get(0).endsWith("for update"));
+		assertTrue(statements.get(1).startsWith("delete from mscr_blobs"));
+		assertFalse(Files.exists(removed));
+		assertTrue(Files.exists(referenced));
+	}
+}
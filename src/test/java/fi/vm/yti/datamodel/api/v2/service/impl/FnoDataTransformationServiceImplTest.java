@@ -0,0 +1,89 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.v2.dto.MappingDTO;
+import fi.vm.yti.datamodel.api.v2.dto.NodeInfo;
+import fi.vm.yti.datamodel.api.v2.service.TransformationPlan;
+
+class FnoDataTransformationServiceImplTest {
+
+	private final FnoDataTransformationServiceImpl service = new FnoDataTransformationServiceImpl(null);
+
+	private TransformationPlan plan() {
+		MappingDTO device = new MappingDTO();
+		device.setSource(List.of(new NodeInfo("$.id", "id", null)));
+		device.setTarget(List.of(new NodeInfo("$.device", "device", null)));
+		MappingDTO temperature = new MappingDTO();
+		temperature.setSource(List.of(new NodeInfo("$.temperature", "temperature", null)));
+		temperature.setTarget(List.of(new NodeInfo("$.temperature", "temperature", null)));
+		return service.compile(List.of(device, temperature));
+	}
+
+	private InputStream source(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Keeps what had been written at each flush
+	 */
+	private static class FlushRecordingOutputStream extends ByteArrayOutputStream {
+
+		private final List<String> flushed = new ArrayList<>();
+
+		@Override
+		public void flush() {
+			String content = toString(StandardCharsets.UTF_8);
+			if (flushed.isEmpty() || !flushed.get(flushed.size() - 1).equals(content)) {
+				flushed.add(content);
+			}
+		}
+	}
+
+	@Test
+	void testTransformCsvRecordsToJsonLines() throws Exception {
+		FlushRecordingOutputStream out = new FlushRecordingOutputStream();
+
+		long count = service.transformRecords(source("id,temperature\n1,20\n3,32\n"), "csv", plan(), "json", null, null, null, out);
+
+		assertEquals(2, count);
+		ObjectMapper mapper = new ObjectMapper();
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(2, lines.length);
+		assertEquals(mapper.readTree("{\"device\":\"1\",\"temperature\":\"20\"}"), mapper.readTree(lines[0]));
+		assertEquals(mapper.readTree("{\"device\":\"3\",\"temperature\":\"32\"}"), mapper.readTree(lines[1]));
+		// each record is handed to the client before the next one is read
+		assertEquals(2, out.flushed.size());
+		assertEquals(lines[0] + "\n", out.flushed.get(0));
+	}
+
+	@Test
+	void testTransformJsonLinesToCsv() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long count = service.transformRecords(source("{\"id\":\"1\",\"temperature\":\"20\"}\n\n{\"id\":\"3\",\"temperature\":\"32\"}\n"),
+				"ndjson", plan(), "csv", null, null, null, out);
+
+		assertEquals(2, count);
+		// the header is written only once
+		assertEquals(List.of("device,temperature", "1,20", "3,32"), out.toString(StandardCharsets.UTF_8).lines().toList());
+	}
+
+	@Test
+	void testXmlSourceRequiresRecordElement() {
+		assertThrows(IllegalArgumentException.class,
+				() -> service.transformRecords(source("<records/>"), "xml", plan(), "json", null, null, null, new ByteArrayOutputStream()));
+	}
+}
@@ -0,0 +1,56 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.jupiter.api.Test;
+
+import fi.vm.yti.datamodel.api.v2.dto.ProcessingInfo;
+
+class FunctionRegistryTest {
+
+	private static final String MSCR = "http://uri.suomi.fi/datamodel/ns/mscr#";
+
+	private final FunctionRegistry registry = new FunctionRegistry(RDFDataMgr.loadModel("fno/functions.ttl"));
+	private final List<Object> fallbackCalls = new ArrayList<>();
+	private final BiFunction<ProcessingInfo, Object, Object> fallback = (pi, value) -> {
+		fallbackCalls.add(value);
+		return "fallback";
+	};
+
+	@Test
+	void testBoundFunctionsAreCalledDirectly() {
+		assertTrue(registry.isBound(MSCR + "prefixStringFunc"));
+		var function = registry.resolve(new ProcessingInfo(MSCR + "prefixStringFunc", Map.of("prefix", "pre-")), fallback);
+		assertEquals("pre-value", function.apply("value"));
+		assertEquals(1.5, registry.resolve(new ProcessingInfo(MSCR + "stringToDoubleFunc", null), fallback).apply("1.5"));
+		assertTrue(fallbackCalls.isEmpty());
+	}
+
+	@Test
+	void testArgumentsNotFittingTheMethodUseFallback() {
+		var function = registry.resolve(new ProcessingInfo(MSCR + "stringToDoubleFunc", null), fallback);
+		assertEquals("fallback", function.apply(List.of("1.5")));
+		assertEquals(List.of(List.of("1.5")), fallbackCalls);
+	}
+
+	@Test
+	void testFailingFunctionKeepsValue() {
+		var function = registry.resolve(new ProcessingInfo(MSCR + "stringToDoubleFunc", null), fallback);
+		assertEquals("not a number", function.apply("not a number"));
+	}
+
+	@Test
+	void testFunctionsWithOtherParametersUseFallback() {
+		// expects mscr:inputString, which is never given
+		assertFalse(registry.isBound(MSCR + "stringToIntFunc"));
+		assertEquals("fallback", registry.resolve(new ProcessingInfo(MSCR + "stringToIntFunc", null), fallback).apply("1"));
+	}
+}
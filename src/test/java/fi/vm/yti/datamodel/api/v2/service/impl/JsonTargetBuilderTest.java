@@ -0,0 +1,33 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class JsonTargetBuilderTest {
+
+	@Test
+	void testCreatesMissingProperties() {
+		String json = new JsonTargetBuilder()
+				.set("$.root.a.b", 1)
+				.set("$.root.c", "value")
+				.toJson();
+		assertEquals("{\"root\":{\"a\":{\"b\":1},\"c\":\"value\"}}", json);
+	}
+
+	@Test
+	void testWritesDoNotAffectSharedValues() {
+		Map<String, Object> value = new LinkedHashMap<>();
+		value.put("id", "1");
+		String json = new JsonTargetBuilder()
+				.set("$.first", value)
+				.set("$.second", value)
+				.set("$.first.label", "label")
+				.toJson();
+		assertEquals("{\"first\":{\"id\":\"1\",\"label\":\"label\"},\"second\":{\"id\":\"1\"}}", json);
+		assertEquals(1, value.size());
+	}
+}
@@ -0,0 +1,56 @@
+package fi.vm.yti.datamodel.api.v2.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.jayway.jsonpath.JsonPath;
+
+class SourceRecordReaderTest {
+
+	private List<Object> readAll(String source, String format, String recordElement) throws Exception {
+		List<Object> records = new ArrayList<>();
+		try (SourceRecordReader reader = SourceRecordReader.open(
+				new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), format, recordElement)) {
+			Object record;
+			while ((record = reader.next()) != null) {
+				records.add(record);
+			}
+			assertNull(reader.next());
+		}
+		return records;
+	}
+
+	@Test
+	void testCsvRowsAreRecords() throws Exception {
+		List<Object> records = readAll("id,name\n1,first\n2,second\n", "csv", null);
+		assertEquals(2, records.size());
+		assertEquals("1", JsonPath.read(records.get(0), "$.id"));
+		assertEquals("second", JsonPath.read(records.get(1), "$.name"));
+	}
+
+	@Test
+	void testJsonLinesAreRecords() throws Exception {
+		List<Object> records = readAll("{\"id\":1}\n\n{\"id\":2}\n", "ndjson", null);
+		assertEquals(2, records.size());
+		assertEquals(2, (Integer) JsonPath.read(records.get(1), "$.id"));
+	}
+
+	@Test
+	void testXmlRecordsKeepAncestors() throws Exception {
+		String xml = "<?xml version=\"1.0\"?>"
+				+ "<root xmlns:ex=\"http://example.com/\"><header>skipped</header>"
+				+ "<items><ex:item><id>1</id></ex:item><ex:item><id>2</id><child><id>3</id></child></ex:item></items></root>";
+		List<Object> records = readAll(xml, "xml", "item");
+		assertEquals(2, records.size());
+		assertEquals("1", JsonPath.read(records.get(0), "$.root.items['ex:item'].id"));
+		assertEquals("3", JsonPath.read(records.get(1), "$.root.items['ex:item'].child.id"));
+		assertEquals(List.of(), JsonPath.read(records.get(0), "$..header"));
+	}
+}
@@ -0,0 +1,86 @@
+package fi.vm.yti.datamodel.api.v2.transformation.functions;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class VocabularyIndexTest {
+
+	@Test
+	void testDistance() {
+		assertEquals(0, VocabularyIndex.distance("robotics", "robotics"));
+		assertEquals(3, VocabularyIndex.distance("kitten", "sitting"));
+		assertEquals(5, VocabularyIndex.distance("", "words"));
+	}
+
+	@Test
+	void testSearchMatchesLinearScan() {
+		Random random = new Random(1);
+		List<String> labels = IntStream.range(0, 2000)
+				.mapToObj(i -> randomWord(random))
+				.toList();
+		VocabularyIndex index = VocabularyIndex.of(labels);
+		for (int i = 0; i < 50; i++) {
+			String query = randomWord(random);
+			for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+				final int limit = maxDistance;
+				Set<String> expected = labels.stream()
+						.filter(label -> VocabularyIndex.distance(query, label) <= limit)
+						.collect(Collectors.toSet());
+				assertEquals(expected, index.search(query, maxDistance));
+			}
+		}
+	}
+
+	@Test
+	void testLabelsMapToValues() {
+		VocabularyIndex index = VocabularyIndex.of(Map.of(
+				"Robotics", List.of("Automation, Control Systems, Robotics, Mechatronics"),
+				"Robots", List.of("Automation, Control Systems, Robotics, Mechatronics")));
+		assertEquals(Set.of("Automation, Control Systems, Robotics, Mechatronics"), index.search("robotic", 1));
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	void testSimilarityBasedValueMapping() {
+		Object result = SimpleMappingFunctions.similarityBasedValueMapping("Measurment Systems",
+				Map.of("maxDistance", 2, "targetVocabulary", "pid:voc1"));
+		assertArrayEquals(new String[] {"Systems Engineering#Measurement Systems"}, (String[]) result);
+		Object other = SimpleMappingFunctions.similarityBasedValueMapping("unrelated",
+				Map.of("maxDistance", 1, "targetVocabulary", "pid:voc1"));
+		assertArrayEquals(new String[] {"Other"}, (String[]) other);
+	}
+
+	@Test
+	void testSimilarityBasedValueMappingThreshold() {
+		SimpleMappingFunctions.vocabularies.put("test:threshold", Set.of("Alpha", "Beta"));
+		try {
+			// entries further than threshold edits from a word match
+			Object result = SimpleMappingFunctions.similarityBasedValueMapping("ALPHA",
+					Map.of("threshold", 0.9, "targetVocabulary", "test:threshold"));
+			assertArrayEquals(new String[] {"Beta"}, (String[]) result);
+			Object none = SimpleMappingFunctions.similarityBasedValueMapping("alpha",
+					Map.of("threshold", 5, "targetVocabulary", "test:threshold"));
+			assertArrayEquals(new String[] {"Other"}, (String[]) none);
+		} finally {
+			SimpleMappingFunctions.vocabularies.remove("test:threshold");
+		}
+	}
+
+	private static String randomWord(Random random) {
+		int length = 3 + random.nextInt(6);
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			word.append((char) ('a' + random.nextInt(6)));
+		}
+		return word.toString();
+	}
+}